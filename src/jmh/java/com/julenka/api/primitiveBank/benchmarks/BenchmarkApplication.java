@@ -0,0 +1,52 @@
+package com.julenka.api.primitiveBank.benchmarks;
+
+import com.julenka.api.primitiveBank.PrimitiveBankApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Application context for benchmarks that need the database.
+ * The database is started by Testcontainers unless SPRING_DATASOURCE_URL
+ * (with SPRING_DATASOURCE_USERNAME and SPRING_DATASOURCE_PASSWORD) points to one.
+ */
+class BenchmarkApplication implements AutoCloseable {
+
+    private final PostgreSQLContainer<?> postgres;
+    private final ConfigurableApplicationContext context;
+
+    BenchmarkApplication(String... extraArgs) {
+        // application.properties of the test resources shadows the main one on the benchmark classpath
+        List<String> args = new ArrayList<>(List.of("--server.port=0",
+                "--spring.config.additional-location=optional:file:src/main/resources/application.properties",
+                "--bank.auth.jwt.allow-generated-key=true"));
+        if (System.getenv("SPRING_DATASOURCE_URL") == null) {
+            postgres = new PostgreSQLContainer<>("postgres:10.17");
+            postgres.start();
+            args.add("--spring.datasource.url=" + postgres.getJdbcUrl());
+            args.add("--spring.datasource.username=" + postgres.getUsername());
+            args.add("--spring.datasource.password=" + postgres.getPassword());
+        } else {
+            postgres = null;
+            // test resources point the datasource to the Testcontainers JDBC driver
+            args.add("--spring.datasource.url=" + System.getenv("SPRING_DATASOURCE_URL"));
+        }
+        args.addAll(List.of(extraArgs));
+        context = new SpringApplicationBuilder(PrimitiveBankApplication.class).run(args.toArray(new String[0]));
+    }
+
+    <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    @Override
+    public void close() {
+        context.close();
+        if (postgres != null) {
+            postgres.stop();
+        }
+    }
+}
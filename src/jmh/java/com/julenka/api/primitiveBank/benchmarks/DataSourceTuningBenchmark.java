@@ -0,0 +1,130 @@
+package com.julenka.api.primitiveBank.benchmarks;
+
+import com.julenka.api.primitiveBank.domain.Account;
+import com.julenka.api.primitiveBank.domain.Roles;
+import com.julenka.api.primitiveBank.domain.User;
+import com.julenka.api.primitiveBank.dto.MoneyTransferDTO;
+import com.julenka.api.primitiveBank.repositories.AccountRepo;
+import com.julenka.api.primitiveBank.repositories.UserRepo;
+import com.julenka.api.primitiveBank.services.AccountService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transfers from 8 threads, each between its own pair of accounts, so the threads compete
+ * for connections and not for row locks. tuning=false runs with the Hikari and pgJDBC defaults:
+ * 10 connections and statements prepared on the server from the fifth execution.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DataSourceTuningBenchmark {
+
+    private static final int THREADS = 8;
+
+    @Param({"true", "false"})
+    private boolean tuning;
+
+    private BenchmarkApplication application;
+    private AccountService accountService;
+    private UserRepo userRepo;
+    private final List<MoneyTransferDTO[]> pairs = new ArrayList<>();
+    private final AtomicInteger nextPair = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class Pair {
+
+        private MoneyTransferDTO forward;
+        private MoneyTransferDTO backward;
+        private boolean direction;
+
+        @Setup(Level.Trial)
+        public void setUp(DataSourceTuningBenchmark benchmark) {
+            MoneyTransferDTO[] pair = benchmark.pairs.get(benchmark.nextPair.getAndIncrement() % THREADS);
+            forward = pair[0];
+            backward = pair[1];
+        }
+
+        MoneyTransferDTO next() {
+            direction = !direction;
+            return direction ? forward : backward;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // the database of the benchmark runs on this machine, so its cores are the server's
+        application = new BenchmarkApplication("--bank.datasource.tuning=" + tuning,
+                "--bank.datasource.cores=" + Runtime.getRuntime().availableProcessors());
+        accountService = application.getBean(AccountService.class);
+        userRepo = application.getBean(UserRepo.class);
+        AccountRepo accountRepo = application.getBean(AccountRepo.class);
+
+        userRepo.findOneByUsername("benchmark-tuning").ifPresent(userRepo::delete);
+        User user = new User();
+        user.setUsername("benchmark-tuning");
+        user.setPassword("benchmark1");
+        user.setAuthorities(List.of(Roles.USER));
+        User owner = userRepo.saveAndFlush(user);
+        for (int i = 0; i < THREADS; i++) {
+            Long first = saveAccount(accountRepo, owner);
+            Long second = saveAccount(accountRepo, owner);
+            pairs.add(new MoneyTransferDTO[]{transfer(first, second), transfer(second, first)});
+        }
+
+        // JMH calls the benchmark from its own threads
+        SecurityContextHolder.setStrategyName(SecurityContextHolder.MODE_GLOBAL);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(owner, null, owner.getAuthorities()));
+    }
+
+    private static Long saveAccount(AccountRepo accountRepo, User owner) {
+        Account account = new Account();
+        account.setBalance(new BigDecimal(1_000_000));
+        account.setUser(owner);
+        return accountRepo.saveAndFlush(account).getId();
+    }
+
+    private static MoneyTransferDTO transfer(Long fromId, Long toId) {
+        MoneyTransferDTO dto = new MoneyTransferDTO();
+        dto.setFromId(fromId);
+        dto.setToId(toId);
+        dto.setAmount(BigDecimal.ONE);
+        return dto;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        userRepo.findOneByUsername("benchmark-tuning").ifPresent(userRepo::delete);
+        application.close();
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public void transferMoney(Pair pair) {
+        accountService.transferMoney(pair.next());
+    }
+}
@@ -0,0 +1,52 @@
+package com.julenka.api.primitiveBank.benchmarks;
+
+import com.julenka.api.primitiveBank.config.AuthProperties;
+import com.julenka.api.primitiveBank.config.JwtTokenUtils;
+import com.julenka.api.primitiveBank.domain.User;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of issuing a token on login for each signing algorithm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtGenerationBenchmark {
+
+    @Param({"HS512", "ES256", "ES384", "RS256"})
+    private SignatureAlgorithm algorithm;
+
+    private JwtTokenUtils jwtTokenUtils;
+    private User user;
+
+    @Setup
+    public void setUp() {
+        AuthProperties authProperties = new AuthProperties();
+        authProperties.getJwt().setAlgorithm(algorithm);
+        authProperties.getJwt().setAllowGeneratedKey(true);
+        jwtTokenUtils = new JwtTokenUtils(authProperties);
+        user = new User();
+        user.setUsername("benchmark");
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtTokenUtils.generateToken(user);
+    }
+}
@@ -0,0 +1,69 @@
+package com.julenka.api.primitiveBank.benchmarks;
+
+import com.julenka.api.primitiveBank.config.AuthProperties;
+import com.julenka.api.primitiveBank.config.JwtTokenUtils;
+import com.julenka.api.primitiveBank.domain.User;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of validating the token of one request: the old way with three verifications,
+ * parsing once, and parsing once with the verified-token cache, for each signing algorithm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtValidationBenchmark {
+
+    @Param({"HS512", "ES256", "ES384", "RS256"})
+    private SignatureAlgorithm algorithm;
+
+    private JwtTokenUtils jwtTokenUtils;
+    private User user;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        AuthProperties authProperties = new AuthProperties();
+        authProperties.getJwt().setAlgorithm(algorithm);
+        authProperties.getJwt().setAllowGeneratedKey(true);
+        jwtTokenUtils = new JwtTokenUtils(authProperties);
+        user = new User();
+        user.setUsername("benchmark");
+        token = jwtTokenUtils.generateToken(user);
+    }
+
+    @Benchmark
+    public boolean verifiedThreeTimes() {
+        String username = jwtTokenUtils.getUsernameFromToken(token);
+        return username != null && jwtTokenUtils.belongsToUserAndNotExpired(token, user);
+    }
+
+    @Benchmark
+    public boolean verifiedOnce() {
+        Claims claims = jwtTokenUtils.verifyClaims(token);
+        return jwtTokenUtils.belongsToUserAndNotExpired(claims, user);
+    }
+
+    @Benchmark
+    public boolean cached() {
+        Claims claims = jwtTokenUtils.parseClaims(token);
+        return jwtTokenUtils.belongsToUserAndNotExpired(claims, user);
+    }
+}
@@ -0,0 +1,51 @@
+package com.julenka.api.primitiveBank.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.julenka.api.primitiveBank.dto.MoneyTransferDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MoneyTransferJsonBenchmark {
+
+    private ObjectMapper objectMapper;
+    private MoneyTransferDTO dto;
+    private String json;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        objectMapper = new ObjectMapper();
+        dto = new MoneyTransferDTO();
+        dto.setFromId(1001L);
+        dto.setToId(2002L);
+        dto.setAmount(new BigDecimal("125.50"));
+        json = objectMapper.writeValueAsString(dto);
+    }
+
+    @Benchmark
+    public String serialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(dto);
+    }
+
+    @Benchmark
+    public MoneyTransferDTO deserialize() throws JsonProcessingException {
+        return objectMapper.readValue(json, MoneyTransferDTO.class);
+    }
+}
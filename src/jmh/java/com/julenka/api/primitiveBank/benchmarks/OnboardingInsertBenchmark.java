@@ -0,0 +1,96 @@
+package com.julenka.api.primitiveBank.benchmarks;
+
+import com.julenka.api.primitiveBank.domain.Account;
+import com.julenka.api.primitiveBank.domain.Roles;
+import com.julenka.api.primitiveBank.domain.User;
+import com.julenka.api.primitiveBank.domain.UserInfo;
+import com.julenka.api.primitiveBank.repositories.AccountRepo;
+import com.julenka.api.primitiveBank.repositories.UserRepo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk onboarding: users with their info and an account are saved by blocks in one transaction.
+ * The score is onboarded users per second, each of them is three rows plus an authority.
+ * The transaction is flushed and rolled back, so the tables don't grow between iterations.
+ * tuning=false sends every JDBC batch of inserts as separate statements.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class OnboardingInsertBenchmark {
+
+    private static final int USERS_PER_TRANSACTION = 100;
+
+    @Param({"true", "false"})
+    private boolean tuning;
+
+    private BenchmarkApplication application;
+    private UserRepo userRepo;
+    private AccountRepo accountRepo;
+    private TransactionTemplate transactionTemplate;
+    private long counter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        application = new BenchmarkApplication("--bank.datasource.tuning=" + tuning);
+        userRepo = application.getBean(UserRepo.class);
+        accountRepo = application.getBean(AccountRepo.class);
+        transactionTemplate = application.getBean(TransactionTemplate.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        application.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(USERS_PER_TRANSACTION)
+    public void onboardUsers() {
+        transactionTemplate.executeWithoutResult(status -> {
+            List<User> users = new ArrayList<>();
+            for (int i = 0; i < USERS_PER_TRANSACTION; i++) {
+                User user = new User();
+                user.setUsername("onboarding-" + counter++);
+                user.setPassword("password");
+                user.setAuthorities(List.of(Roles.USER));
+                UserInfo info = new UserInfo();
+                info.setFirstName("First");
+                info.setLastName("Last");
+                user.setUserInfo(info);
+                users.add(user);
+            }
+            List<Account> accounts = new ArrayList<>();
+            for (User user : userRepo.saveAll(users)) {
+                Account account = new Account();
+                account.setBalance(BigDecimal.ZERO);
+                account.setUser(user);
+                accounts.add(account);
+            }
+            accountRepo.saveAll(accounts);
+            accountRepo.flush();
+            status.setRollbackOnly();
+        });
+    }
+}
@@ -0,0 +1,60 @@
+package com.julenka.api.primitiveBank.benchmarks;
+
+import com.julenka.api.primitiveBank.config.SecurityConfig;
+import com.julenka.api.primitiveBank.config.StupidGuardingFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Path matching every request goes through before authentication:
+ * the whitelist check and the swagger guarding filter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PathMatchingBenchmark {
+
+    @Param({"/auth/authenticate", "/accounts/transfer", "/documentation/swagger-resources"})
+    private String uri;
+
+    private StupidGuardingFilter filter;
+    private MockHttpServletRequest request;
+
+    @Setup
+    public void setUp() {
+        filter = new StupidGuardingFilter();
+        request = new MockHttpServletRequest("POST", uri);
+        request.addHeader("Authorization", "Basic " + StupidGuardingFilter.HEADER_VALUE);
+    }
+
+    @Benchmark
+    public boolean inWhitelist() {
+        return SecurityConfig.inWhitelist(uri);
+    }
+
+    @Benchmark
+    public MockHttpServletResponse guardingFilter() throws ServletException, IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+}
@@ -0,0 +1,103 @@
+package com.julenka.api.primitiveBank.benchmarks;
+
+import com.julenka.api.primitiveBank.domain.Account;
+import com.julenka.api.primitiveBank.domain.Roles;
+import com.julenka.api.primitiveBank.domain.User;
+import com.julenka.api.primitiveBank.dto.MoneyTransferDTO;
+import com.julenka.api.primitiveBank.repositories.AccountRepo;
+import com.julenka.api.primitiveBank.repositories.UserRepo;
+import com.julenka.api.primitiveBank.services.AccountService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AccountService.transferMoney against a real Postgres, money goes back and forth
+ * between two accounts of one user, see {@link BenchmarkApplication} for the database.
+ * historyOutbox=false writes the history inside the transfer transaction.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TransferMoneyBenchmark {
+
+    @Param({"true", "false"})
+    private boolean historyOutbox;
+
+    private BenchmarkApplication application;
+    private AccountService accountService;
+    private UserRepo userRepo;
+    private MoneyTransferDTO forward;
+    private MoneyTransferDTO backward;
+    private boolean direction;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        application = new BenchmarkApplication("--bank.accounts.history-outbox=" + historyOutbox);
+        accountService = application.getBean(AccountService.class);
+        userRepo = application.getBean(UserRepo.class);
+        AccountRepo accountRepo = application.getBean(AccountRepo.class);
+
+        userRepo.findOneByUsername("benchmark").ifPresent(userRepo::delete);
+        User user = new User();
+        user.setUsername("benchmark");
+        user.setPassword("benchmark1");
+        user.setAuthorities(List.of(Roles.USER));
+        User owner = userRepo.saveAndFlush(user);
+        Long first = saveAccount(accountRepo, owner);
+        Long second = saveAccount(accountRepo, owner);
+        forward = transfer(first, second);
+        backward = transfer(second, first);
+
+        // JMH calls the benchmark from its own threads
+        SecurityContextHolder.setStrategyName(SecurityContextHolder.MODE_GLOBAL);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(owner, null, owner.getAuthorities()));
+    }
+
+    private static Long saveAccount(AccountRepo accountRepo, User owner) {
+        Account account = new Account();
+        account.setBalance(new BigDecimal(1_000_000));
+        account.setUser(owner);
+        return accountRepo.saveAndFlush(account).getId();
+    }
+
+    private static MoneyTransferDTO transfer(Long fromId, Long toId) {
+        MoneyTransferDTO dto = new MoneyTransferDTO();
+        dto.setFromId(fromId);
+        dto.setToId(toId);
+        dto.setAmount(BigDecimal.ONE);
+        return dto;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        userRepo.findOneByUsername("benchmark").ifPresent(userRepo::delete);
+        application.close();
+    }
+
+    @Benchmark
+    public void transferMoney() {
+        direction = !direction;
+        accountService.transferMoney(direction ? forward : backward);
+    }
+}
@@ -0,0 +1,50 @@
+package com.julenka.api.primitiveBank.benchmarks;
+
+import com.julenka.api.primitiveBank.domain.UserInfo;
+import com.julenka.api.primitiveBank.dto.UserInfoDTO;
+import com.julenka.api.primitiveBank.mappers.UserInfoMapper;
+import com.julenka.api.primitiveBank.mappers.UserInfoMapperImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserInfoMapperBenchmark {
+
+    private UserInfoMapper mapper;
+    private UserInfoDTO dto;
+    private UserInfo userInfo;
+
+    @Setup
+    public void setUp() {
+        mapper = new UserInfoMapperImpl();
+        dto = new UserInfoDTO();
+        dto.setFirstName("First");
+        dto.setLastName("Last");
+        userInfo = mapper.toUserInfo(dto);
+    }
+
+    @Benchmark
+    public UserInfo toUserInfo() {
+        return mapper.toUserInfo(dto);
+    }
+
+    @Benchmark
+    public UserInfoDTO fromUserInfo() {
+        return mapper.fromUserInfo(userInfo);
+    }
+}
@@ -7,13 +7,18 @@ import com.julenka.api.primitiveBank.services.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcTransactionManagerAutoConfiguration;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import javax.annotation.PostConstruct;
 
 import static com.julenka.api.primitiveBank.config.StupidGuardingFilter.SWAGGER_PASSWORD;
 import static com.julenka.api.primitiveBank.config.StupidGuardingFilter.SWAGGER_USER;
 
-@SpringBootApplication
+// R2DBC is set up by ReactiveConfig, a reactive transaction manager would switch off the JPA one
+@SpringBootApplication(exclude = {R2dbcAutoConfiguration.class, R2dbcTransactionManagerAutoConfiguration.class})
+@EnableScheduling
 public class PrimitiveBankApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,147 @@
+package com.julenka.api.primitiveBank.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Настройки работы со счетами
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "bank.accounts")
+public class AccountProperties {
+
+    private TransferMode transferMode = TransferMode.LOCKING;
+
+    /**
+     * max number of transfers accepted by one batch request
+     */
+    private int maxBatchSize = 1000;
+
+    /**
+     * how often the unapplied tail of the ledger is moved into balance snapshots
+     */
+    private Duration compactionInterval = Duration.ofSeconds(10);
+
+    /**
+     * accounts compacted per query for unapplied entries
+     */
+    private int compactionBatchSize = 500;
+
+    /**
+     * max number of accounts on a page of GET /accounts
+     */
+    private int maxPageSize = 100;
+
+    /**
+     * rows read from the database at once when accounts are streamed
+     */
+    private int streamFetchSize = 500;
+
+    /**
+     * max number of slot rows a striped account can have
+     */
+    private int maxSlots = 64;
+
+    /**
+     * how long a stored result is returned for a retried request with the same Idempotency-Key
+     */
+    private Duration idempotencyKeyTtl = Duration.ofHours(24);
+
+    /**
+     * max number of recent idempotency keys kept in memory
+     */
+    private long idempotencyCacheSize = 10_000;
+
+    /**
+     * how long a recent idempotency key is kept in memory, older keys are checked in the database
+     */
+    private Duration idempotencyCacheTtl = Duration.ofMinutes(10);
+
+    /**
+     * how often expired idempotency keys are deleted
+     */
+    private Duration idempotencyCleanupInterval = Duration.ofHours(1);
+
+    /**
+     * number of months ahead of the current one that get a history partition in advance
+     */
+    private int historyMonthsAhead = 2;
+
+    /**
+     * how often history partitions are checked
+     */
+    private Duration historyMaintenanceInterval = Duration.ofHours(6);
+
+    /**
+     * operations are written to the history by a background worker through an outbox table,
+     * otherwise by the transaction of the operation itself
+     */
+    private boolean historyOutbox = true;
+
+    /**
+     * how often the outbox is moved into the history
+     */
+    private Duration historyOutboxInterval = Duration.ofMillis(200);
+
+    /**
+     * operations moved from the outbox by one statement
+     */
+    private int historyOutboxBatchSize = 1000;
+
+    /**
+     * when the oldest operation has waited in the outbox longer than this,
+     * operations are written to the history directly until the worker catches up
+     */
+    private Duration historyOutboxMaxLag = Duration.ofSeconds(30);
+
+    /**
+     * how long a transfer, a deposit or a restripe waits for the row lock of an account before it fails,
+     * 0 waits without a limit
+     */
+    private Duration lockTimeout = Duration.ofSeconds(3);
+
+    /**
+     * lock waits, timeouts and deadlocks of accounts are ranked over the last one or two such windows
+     */
+    private Duration lockStatsWindow = Duration.ofMinutes(5);
+
+    /**
+     * number of hottest accounts shown by /actuator/locks
+     */
+    private int lockStatsTop = 20;
+
+    /**
+     * max number of accounts tracked within a window, further accounts only count in the totals
+     */
+    private int lockStatsMaxAccounts = 10_000;
+
+    /**
+     * transfers and deposits that take longer are kept with their lock wait time
+     */
+    private Duration slowTransferThreshold = Duration.ofMillis(500);
+
+    /**
+     * number of recent slow transfers kept
+     */
+    private int slowTransferLogSize = 100;
+
+    public enum TransferMode {
+        /**
+         * accounts are locked and updated through the persistence context
+         */
+        LOCKING,
+        /**
+         * checks and both balance updates are done by one SQL statement
+         */
+        ATOMIC,
+        /**
+         * credits are only appended to the ledger, debits lock just the sender;
+         * balance snapshots catch up on compaction
+         */
+        JOURNAL
+    }
+}
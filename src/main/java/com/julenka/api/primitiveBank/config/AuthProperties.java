@@ -0,0 +1,168 @@
+package com.julenka.api.primitiveBank.config;
+
+import io.jsonwebtoken.SignatureAlgorithm;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Настройки аутентификации
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "bank.auth")
+public class AuthProperties {
+
+    /**
+     * max number of authenticated users kept in memory
+     */
+    private long principalCacheSize = 10_000;
+
+    /**
+     * how long a cached user is trusted before it's loaded again
+     */
+    private Duration principalCacheTtl = Duration.ofMinutes(5);
+
+    /**
+     * build the user of a request from the claims of its token instead of loading it;
+     * only the token version is read from the database, at most once per token-version-cache-ttl
+     */
+    private boolean claimsOnly = false;
+
+    /**
+     * how long a token version is trusted, another instance sees a role change or a deletion after it
+     */
+    private Duration tokenVersionCacheTtl = Duration.ofSeconds(10);
+
+    /**
+     * max number of recently verified tokens whose claims are kept in memory
+     */
+    private long verifiedTokenCacheSize = 10_000;
+
+    /**
+     * lifetime of an access token, a client gets a new one from /auth/refresh without the password
+     */
+    private Duration accessTokenTtl = Duration.ofMinutes(15);
+
+    /**
+     * lifetime of a refresh token, every refresh gives a new one and revokes the used one
+     */
+    private Duration refreshTokenTtl = Duration.ofDays(14);
+
+    /**
+     * max number of revoked access tokens kept in memory, they are dropped when they expire anyway
+     */
+    private long revokedTokenCacheSize = 100_000;
+
+    /**
+     * how often access tokens revoked by other instances are read from the database
+     */
+    private Duration revokedTokenSyncInterval = Duration.ofSeconds(10);
+
+    /**
+     * how often revoked tokens that have expired are deleted
+     */
+    private Duration revokedTokenCleanupInterval = Duration.ofHours(1);
+
+    /**
+     * algorithm of new password hashes, a stored hash of another algorithm or strength
+     * is replaced on the next successful login
+     */
+    private PasswordEncoding passwordEncoding = PasswordEncoding.BCRYPT;
+
+    /**
+     * log2 of BCrypt rounds, every step doubles the cost of a login
+     */
+    private int bcryptStrength = 10;
+
+    /**
+     * rounds of PBKDF2 with HMAC-SHA256
+     */
+    private int pbkdf2Iterations = 100_000;
+
+    /**
+     * threads computing password hashes, 0 takes half of the cores; logins and sign-ups
+     * beyond them wait in the queue and can't take the CPU from other requests
+     */
+    private int passwordHashThreads = 0;
+
+    /**
+     * logins and sign-ups that may wait for a hashing thread, the rest is answered with 503
+     */
+    private int passwordHashQueue = 100;
+
+    /**
+     * how long a login or a sign-up waits for its hash before it's answered with 503
+     */
+    private Duration passwordHashTimeout = Duration.ofSeconds(5);
+
+    /**
+     * keys signing and verifying tokens
+     */
+    private Jwt jwt = new Jwt();
+
+    @Data
+    public static class Jwt {
+
+        /**
+         * algorithm of the key generated at startup when no keys are set
+         */
+        private SignatureAlgorithm algorithm = SignatureAlgorithm.ES256;
+
+        /**
+         * generate a key at startup when no keys are set, for tests and local runs only:
+         * such a key is known to this instance only and is lost on restart;
+         * otherwise the application doesn't start without keys
+         */
+        private boolean allowGeneratedKey = false;
+
+        /**
+         * id of the key that signs new tokens, the first key if empty
+         */
+        private String activeKeyId;
+
+        /**
+         * all accepted keys; a key replaced by rotation stays here without its private part
+         * until the tokens it signed expire
+         */
+        private List<Key> keys = new ArrayList<>();
+    }
+
+    @Data
+    public static class Key {
+
+        /**
+         * key id, sent in the kid header of the tokens
+         */
+        private String id;
+
+        private SignatureAlgorithm algorithm = SignatureAlgorithm.ES256;
+
+        /**
+         * base64 of the PKCS#8 private key, PEM armour is allowed; not needed to only verify
+         */
+        private String privateKey;
+
+        /**
+         * base64 of the X.509 public key, PEM armour is allowed
+         */
+        private String publicKey;
+
+        /**
+         * base64 of the shared secret of an HS* key, such a key isn't published in the JWKS
+         */
+        private String secret;
+    }
+
+    public enum PasswordEncoding {
+        BCRYPT,
+        /**
+         * no dependencies beyond the JDK, the cost is set by {@link #pbkdf2Iterations}
+         */
+        PBKDF2
+    }
+}
@@ -0,0 +1,53 @@
+package com.julenka.api.primitiveBank.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Настройки пула соединений и его текущее состояние, /actuator/datasource
+ */
+@Component
+@RequiredArgsConstructor
+@Endpoint(id = "datasource")
+public class DataSourceEndpoint {
+
+    private final DataSource dataSource;
+    private final DataSourceTuningProperties tuning;
+
+    @ReadOperation
+    public Map<String, Object> dataSource() {
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("tuning", tuning.isTuning());
+        description.put("derivedPoolSize", tuning.derivedPoolSize());
+        if (!(dataSource instanceof HikariDataSource)) {
+            description.put("type", dataSource.getClass().getName());
+            return description;
+        }
+        HikariDataSource hikari = (HikariDataSource) dataSource;
+        description.put("poolName", hikari.getPoolName());
+        description.put("maximumPoolSize", hikari.getMaximumPoolSize());
+        description.put("minimumIdle", hikari.getMinimumIdle());
+        description.put("connectionTimeoutMs", hikari.getConnectionTimeout());
+        Map<String, Object> driver = new TreeMap<>();
+        hikari.getDataSourceProperties().forEach((name, value) -> driver.put(String.valueOf(name),
+                String.valueOf(name).toLowerCase().contains("password") ? "******" : value));
+        description.put("driverProperties", driver);
+        HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+        if (pool != null) {
+            description.put("activeConnections", pool.getActiveConnections());
+            description.put("idleConnections", pool.getIdleConnections());
+            description.put("totalConnections", pool.getTotalConnections());
+            description.put("threadsAwaitingConnection", pool.getThreadsAwaitingConnection());
+        }
+        return description;
+    }
+}
@@ -0,0 +1,54 @@
+package com.julenka.api.primitiveBank.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Настраивает пул Hikari до первого соединения: размер пула и кеш подготовленных запросов драйвера.
+ * Всё, что задано явно в spring.datasource.hikari.*, остаётся как есть.
+ */
+@Component
+public class DataSourceTuner implements BeanPostProcessor, EnvironmentAware {
+
+    private Environment environment;
+
+    @Override
+    public void setEnvironment(Environment environment) {
+        this.environment = environment;
+    }
+
+    // post processors are created before configuration properties beans, so the settings are bound here
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof HikariDataSource)) {
+            return bean;
+        }
+        DataSourceTuningProperties tuning = Binder.get(environment)
+                .bind("bank.datasource", DataSourceTuningProperties.class)
+                .orElseGet(DataSourceTuningProperties::new);
+        if (tuning.isTuning()) {
+            tune((HikariDataSource) bean, tuning, environment.containsProperty("spring.datasource.hikari.maximum-pool-size"));
+        }
+        return bean;
+    }
+
+    static void tune(HikariDataSource dataSource, DataSourceTuningProperties tuning, boolean poolSizeIsSet) {
+        int poolSize = tuning.derivedPoolSize();
+        if (!poolSizeIsSet && poolSize > 0) {
+            dataSource.setMaximumPoolSize(poolSize);
+        }
+        Properties driver = dataSource.getDataSourceProperties();
+        Map.of("prepareThreshold", tuning.getPrepareThreshold(),
+                "preparedStatementCacheQueries", tuning.getPreparedStatementCacheQueries(),
+                "preparedStatementCacheSizeMiB", tuning.getPreparedStatementCacheSizeMib(),
+                "reWriteBatchedInserts", tuning.isReWriteBatchedInserts())
+                .forEach((name, value) -> driver.putIfAbsent(name, String.valueOf(value)));
+    }
+}
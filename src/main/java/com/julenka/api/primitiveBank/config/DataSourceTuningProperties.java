@@ -0,0 +1,70 @@
+package com.julenka.api.primitiveBank.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Размер пула соединений и настройки драйвера Postgres, применяются {@link DataSourceTuner}
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "bank.datasource")
+public class DataSourceTuningProperties {
+
+    /**
+     * apply the settings below, false leaves the Hikari and pgJDBC defaults
+     */
+    private boolean tuning = true;
+
+    /**
+     * max number of pooled connections, 0 derives it from cores and waitRatio;
+     * spring.datasource.hikari.maximum-pool-size wins over both
+     */
+    private int poolSize = 0;
+
+    /**
+     * cores of the database server; 0 leaves the Hikari pool size unless pool-size is set,
+     * the cores of this machine say nothing about the server
+     */
+    private int cores = 0;
+
+    /**
+     * time a transaction waits on row locks and disk per unit of its CPU time,
+     * a waiting transaction holds its connection, so there are cores * (1 + waitRatio) of them
+     */
+    private double waitRatio = 1.0;
+
+    /**
+     * executions of a statement after which the driver prepares it on the server, 1 prepares it at once
+     */
+    private int prepareThreshold = 1;
+
+    /**
+     * number of server-prepared statements kept by each connection
+     */
+    private int preparedStatementCacheQueries = 256;
+
+    /**
+     * memory the cache of each connection may take, in MiB
+     */
+    private int preparedStatementCacheSizeMib = 5;
+
+    /**
+     * a JDBC batch of inserts is sent as multi-row inserts
+     */
+    private boolean reWriteBatchedInserts = true;
+
+    /**
+     * @return pool size to use unless it's set explicitly, 0 if neither pool-size nor cores is set
+     */
+    public int derivedPoolSize() {
+        if (poolSize > 0) {
+            return poolSize;
+        }
+        if (cores <= 0) {
+            return 0;
+        }
+        return Math.max(2, (int) Math.round(cores * (1 + waitRatio)));
+    }
+}
@@ -0,0 +1,37 @@
+package com.julenka.api.primitiveBank.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Настройки выполнения http запросов
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "bank.server")
+public class ExecutionProperties {
+
+    /**
+     * serve requests on virtual threads instead of the Tomcat thread pool, needs Java 21
+     */
+    private boolean virtualThreads = false;
+
+    /**
+     * max number of requests served at once on virtual threads, 0 derives it from the connection pool size
+     */
+    private int maxConcurrentRequests = 0;
+
+    /**
+     * requests served at once per pooled connection when maxConcurrentRequests is 0;
+     * a request holds a connection only for a part of its time, so a little more than one keeps the pool busy
+     */
+    private int requestsPerConnection = 2;
+
+    /**
+     * how long a request waits to be served before it's answered with 503
+     */
+    private Duration requestPermitTimeout = Duration.ofSeconds(1);
+}
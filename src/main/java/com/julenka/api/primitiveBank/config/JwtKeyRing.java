@@ -0,0 +1,243 @@
+package com.julenka.api.primitiveBank.config;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SignatureException;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Ключи подписи токенов по kid. Новые токены подписывает активный ключ, остальные
+ * только проверяют токены, выданные до ротации. Открытые ключи публикуются в JWKS,
+ * так что токен может проверить и шлюз, не зная секретов.
+ */
+public class JwtKeyRing extends SigningKeyResolverAdapter {
+
+    private final Map<String, SigningKey> keys = new LinkedHashMap<>();
+    private final SigningKey active;
+
+    public JwtKeyRing(AuthProperties.Jwt settings) {
+        for (AuthProperties.Key key : settings.getKeys()) {
+            if (key.getId() == null || key.getId().isBlank()) {
+                throw new IllegalStateException("Every bank.auth.jwt.keys entry needs an id");
+            }
+            if (keys.put(key.getId(), load(key)) != null) {
+                throw new IllegalStateException("Key id " + key.getId() + " is used twice in bank.auth.jwt.keys");
+            }
+        }
+        if (keys.isEmpty()) {
+            if (!settings.isAllowGeneratedKey()) {
+                throw new IllegalStateException("No bank.auth.jwt.keys set, tokens of another instance or of the previous run"
+                        + " wouldn't verify; set bank.auth.jwt.allow-generated-key=true to use a generated key in tests");
+            }
+            SigningKey generated = generate(settings.getAlgorithm());
+            keys.put(generated.id, generated);
+        }
+        String activeId = settings.getActiveKeyId() == null || settings.getActiveKeyId().isBlank()
+                ? keys.keySet().iterator().next() : settings.getActiveKeyId();
+        active = keys.get(activeId);
+        if (active == null || active.signing == null) {
+            throw new IllegalStateException("Active key " + activeId + " must be in bank.auth.jwt.keys with its private key or secret");
+        }
+    }
+
+    public SigningKey active() {
+        return active;
+    }
+
+    /**
+     * The key is picked by the kid header and must be of the algorithm the header names,
+     * so a token can't make a public key serve as an HMAC secret.
+     */
+    @Override
+    public Key resolveSigningKey(JwsHeader header, Claims claims) {
+        SigningKey key = header.getKeyId() == null ? null : keys.get(header.getKeyId());
+        if (key == null) {
+            throw new SignatureException("Unknown key id " + header.getKeyId());
+        }
+        if (!key.algorithm.getValue().equals(header.getAlgorithm())) {
+            throw new SignatureException("Key " + key.id + " isn't a " + header.getAlgorithm() + " key");
+        }
+        return key.verifying;
+    }
+
+    /**
+     * @return public keys in the JSON Web Key Set format, shared secrets are left out
+     */
+    public Map<String, Object> jwks() {
+        List<Map<String, Object>> published = new ArrayList<>();
+        keys.values().stream().filter(key -> !key.algorithm.isHmac()).forEach(key -> published.add(key.jwk()));
+        return Map.of("keys", published);
+    }
+
+    private static SigningKey load(AuthProperties.Key key) {
+        SignatureAlgorithm algorithm = key.getAlgorithm();
+        try {
+            if (algorithm.isHmac()) {
+                if (key.getSecret() == null) {
+                    throw new IllegalStateException("Key " + key.getId() + " of " + algorithm + " needs a secret");
+                }
+                SecretKeySpec secret = new SecretKeySpec(decode(key.getSecret()), algorithm.getJcaName());
+                return new SigningKey(key.getId(), algorithm, secret, secret);
+            }
+            // PS* need BouncyCastle on the classpath
+            if (!algorithm.isEllipticCurve() && !(algorithm.isRsa() && algorithm.isJdkStandard())) {
+                throw new IllegalStateException("Key " + key.getId() + " has unsupported algorithm " + algorithm);
+            }
+            if (key.getPublicKey() == null) {
+                throw new IllegalStateException("Key " + key.getId() + " of " + algorithm + " needs a public key");
+            }
+            KeyFactory factory = KeyFactory.getInstance(algorithm.getFamilyName().equals("RSA") ? "RSA" : "EC");
+            PublicKey publicKey = factory.generatePublic(new X509EncodedKeySpec(decode(key.getPublicKey())));
+            PrivateKey privateKey = key.getPrivateKey() == null ? null
+                    : factory.generatePrivate(new PKCS8EncodedKeySpec(decode(key.getPrivateKey())));
+            return new SigningKey(key.getId(), algorithm, privateKey, publicKey);
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            throw new IllegalStateException("Key " + key.getId() + " can't be read: " + e.getMessage(), e);
+        }
+    }
+
+    static SigningKey generate(SignatureAlgorithm algorithm) {
+        String id = "generated-" + UUID.randomUUID();
+        try {
+            if (algorithm.isHmac()) {
+                byte[] secret = new byte[64];
+                new SecureRandom().nextBytes(secret);
+                SecretKeySpec key = new SecretKeySpec(secret, algorithm.getJcaName());
+                return new SigningKey(id, algorithm, key, key);
+            }
+            KeyPairGenerator generator;
+            if (algorithm.isEllipticCurve()) {
+                generator = KeyPairGenerator.getInstance("EC");
+                generator.initialize(new ECGenParameterSpec(curve(algorithm).jcaName));
+            } else if (algorithm.isRsa() && algorithm.isJdkStandard()) {
+                generator = KeyPairGenerator.getInstance("RSA");
+                generator.initialize(2048);
+            } else {
+                throw new IllegalStateException("Can't generate a key for " + algorithm);
+            }
+            KeyPair pair = generator.generateKeyPair();
+            return new SigningKey(id, algorithm, pair.getPrivate(), pair.getPublic());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Can't generate a key for " + algorithm, e);
+        }
+    }
+
+    private static byte[] decode(String base64) {
+        return Base64.getMimeDecoder().decode(base64.replaceAll("-----[A-Z ]+-----", ""));
+    }
+
+    private static Curve curve(SignatureAlgorithm algorithm) {
+        switch (algorithm) {
+            case ES256:
+                return Curve.P256;
+            case ES384:
+                return Curve.P384;
+            case ES512:
+                return Curve.P521;
+            default:
+                throw new IllegalArgumentException(algorithm + " isn't an elliptic curve algorithm");
+        }
+    }
+
+    private enum Curve {
+        P256("P-256", "secp256r1", 32),
+        P384("P-384", "secp384r1", 48),
+        P521("P-521", "secp521r1", 66);
+
+        final String jwkName;
+        final String jcaName;
+        final int coordinateBytes;
+
+        Curve(String jwkName, String jcaName, int coordinateBytes) {
+            this.jwkName = jwkName;
+            this.jcaName = jcaName;
+            this.coordinateBytes = coordinateBytes;
+        }
+    }
+
+    public static class SigningKey {
+
+        private final String id;
+        private final SignatureAlgorithm algorithm;
+        //null for a key that only verifies tokens signed before a rotation
+        private final Key signing;
+        private final Key verifying;
+
+        SigningKey(String id, SignatureAlgorithm algorithm, Key signing, Key verifying) {
+            this.id = id;
+            this.algorithm = algorithm;
+            this.signing = signing;
+            this.verifying = verifying;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public SignatureAlgorithm getAlgorithm() {
+            return algorithm;
+        }
+
+        public Key getSigning() {
+            return signing;
+        }
+
+        private Map<String, Object> jwk() {
+            Map<String, Object> jwk = new LinkedHashMap<>();
+            jwk.put("kid", id);
+            jwk.put("alg", algorithm.getValue());
+            jwk.put("use", "sig");
+            if (verifying instanceof ECPublicKey) {
+                Curve curve = curve(algorithm);
+                ECPublicKey ec = (ECPublicKey) verifying;
+                jwk.put("kty", "EC");
+                jwk.put("crv", curve.jwkName);
+                jwk.put("x", base64Url(ec.getW().getAffineX(), curve.coordinateBytes));
+                jwk.put("y", base64Url(ec.getW().getAffineY(), curve.coordinateBytes));
+            } else {
+                RSAPublicKey rsa = (RSAPublicKey) verifying;
+                jwk.put("kty", "RSA");
+                jwk.put("n", base64Url(rsa.getModulus(), (rsa.getModulus().bitLength() + 7) / 8));
+                jwk.put("e", base64Url(rsa.getPublicExponent(), (rsa.getPublicExponent().bitLength() + 7) / 8));
+            }
+            return jwk;
+        }
+
+        // unsigned big-endian, left-padded to the given length as JWK wants it
+        private static String base64Url(BigInteger value, int length) {
+            byte[] bytes = value.toByteArray();
+            if (bytes.length > length) {
+                bytes = Arrays.copyOfRange(bytes, bytes.length - length, bytes.length);
+            } else if (bytes.length < length) {
+                byte[] padded = new byte[length];
+                System.arraycopy(bytes, 0, padded, length - bytes.length, bytes.length);
+                bytes = padded;
+            }
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        }
+    }
+}
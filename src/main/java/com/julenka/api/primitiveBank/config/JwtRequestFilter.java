@@ -1,11 +1,16 @@
 package com.julenka.api.primitiveBank.config;
 
+import com.julenka.api.primitiveBank.domain.User;
+import com.julenka.api.primitiveBank.services.TokenService;
+import com.julenka.api.primitiveBank.services.UserDetailsLoader;
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
-import lombok.RequiredArgsConstructor;
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.web.filter.OncePerRequestFilter;
 
@@ -15,28 +20,47 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 
-@RequiredArgsConstructor
 public class JwtRequestFilter extends OncePerRequestFilter {
 
-    private final UserDetailsService jwtUserDetailsService;
+    private final UserDetailsLoader jwtUserDetailsService;
     private final JwtTokenUtils jwtTokenUtils;
+    private final TokenService tokenService;
+    private final boolean claimsOnly;
+    private final OutcomeTimer validations;
+
+    public JwtRequestFilter(UserDetailsLoader jwtUserDetailsService, JwtTokenUtils jwtTokenUtils, TokenService tokenService,
+                            AuthProperties authProperties, MeterRegistry meterRegistry) {
+        this.jwtUserDetailsService = jwtUserDetailsService;
+        this.jwtTokenUtils = jwtTokenUtils;
+        this.tokenService = tokenService;
+        this.claimsOnly = authProperties.isClaimsOnly();
+        this.validations = new OutcomeTimer("bank.auth.tokens", "validations of bearer tokens", Tags.empty(), meterRegistry);
+    }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
             throws ServletException, IOException {
         final String requestTokenHeader = request.getHeader("Authorization");
         String username = null;
-        String jwtToken = null;
+        Claims claims = null;
         // JWT Token is in the form "Bearer token". Remove Bearer word and get
         // only the Token
         if (requestTokenHeader != null && requestTokenHeader.startsWith("Bearer ")) {
-            jwtToken = requestTokenHeader.substring(7);
+            String jwtToken = requestTokenHeader.substring(7);
             try {
-                username = jwtTokenUtils.getUsernameFromToken(jwtToken);
+                // the token is verified here once, the claims are reused below
+                claims = validations.record(() -> jwtTokenUtils.parseClaims(jwtToken));
+                // a refresh token is good only for /auth/refresh
+                if (JwtTokenUtils.ACCESS.equals(JwtTokenUtils.tokenType(claims)) && !tokenService.isRevoked(claims)) {
+                    username = claims.getSubject();
+                }
             } catch (IllegalArgumentException e) {
                 System.out.println("Unable to get JWT Token");
             } catch (ExpiredJwtException e) {
                 System.out.println("JWT Token has expired");
+            } catch (JwtException e) {
+                // an unknown kid, a bad signature or a malformed token, the request goes on unauthenticated
+                logger.debug("JWT Token is rejected: " + e.getMessage());
             }
         } else {
             logger.warn("JWT Token does not begin with Bearer String");
@@ -44,9 +68,9 @@ public class JwtRequestFilter extends OncePerRequestFilter {
 
         // Once we get the token validate it.
         if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = this.jwtUserDetailsService.loadUserByUsername(username);
+            UserDetails userDetails = principal(claims, username);
             // if token is valid configure Spring Security to manually set authentication
-            if (jwtTokenUtils.belongsToUserAndNotExpired(jwtToken, userDetails)) {
+            if (userDetails != null && jwtTokenUtils.belongsToUserAndNotExpired(claims, userDetails)) {
                 UsernamePasswordAuthenticationToken usernamePasswordAuthenticationToken = new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
                 usernamePasswordAuthenticationToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                 // After setting the Authentication in the context, we specify
@@ -57,4 +81,16 @@ public class JwtRequestFilter extends OncePerRequestFilter {
         }
         chain.doFilter(request, response);
     }
+
+    /**
+     * In the claims-only mode the user comes from the token, unless the token was issued
+     * without the claims; null if its roles have changed since or the user is deleted.
+     */
+    private UserDetails principal(Claims claims, String username) {
+        User user = claimsOnly ? JwtTokenUtils.principal(claims) : null;
+        if (user == null) {
+            return jwtUserDetailsService.loadPrincipal(username);
+        }
+        return jwtUserDetailsService.isCurrentTokenVersion(user.getId(), user.getTokenVersion()) ? user : null;
+    }
 }
\ No newline at end of file
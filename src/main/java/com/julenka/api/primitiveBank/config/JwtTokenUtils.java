@@ -1,27 +1,106 @@
 package com.julenka.api.primitiveBank.config;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.julenka.api.primitiveBank.domain.Roles;
+import com.julenka.api.primitiveBank.domain.User;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
-import lombok.RequiredArgsConstructor;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Component
-@RequiredArgsConstructor
 public class JwtTokenUtils implements Serializable {
 
-    private final String SECRET = "myyysecretoooyymyysecret";
-    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
-    private static final long JWT_TOKEN_VALIDITY = 24 * HOUR;//1 day
+    private static final String TOKEN_TYPE = "typ";
+    public static final String ACCESS = "access";
+    public static final String REFRESH = "refresh";
+    private static final String USER_ID = "uid";
+    private static final String ROLES = "roles";
+    private static final String TOKEN_VERSION = "ver";
 
+    private final AuthProperties authProperties;
+    private final transient JwtKeyRing keyRing;
+
+    //claims of recently verified tokens by SHA-256 of the token, an entry lives until the token expires
+    private final transient Cache<String, Claims> verifiedTokens;
+
+    public JwtTokenUtils(AuthProperties authProperties) {
+        this.authProperties = authProperties;
+        this.keyRing = new JwtKeyRing(authProperties.getJwt());
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(authProperties.getVerifiedTokenCacheSize())
+                .expireAfter(new Expiry<String, Claims>() {
+                    @Override
+                    public long expireAfterCreate(String key, Claims claims, long currentTime) {
+                        long left = claims.getExpiration().getTime() - System.currentTimeMillis();
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(left, 0));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Claims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Claims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Verifies the token and returns its claims. A token that has been verified recently
+     * isn't verified again until it expires.
+     *
+     * @throws io.jsonwebtoken.JwtException if the token is malformed, forged or expired
+     */
+    public Claims parseClaims(String token) {
+        String digest = digest(token);
+        Claims claims = verifiedTokens.getIfPresent(digest);
+        if (claims == null || isExpired(claims)) {
+            claims = verifyClaims(token);
+            verifiedTokens.put(digest, claims);
+        }
+        return claims;
+    }
+
+    /**
+     * Verifies the signature and parses the token without the cache.
+     */
+    public Claims verifyClaims(String token) {
+        return getAllClaimsFromToken(token);
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isExpired(Claims claims) {
+        return claims.getExpiration().before(new Date());
+    }
 
     //retrieve username from jwt token
     public String getUsernameFromToken(String token) {
@@ -40,9 +119,16 @@ public class JwtTokenUtils implements Serializable {
         return claimsResolver.apply(claims);
     }
 
-    //for retrieveing any information from token we will need the secret key
+    //for retrieveing any information from token we will need the key named by its kid header
     private Claims getAllClaimsFromToken(String token) {
-        return Jwts.parser().setSigningKey(SECRET).parseClaimsJws(token).getBody();
+        return Jwts.parser().setSigningKeyResolver(keyRing).parseClaimsJws(token).getBody();
+    }
+
+    /**
+     * Public keys that verify the tokens, for gateways and other services.
+     */
+    public Map<String, Object> jwks() {
+        return keyRing.jwks();
     }
 
     //check if the token has expired
@@ -51,25 +137,77 @@ public class JwtTokenUtils implements Serializable {
         return expiration.before(new Date());
     }
 
-    //generate token for user
+    //generate access token for user
     public String generateToken(UserDetails userDetails) {
         Map<String, Object> claims = new HashMap<>();
-        return doGenerateToken(claims, userDetails.getUsername());
+        claims.put(TOKEN_TYPE, ACCESS);
+        User user = userDetails instanceof User ? (User) userDetails : null;
+        if (user != null && user.getId() != null && user.getAuthorities() != null) {
+            claims.put(USER_ID, user.getId());
+            claims.put(ROLES, user.getAuthorities().stream().map(Roles::name).collect(Collectors.toList()));
+            claims.put(TOKEN_VERSION, user.getTokenVersion());
+        }
+        return doGenerateToken(claims, userDetails.getUsername(), authProperties.getAccessTokenTtl().toMillis());
+    }
+
+    //generate refresh token for user, it isn't accepted in the Authorization header
+    public String generateRefreshToken(UserDetails userDetails) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(TOKEN_TYPE, REFRESH);
+        return doGenerateToken(claims, userDetails.getUsername(), authProperties.getRefreshTokenTtl().toMillis());
+    }
+
+    /**
+     * @return access or refresh; tokens issued before refresh tokens appeared have no type and are access tokens
+     */
+    public static String tokenType(Claims claims) {
+        String type = claims.get(TOKEN_TYPE, String.class);
+        return type == null ? ACCESS : type;
+    }
+
+    /**
+     * User of an access token built from its claims alone, it has no password and no info.
+     *
+     * @return null for a token issued without the user id, roles and token version
+     */
+    public static User principal(Claims claims) {
+        Long id = claims.get(USER_ID, Long.class);
+        List<?> roles = claims.get(ROLES, List.class);
+        Integer version = claims.get(TOKEN_VERSION, Integer.class);
+        if (id == null || roles == null || version == null) {
+            return null;
+        }
+        User user = new User();
+        user.setId(id);
+        user.setUsername(claims.getSubject());
+        user.setPassword("");
+        user.setAuthorities(roles.stream().map(role -> Roles.valueOf(role.toString())).collect(Collectors.toList()));
+        user.setTokenVersion(version);
+        return user;
     }
 
     //while creating the token -
     //1. Define  claims of the token, like Issuer, Expiration, Subject, and the ID
-    //2. Sign the JWT using the HS512 algorithm and secret key.
+    //2. Sign the JWT with the active key of the key ring, its id goes to the kid header.
     //3. According to JWS Compact Serialization(https://tools.ietf.org/html/draft-ietf-jose-json-web-signature-41#section-3.1)
     //   compaction of the JWT to a URL-safe string
-    private String doGenerateToken(Map<String, Object> claims, String subject) {
+    //4. The ID (jti) lets a single token be revoked
+    private String doGenerateToken(Map<String, Object> claims, String subject, long validity) {
         long now = System.currentTimeMillis();
+        JwtKeyRing.SigningKey key = keyRing.active();
         return Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, key.getId())
                 .setClaims(claims)
+                .setId(UUID.randomUUID().toString())
                 .setSubject(subject)
                 .setIssuedAt(new Date(now))
-                .setExpiration(new Date(now + JWT_TOKEN_VALIDITY))
-                .signWith(SignatureAlgorithm.HS512, SECRET).compact();
+                .setExpiration(new Date(now + validity))
+                .signWith(key.getAlgorithm(), key.getSigning()).compact();
+    }
+
+    //validate already parsed claims
+    public boolean belongsToUserAndNotExpired(Claims claims, UserDetails userDetails) {
+        return claims.getSubject().equals(userDetails.getUsername()) && !isExpired(claims);
     }
 
     //validate token
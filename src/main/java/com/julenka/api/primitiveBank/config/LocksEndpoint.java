@@ -0,0 +1,25 @@
+package com.julenka.api.primitiveBank.config;
+
+import com.julenka.api.primitiveBank.services.LockContentionMonitor;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Самые конфликтные счета и последние медленные переводы, /actuator/locks
+ */
+@Component
+@RequiredArgsConstructor
+@Endpoint(id = "locks")
+public class LocksEndpoint {
+
+    private final LockContentionMonitor lockContentionMonitor;
+
+    @ReadOperation
+    public Map<String, Object> locks() {
+        return lockContentionMonitor.report();
+    }
+}
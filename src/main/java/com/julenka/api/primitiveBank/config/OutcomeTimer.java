@@ -0,0 +1,90 @@
+package com.julenka.api.primitiveBank.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Таймер операции с тегом outcome: success или короткое имя класса исключения.
+ * Таймер каждого исхода регистрируется один раз, дальше вызов стоит одного поиска в map.
+ * Публикует гистограмму, перцентили по ней считает Prometheus.
+ */
+public class OutcomeTimer {
+
+    public static final String SUCCESS = "success";
+
+    //upper bound of the histogram buckets, slower calls land in +Inf
+    private static final Duration MAX_EXPECTED = Duration.ofSeconds(10);
+
+    private final String name;
+    private final String description;
+    private final Tags tags;
+    private final MeterRegistry meterRegistry;
+    private final Function<RuntimeException, String> classifier;
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public OutcomeTimer(String name, String description, Tags tags, MeterRegistry meterRegistry) {
+        this(name, description, tags, meterRegistry, e -> e.getClass().getSimpleName());
+    }
+
+    /**
+     * @param classifier outcome of a failed call, must give a small fixed set of values
+     */
+    public OutcomeTimer(String name, String description, Tags tags, MeterRegistry meterRegistry,
+                        Function<RuntimeException, String> classifier) {
+        this.name = name;
+        this.description = description;
+        this.tags = tags;
+        this.meterRegistry = meterRegistry;
+        this.classifier = classifier;
+        timer(SUCCESS);
+    }
+
+    public <T> T record(Supplier<T> action) {
+        long start = System.nanoTime();
+        String outcome = SUCCESS;
+        try {
+            return action.get();
+        } catch (RuntimeException e) {
+            outcome = classifier.apply(e);
+            throw e;
+        } finally {
+            record(outcome, System.nanoTime() - start);
+        }
+    }
+
+    public void record(Runnable action) {
+        record(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * For calls whose outcome isn't an exception, e.g. a rejected token.
+     */
+    public void record(String outcome, long nanos) {
+        timer(outcome).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer timer(String outcome) {
+        Timer timer = timers.get(outcome);
+        if (timer != null) {
+            return timer;
+        }
+        return timers.computeIfAbsent(outcome, key -> Timer.builder(name)
+                .description(description)
+                .tags(tags)
+                .tag("outcome", key)
+                .publishPercentileHistogram()
+                .maximumExpectedValue(MAX_EXPECTED)
+                .register(meterRegistry));
+    }
+}
@@ -0,0 +1,85 @@
+package com.julenka.api.primitiveBank.config;
+
+import com.julenka.api.primitiveBank.config.AuthProperties.PasswordEncoding;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Хэши паролей с префиксом алгоритма: {bcrypt}... или {pbkdf2}...
+ * Хэши без префикса, записанные до его появления, считаются BCrypt.
+ */
+final class PasswordEncoders {
+
+    static final String BCRYPT = "bcrypt";
+    static final String PBKDF2 = "pbkdf2";
+
+    private PasswordEncoders() {
+    }
+
+    static PasswordEncoder delegating(AuthProperties authProperties) {
+        BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(authProperties.getBcryptStrength());
+        String idForEncode = authProperties.getPasswordEncoding() == PasswordEncoding.PBKDF2 ? PBKDF2 : BCRYPT;
+        DelegatingPasswordEncoder encoder = new DelegatingPasswordEncoder(idForEncode,
+                Map.of(BCRYPT, bcrypt, PBKDF2, new Pbkdf2(authProperties.getPbkdf2Iterations())));
+        encoder.setDefaultPasswordEncoderForMatches(bcrypt);
+        return encoder;
+    }
+
+    /**
+     * PBKDF2 with HMAC-SHA256 that keeps the number of iterations in the hash, iterations$hex,
+     * so changing them doesn't lock out users whose hashes were made with the old number.
+     */
+    static class Pbkdf2 implements PasswordEncoder {
+
+        private static final int SALT_BYTES = 16;
+        private static final int HASH_BITS = 256;
+
+        private final int iterations;
+        private final Map<Integer, Pbkdf2PasswordEncoder> byIterations = new ConcurrentHashMap<>();
+
+        Pbkdf2(int iterations) {
+            if (iterations < 1) {
+                throw new IllegalArgumentException("PBKDF2 needs at least one iteration");
+            }
+            this.iterations = iterations;
+        }
+
+        @Override
+        public String encode(CharSequence rawPassword) {
+            return iterations + "$" + encoder(iterations).encode(rawPassword);
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            int separator = encodedPassword == null ? -1 : encodedPassword.indexOf('$');
+            if (separator < 1) {
+                return false;
+            }
+            int hashIterations;
+            try {
+                hashIterations = Integer.parseInt(encodedPassword.substring(0, separator));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            return hashIterations > 0 && encoder(hashIterations).matches(rawPassword, encodedPassword.substring(separator + 1));
+        }
+
+        @Override
+        public boolean upgradeEncoding(String encodedPassword) {
+            return encodedPassword == null || !encodedPassword.startsWith(iterations + "$");
+        }
+
+        private Pbkdf2PasswordEncoder encoder(int iterations) {
+            return byIterations.computeIfAbsent(iterations, n -> {
+                Pbkdf2PasswordEncoder encoder = new Pbkdf2PasswordEncoder("", SALT_BYTES, n, HASH_BITS);
+                encoder.setAlgorithm(Pbkdf2PasswordEncoder.SecretKeyFactoryAlgorithm.PBKDF2WithHmacSHA256);
+                return encoder;
+            });
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.julenka.api.primitiveBank.config;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.util.StringUtils;
+
+/**
+ * Неблокирующий доступ к базе через R2DBC для профиля reactive.
+ * Пул соединений не объявлен бином: увидев ConnectionFactory, Spring Boot не стал бы создавать
+ * DataSource, на котором работает всё остальное приложение. По той же причине бином объявлен
+ * только TransactionalOperator, а не менеджер транзакций R2DBC.
+ * Адрес базы берётся из spring.r2dbc.url, а если он не задан - из spring.datasource.url.
+ */
+@Configuration
+@Profile("reactive")
+@EnableConfigurationProperties(R2dbcProperties.class)
+public class ReactiveConfig implements DisposableBean {
+
+    private ConnectionPool connectionPool;
+
+    @Bean
+    public DatabaseClient databaseClient(R2dbcProperties r2dbcProperties, DataSourceProperties dataSourceProperties) {
+        ConnectionFactoryOptions.Builder options = ConnectionFactoryOptions.parse(r2dbcUrl(r2dbcProperties, dataSourceProperties)).mutate();
+        String username = StringUtils.hasText(r2dbcProperties.getUrl()) ? r2dbcProperties.getUsername() : dataSourceProperties.determineUsername();
+        String password = StringUtils.hasText(r2dbcProperties.getUrl()) ? r2dbcProperties.getPassword() : dataSourceProperties.determinePassword();
+        if (username != null) {
+            options.option(ConnectionFactoryOptions.USER, username);
+        }
+        if (password != null) {
+            options.option(ConnectionFactoryOptions.PASSWORD, password);
+        }
+        R2dbcProperties.Pool pool = r2dbcProperties.getPool();
+        connectionPool = new ConnectionPool(ConnectionPoolConfiguration.builder(ConnectionFactories.get(options.build()))
+                .initialSize(pool.getInitialSize())
+                .maxSize(pool.getMaxSize())
+                .maxIdleTime(pool.getMaxIdleTime())
+                .build());
+        return DatabaseClient.create(connectionPool);
+    }
+
+    @Bean
+    public TransactionalOperator transactionalOperator(DatabaseClient databaseClient) {
+        return TransactionalOperator.create(new R2dbcTransactionManager(databaseClient.getConnectionFactory()));
+    }
+
+    @Override
+    public void destroy() {
+        if (connectionPool != null) {
+            connectionPool.dispose();
+        }
+    }
+
+    static String r2dbcUrl(R2dbcProperties r2dbcProperties, DataSourceProperties dataSourceProperties) {
+        if (StringUtils.hasText(r2dbcProperties.getUrl())) {
+            return r2dbcProperties.getUrl();
+        }
+        String jdbcUrl = dataSourceProperties.determineUrl();
+        if (jdbcUrl == null || !jdbcUrl.startsWith("jdbc:postgresql:")) {
+            throw new IllegalStateException("spring.r2dbc.url must be set, it can't be derived from " + jdbcUrl);
+        }
+        return "r2dbc:" + jdbcUrl.substring("jdbc:".length());
+    }
+}
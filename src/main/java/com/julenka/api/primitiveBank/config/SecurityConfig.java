@@ -1,7 +1,9 @@
 package com.julenka.api.primitiveBank.config;
 
-import com.julenka.api.primitiveBank.repositories.UserRepo;
+import com.julenka.api.primitiveBank.domain.Roles;
+import com.julenka.api.primitiveBank.services.TokenService;
 import com.julenka.api.primitiveBank.services.UserDetailsLoader;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -11,7 +13,6 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.builders.WebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.web.cors.CorsConfiguration;
@@ -31,11 +32,20 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
     private JwtAuthenticationEntryPoint jwtAuthenticationEntryPoint;
 
     @Autowired
-    private UserRepo repo;
+    private UserDetailsLoader userDetailsLoader;
 
     @Autowired
     private JwtTokenUtils jwtTokenUtils;
 
+    @Autowired
+    private TokenService tokenService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private AuthProperties authProperties;
+
     @Bean
     public StupidGuardingFilter guardingFilter() {
         return new StupidGuardingFilter();
@@ -47,14 +57,19 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
         return super.authenticationManagerBean();
     }
 
+    /**
+     * The authentication manager picks up {@link UserDetailsLoader} as the password service,
+     * so an outdated hash is replaced after a successful login.
+     */
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        return new BoundedPasswordEncoder(PasswordEncoders.delegating(authProperties), BoundedPasswordEncoder.threads(authProperties),
+                authProperties.getPasswordHashQueue(), authProperties.getPasswordHashTimeout(), meterRegistry);
     }
 
     @Bean
     public JwtRequestFilter jwtRequestFilter() {
-        return new JwtRequestFilter(new UserDetailsLoader(repo), jwtTokenUtils);
+        return new JwtRequestFilter(userDetailsLoader, jwtTokenUtils, tokenService, authProperties, meterRegistry);
     }
 
     @Override
@@ -63,6 +78,9 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                 .cors()
                 // dont authenticate this particular requests
                 .and().authorizeRequests().antMatchers(noAuth()).permitAll()
+                // scraped by Prometheus without a token
+                .antMatchers("/actuator/health", "/actuator/prometheus").permitAll()
+                .antMatchers("/actuator/datasource", "/actuator/locks").hasAuthority(Roles.ADMIN.name())
                 // all other requests need to be authenticated
                 .anyRequest().authenticated()
                 .and().exceptionHandling().authenticationEntryPoint(jwtAuthenticationEntryPoint)
@@ -90,7 +108,7 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
         configuration.setAllowCredentials(true);
         // setAllowedHeaders is important! Without it, OPTIONS preflight request
         // will fail with 403 Invalid CORS request
-        configuration.setAllowedHeaders(List.of("Authorization", "Cache-Control", "Content-Type"));
+        configuration.setAllowedHeaders(List.of("Authorization", "Cache-Control", "Content-Type", "Idempotency-Key"));
         final UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
         source.registerCorsConfiguration("/**", configuration);
         return source;
@@ -100,6 +118,9 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
         return new String[]{
                 "/users/create",      //создать нового юзера
                 "/auth/authenticate", //аутентификация
+                "/auth/refresh",      //новая пара токенов по refresh-токену
+                "/auth/logout",       //отзыв токенов
+                "/auth/jwks",         //открытые ключи токенов
                 "/documentation/swagger-ui/**"
         };
 
@@ -0,0 +1,27 @@
+package com.julenka.api.primitiveBank.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Настройки пользователей
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "bank.users")
+public class UserProperties {
+
+    /**
+     * max number of users returned by GET /users/get/{username} kept in memory, 0 switches the cache off.
+     * Changes made by another instance are seen only when the cached user expires.
+     */
+    private long profileCacheSize = 0;
+
+    /**
+     * how long a cached user is served without reading the database
+     */
+    private Duration profileCacheTtl = Duration.ofMinutes(1);
+}
@@ -0,0 +1,76 @@
+package com.julenka.api.primitiveBank.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Обслуживание запросов на виртуальных потоках, включается bank.server.virtual-threads=true.
+ * Собирается на Java 11, а виртуальные потоки берёт через reflection, запускать нужно на Java 21.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "bank.server", name = "virtual-threads", havingValue = "true")
+public class VirtualThreadsConfig implements DisposableBean {
+
+    private final ExecutorService executor = newVirtualThreadExecutor();
+
+    /**
+     * Tomcat runs every request on a new virtual thread instead of its own thread pool.
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadsCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(executor);
+    }
+
+    /**
+     * Nothing bounds the number of virtual threads, so the limit is put before everything else.
+     */
+    @Bean
+    public FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilter(
+            ExecutionProperties executionProperties, DataSource dataSource, MeterRegistry meterRegistry) {
+        FilterRegistrationBean<ConcurrencyLimitFilter> registration = new FilterRegistrationBean<>(new ConcurrencyLimitFilter(
+                maxConcurrentRequests(executionProperties, dataSource),
+                executionProperties.getRequestPermitTimeout(), meterRegistry));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    static int maxConcurrentRequests(ExecutionProperties executionProperties, DataSource dataSource) {
+        if (executionProperties.getMaxConcurrentRequests() > 0) {
+            return executionProperties.getMaxConcurrentRequests();
+        }
+        if (!(dataSource instanceof HikariDataSource)) {
+            throw new IllegalStateException("bank.server.max-concurrent-requests must be set for "
+                    + dataSource.getClass().getName());
+        }
+        return ((HikariDataSource) dataSource).getMaximumPoolSize() * executionProperties.getRequestsPerConnection();
+    }
+
+    static ExecutorService newVirtualThreadExecutor() {
+        if (Runtime.version().feature() < 21) {
+            throw new IllegalStateException("bank.server.virtual-threads needs Java 21, running on " + Runtime.version());
+        }
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Virtual threads are not available", e);
+        }
+    }
+}
@@ -1,12 +1,25 @@
 package com.julenka.api.primitiveBank.controller;
 
+import com.julenka.api.primitiveBank.dto.AccountPageDTO;
 import com.julenka.api.primitiveBank.dto.FundDepositDTO;
+import com.julenka.api.primitiveBank.dto.HistoryPageDTO;
 import com.julenka.api.primitiveBank.dto.MoneyTransferDTO;
+import com.julenka.api.primitiveBank.dto.TransferResultDTO;
 import com.julenka.api.primitiveBank.services.AccountService;
+import com.julenka.api.primitiveBank.services.HistoryService;
+import com.julenka.api.primitiveBank.services.IdempotencyService;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.julenka.api.primitiveBank.services.IdempotencyService.IDEMPOTENCY_KEY;
 
 @RestController
 @RequiredArgsConstructor
@@ -15,6 +28,8 @@ import org.springframework.web.bind.annotation.*;
 public class AccountsController {
 
     private final AccountService accountService;
+    private final IdempotencyService idempotencyService;
+    private final HistoryService historyService;
 
     @PostMapping("/create")
     @ApiOperation("Создание счёта")
@@ -22,16 +37,58 @@ public class AccountsController {
         return accountService.createAccountForCurrentUser();
     }
 
+    @GetMapping
+    @ApiOperation("Счета текущего пользователя постранично")
+    public AccountPageDTO getAccounts(@RequestParam(value = "after", required = false) Long after,
+                                      @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        return accountService.getAccountsOfCurrentUser(after, limit);
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation("Все счета текущего пользователя одним потоком")
+    public StreamingResponseBody streamAccounts() {
+        return accountService.streamAccountsOfCurrentUser();
+    }
+
+    @GetMapping("/{id}/history")
+    @ApiOperation("История операций по счёту от новых к старым")
+    public HistoryPageDTO getHistory(@PathVariable("id") Long id,
+                                     @RequestParam(value = "before", required = false) String before,
+                                     @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        return historyService.getHistory(id, before, limit);
+    }
+
     @PostMapping("/fund")
     @ApiOperation("Пополнение счета")
-    public Long fundDepositOfCurrentUser(@RequestBody FundDepositDTO dto) {
-        return accountService.fundDepositOfCurrentUser(dto);
+    public Long fundDepositOfCurrentUser(@RequestBody FundDepositDTO dto,
+                                         @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        return idempotencyService.execute(idempotencyKey, "fund", dto, Long.class,
+                () -> accountService.fundDepositOfCurrentUser(dto));
     }
 
     @PostMapping("/transfer")
     @ApiOperation("Перевод денег между счетами")
-    public void transferMoneyBetweenAccounts(@RequestBody MoneyTransferDTO dto) {
-        accountService.transferMoney(dto);
+    public void transferMoneyBetweenAccounts(@RequestBody MoneyTransferDTO dto,
+                                             @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        idempotencyService.execute(idempotencyKey, "transfer", dto, Void.class, () -> {
+            accountService.transferMoney(dto);
+            return null;
+        });
+    }
+
+    @PostMapping("/transfer/batch")
+    @ApiOperation("Пакетный перевод денег между счетами")
+    public List<TransferResultDTO> transferMoneyBatch(@RequestBody List<MoneyTransferDTO> dtos,
+                                                      @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        return Arrays.asList(idempotencyService.execute(idempotencyKey, "transfer/batch", dtos, TransferResultDTO[].class,
+                () -> accountService.transferMoneyBatch(dtos).toArray(new TransferResultDTO[0])));
+    }
+
+    @PreAuthorize("hasAuthority('ADMIN')")
+    @PostMapping("/stripe/{id}")
+    @ApiOperation("Разбиение счёта на слоты для частых поступлений")
+    public void stripeAccount(@PathVariable("id") Long id, @RequestParam("slots") int slots) {
+        accountService.stripeAccount(id, slots);
     }
 
     @DeleteMapping("/close/{id}")
@@ -1,49 +1,84 @@
 package com.julenka.api.primitiveBank.controller;
 
 import com.julenka.api.primitiveBank.config.JwtTokenUtils;
+import com.julenka.api.primitiveBank.config.OutcomeTimer;
 import com.julenka.api.primitiveBank.dto.AuthRequestDTO;
 import com.julenka.api.primitiveBank.dto.AuthResponseDTO;
-import com.julenka.api.primitiveBank.services.UserDetailsLoader;
+import com.julenka.api.primitiveBank.dto.RefreshTokenDTO;
+import com.julenka.api.primitiveBank.services.TokenService;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.v3.oas.annotations.tags.Tag;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.http.HttpHeaders;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.DisabledException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import javax.transaction.Transactional;
 import javax.validation.Valid;
+import java.util.Map;
 
 @RestController
-@RequiredArgsConstructor
 @RequestMapping("/auth")
 @Tag(name = "auth-controller", description = "Аутентификация пользователя")
 public class AuthController {
 
     private final AuthenticationManager authenticationManager;
-    private final JwtTokenUtils jwtTokenUtil;
-    private final UserDetailsLoader userDetailsService;
+    private final TokenService tokenService;
+    private final JwtTokenUtils jwtTokenUtils;
+    private final OutcomeTimer passwordChecks;
+
+    public AuthController(AuthenticationManager authenticationManager, TokenService tokenService, JwtTokenUtils jwtTokenUtils,
+                          MeterRegistry meterRegistry) {
+        this.authenticationManager = authenticationManager;
+        this.tokenService = tokenService;
+        this.jwtTokenUtils = jwtTokenUtils;
+        this.passwordChecks = new OutcomeTimer("bank.auth.password.checks",
+                "checks of username and password, hashing the password takes most of it", Tags.empty(), meterRegistry);
+    }
 
     @ApiOperation("Получение токена")
     @PostMapping(value = "/authenticate")
-    @Transactional
     public AuthResponseDTO createAuthenticationToken(@RequestBody @Valid AuthRequestDTO authenticationRequest) throws Exception {
-        authenticate(authenticationRequest.getUsername(), authenticationRequest.getPassword());
-        final UserDetails userDetails = userDetailsService.loadUserByUsername(authenticationRequest.getUsername());
-        final String token = jwtTokenUtil.generateToken(userDetails);
-        return new AuthResponseDTO(token);
+        // the principal is the user loaded for the password check; no transaction around it,
+        // a login waiting for a hashing thread mustn't hold a connection
+        final UserDetails userDetails = (UserDetails) authenticate(authenticationRequest.getUsername(), authenticationRequest.getPassword())
+                .getPrincipal();
+        return tokenService.issue(userDetails);
+    }
+
+    @ApiOperation("Новая пара токенов по refresh-токену, без пароля")
+    @PostMapping(value = "/refresh")
+    public AuthResponseDTO refresh(@RequestBody @Valid RefreshTokenDTO refreshRequest) {
+        return tokenService.refresh(refreshRequest.getRefreshToken());
+    }
+
+    @ApiOperation("Выход: отзыв refresh-токена и текущего access-токена")
+    @PostMapping(value = "/logout")
+    public void logout(@RequestBody @Valid RefreshTokenDTO logoutRequest,
+                       @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        String accessToken = authorization != null && authorization.startsWith("Bearer ") ? authorization.substring(7) : null;
+        tokenService.logout(logoutRequest.getRefreshToken(), accessToken);
+    }
 
+    @ApiOperation("Открытые ключи для проверки токенов (JWKS)")
+    @GetMapping(value = "/jwks")
+    public Map<String, Object> jwks() {
+        return jwtTokenUtils.jwks();
     }
 
-    private void authenticate(String username, String password) throws Exception {
+    private Authentication authenticate(String username, String password) throws Exception {
         try {
-            authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(username, password));
+            return passwordChecks.record(() -> authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(username, password)));
         } catch (DisabledException e) {
             throw new Exception("USER_DISABLED", e);
         } catch (BadCredentialsException e) {
@@ -0,0 +1,42 @@
+package com.julenka.api.primitiveBank.controller;
+
+import com.julenka.api.primitiveBank.dto.FundDepositDTO;
+import com.julenka.api.primitiveBank.dto.MoneyTransferDTO;
+import com.julenka.api.primitiveBank.services.ReactiveAccountService;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+@RestController
+@Profile("reactive")
+@RequiredArgsConstructor
+@RequestMapping("/reactive/accounts")
+@Tag(name = "reactive-accounts-controller", description = "Неблокирующие операции со счетами, профиль reactive")
+public class ReactiveAccountsController {
+
+    private final ReactiveAccountService reactiveAccountService;
+
+    @PostMapping("/create")
+    @ApiOperation("Создание счёта")
+    public Mono<Long> createAccount() {
+        return reactiveAccountService.createAccountForCurrentUser();
+    }
+
+    @PostMapping("/fund")
+    @ApiOperation("Пополнение счета")
+    public Mono<Long> fundDepositOfCurrentUser(@RequestBody FundDepositDTO dto) {
+        return reactiveAccountService.fundDepositOfCurrentUser(dto);
+    }
+
+    @PostMapping("/transfer")
+    @ApiOperation("Перевод денег между счетами")
+    public Mono<Void> transferMoneyBetweenAccounts(@RequestBody MoneyTransferDTO dto) {
+        return reactiveAccountService.transferMoney(dto);
+    }
+}
@@ -1,5 +1,6 @@
 package com.julenka.api.primitiveBank.controller;
 
+import com.julenka.api.primitiveBank.domain.Roles;
 import com.julenka.api.primitiveBank.dto.CreateUserDTO;
 import com.julenka.api.primitiveBank.dto.GetUserDTO;
 import com.julenka.api.primitiveBank.dto.UserInfoDTO;
@@ -10,6 +11,8 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Set;
+
 @RestController
 @RequiredArgsConstructor
 @RequestMapping("/users")
@@ -43,6 +46,13 @@ public class UserController {
         userService.deleteUserById(id);
     }
 
+    @PreAuthorize("hasAuthority('ADMIN')")
+    @PostMapping("/changeRoles/{id}")
+    @ApiOperation("Изменение ролей юзера по id")
+    public void changeRoles(@PathVariable("id") Long id, @RequestBody Set<Roles> roles) {
+        userService.changeRoles(id, roles);
+    }
+
     @GetMapping("/get/{username}")
     @ApiOperation(("Получение юзера по логину"))
     public GetUserDTO getUserByUsername(@PathVariable("username") String username) {
@@ -2,6 +2,8 @@ package com.julenka.api.primitiveBank.domain;
 
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 import javax.persistence.*;
 import javax.validation.constraints.NotNull;
@@ -14,14 +16,24 @@ import java.math.BigDecimal;
 public class Account {
 
     @Id
-    @GeneratedValue()
+    @GeneratedValue(generator = "accounts_id_seq")
+    @GenericGenerator(name = "accounts_id_seq", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+            @Parameter(name = "sequence_name", value = "accounts_id_seq"),
+            @Parameter(name = "increment_size", value = "50"),
+            @Parameter(name = "optimizer", value = "pooled-lo")})
     private Long id;
 
     @NotNull
     @Column(name = "balance", columnDefinition = "Decimal(10,2) default '0.00'")
     private BigDecimal balance = BigDecimal.ZERO;
 
-    @ManyToOne(fetch = FetchType.EAGER)
+    /**
+     * number of slot rows the incoming money is spread over, 0 if the account isn't striped
+     */
+    @Column(name = "slots")
+    private int slots;
+
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
     private User user;
 
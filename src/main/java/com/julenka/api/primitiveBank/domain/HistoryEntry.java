@@ -0,0 +1,59 @@
+package com.julenka.api.primitiveBank.domain;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Операция в истории счёта для выписок. Таблица разбита на партиции по месяцам, записи не меняются.
+ */
+@Entity
+@Data
+@Table(name = "account_history")
+@NoArgsConstructor
+public class HistoryEntry {
+
+    @Id
+    @GeneratedValue(generator = "account_history_id_seq")
+    @GenericGenerator(name = "account_history_id_seq", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+            @Parameter(name = "sequence_name", value = "account_history_id_seq"),
+            @Parameter(name = "increment_size", value = "50"),
+            @Parameter(name = "optimizer", value = "pooled-lo")})
+    private Long id;
+
+    @NotNull
+    @Column(name = "account_id", updatable = false)
+    private Long accountId;
+
+    /**
+     * the other account of a transfer, null for a deposit
+     */
+    @Column(name = "counterparty_id", updatable = false)
+    private Long counterpartyId;
+
+    @NotNull
+    @Column(name = "amount", updatable = false)
+    private BigDecimal amount;
+
+    @NotNull
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", updatable = false)
+    private LedgerEntryType type;
+
+    @NotNull
+    @Column(name = "created_at", updatable = false)
+    private Instant createdAt = Instant.now();
+
+    public HistoryEntry(Long accountId, Long counterpartyId, BigDecimal amount, LedgerEntryType type) {
+        this.accountId = accountId;
+        this.counterpartyId = counterpartyId;
+        this.amount = amount;
+        this.type = type;
+    }
+}
@@ -0,0 +1,48 @@
+package com.julenka.api.primitiveBank.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * Ключ идемпотентности запроса пользователя: хэш запроса и сохранённый ответ.
+ */
+@Entity
+@Data
+@Table(name = "idempotency_keys")
+@IdClass(IdempotencyKey.Pk.class)
+@NoArgsConstructor
+public class IdempotencyKey {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Id
+    @Column(name = "idempotency_key")
+    private String key;
+
+    @Column(name = "request_hash", updatable = false)
+    private String requestHash;
+
+    /**
+     * JSON of the result, null while the request is in progress
+     */
+    @Column(name = "response")
+    private String response;
+
+    @Column(name = "created_at", updatable = false)
+    private Instant createdAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Pk implements Serializable {
+        private Long userId;
+        private String key;
+    }
+}
@@ -0,0 +1,57 @@
+package com.julenka.api.primitiveBank.domain;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Запись журнала операций по счёту. Сумма со знаком: зачисление положительное, списание отрицательное.
+ * Записи не меняются, кроме отметки о том, что сумма уже учтена в балансе счёта.
+ */
+@Entity
+@Data
+@Table(name = "ledger_entries")
+@NoArgsConstructor
+public class LedgerEntry {
+
+    @Id
+    @GeneratedValue(generator = "ledger_entries_id_seq")
+    @GenericGenerator(name = "ledger_entries_id_seq", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+            @Parameter(name = "sequence_name", value = "ledger_entries_id_seq"),
+            @Parameter(name = "increment_size", value = "50"),
+            @Parameter(name = "optimizer", value = "pooled-lo")})
+    private Long id;
+
+    @NotNull
+    @Column(name = "account_id", updatable = false)
+    private Long accountId;
+
+    @NotNull
+    @Column(name = "amount", updatable = false)
+    private BigDecimal amount;
+
+    @NotNull
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", updatable = false)
+    private LedgerEntryType type;
+
+    @NotNull
+    @Column(name = "created_at", updatable = false)
+    private Instant createdAt = Instant.now();
+
+    @Column(name = "applied")
+    private boolean applied;
+
+    public LedgerEntry(Long accountId, BigDecimal amount, LedgerEntryType type, boolean applied) {
+        this.accountId = accountId;
+        this.amount = amount;
+        this.type = type;
+        this.applied = applied;
+    }
+}
@@ -0,0 +1,6 @@
+package com.julenka.api.primitiveBank.domain;
+
+public enum LedgerEntryType {
+
+    DEPOSIT, TRANSFER_IN, TRANSFER_OUT
+}
@@ -0,0 +1,34 @@
+package com.julenka.api.primitiveBank.domain;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.Instant;
+
+/**
+ * Отозванный токен: использованный refresh-токен или токены, закрытые при выходе.
+ * Хранится, пока токен не истечёт сам.
+ */
+@Entity
+@Data
+@Table(name = "revoked_tokens")
+@NoArgsConstructor
+public class RevokedToken {
+
+    @Id
+    @Column(name = "jti")
+    private String jti;
+
+    @Column(name = "token_type", updatable = false)
+    private String tokenType;
+
+    @Column(name = "expires_at", updatable = false)
+    private Instant expiresAt;
+
+    @Column(name = "revoked_at", insertable = false, updatable = false)
+    private Instant revokedAt;
+}
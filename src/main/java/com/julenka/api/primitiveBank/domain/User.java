@@ -2,6 +2,8 @@ package com.julenka.api.primitiveBank.domain;
 
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 import org.springframework.security.core.userdetails.UserDetails;
 
 import javax.persistence.*;
@@ -18,7 +20,11 @@ import java.util.List;
 public class User implements UserDetails {
 
     @Id
-    @GeneratedValue()
+    @GeneratedValue(generator = "users_id_seq")
+    @GenericGenerator(name = "users_id_seq", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+            @Parameter(name = "sequence_name", value = "users_id_seq"),
+            @Parameter(name = "increment_size", value = "50"),
+            @Parameter(name = "optimizer", value = "pooled-lo")})
     private Long id;
 
     @NotNull
@@ -43,6 +49,10 @@ public class User implements UserDetails {
     @Column(name = "authorities")
     private Collection<Roles> authorities;
 
+    //goes up when the roles change, tokens carrying an older one aren't accepted
+    @Column(name = "token_version")
+    private int tokenVersion;
+
     @Override
     public boolean isAccountNonExpired() {
         return true;
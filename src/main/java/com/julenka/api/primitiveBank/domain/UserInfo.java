@@ -1,6 +1,8 @@
 package com.julenka.api.primitiveBank.domain;
 
 import lombok.Data;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 import javax.persistence.*;
 import javax.validation.constraints.NotNull;
@@ -11,7 +13,11 @@ import javax.validation.constraints.NotNull;
 public class UserInfo {
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(generator = "userinfo_id_seq")
+    @GenericGenerator(name = "userinfo_id_seq", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+            @Parameter(name = "sequence_name", value = "userinfo_id_seq"),
+            @Parameter(name = "increment_size", value = "50"),
+            @Parameter(name = "optimizer", value = "pooled-lo")})
     private Long id;
 
     @OneToOne(mappedBy = "userInfo")
@@ -0,0 +1,22 @@
+package com.julenka.api.primitiveBank.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@ApiModel("Счёт")
+public class AccountDTO {
+
+    @ApiModelProperty("id счёта")
+    private Long id;
+
+    @ApiModelProperty("Баланс с учётом слотов и ещё не учтённых операций")
+    private BigDecimal balance;
+}
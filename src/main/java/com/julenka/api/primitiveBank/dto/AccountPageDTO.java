@@ -0,0 +1,22 @@
+package com.julenka.api.primitiveBank.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@ApiModel("Страница счетов")
+public class AccountPageDTO {
+
+    @ApiModelProperty("Счета по возрастанию id")
+    private List<AccountDTO> accounts;
+
+    @ApiModelProperty("Курсор следующей страницы (параметр after), null на последней странице")
+    private Long nextCursor;
+}
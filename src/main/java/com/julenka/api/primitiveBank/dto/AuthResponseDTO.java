@@ -9,6 +9,22 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 public class AuthResponseDTO {
 
+    /**
+     * short-lived access token for the Authorization header
+     */
     private String jwtToken;
 
+    /**
+     * single-use token for /auth/refresh
+     */
+    private String refreshToken;
+
+    /**
+     * seconds the access token is valid for
+     */
+    private long expiresIn;
+
+    public AuthResponseDTO(String jwtToken) {
+        this.jwtToken = jwtToken;
+    }
 }
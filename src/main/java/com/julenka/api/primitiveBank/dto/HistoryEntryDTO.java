@@ -0,0 +1,33 @@
+package com.julenka.api.primitiveBank.dto;
+
+import com.julenka.api.primitiveBank.domain.LedgerEntryType;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@ApiModel("Операция по счёту")
+public class HistoryEntryDTO {
+
+    @ApiModelProperty("id операции")
+    private Long id;
+
+    @ApiModelProperty("Время операции")
+    private Instant createdAt;
+
+    @ApiModelProperty("Тип операции")
+    private LedgerEntryType type;
+
+    @ApiModelProperty("Сумма: зачисление положительное, списание отрицательное")
+    private BigDecimal amount;
+
+    @ApiModelProperty("Второй счёт перевода, null для пополнения")
+    private Long counterpartyId;
+}
@@ -0,0 +1,22 @@
+package com.julenka.api.primitiveBank.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@ApiModel("Страница истории счёта")
+public class HistoryPageDTO {
+
+    @ApiModelProperty("Операции от новых к старым")
+    private List<HistoryEntryDTO> entries;
+
+    @ApiModelProperty("Курсор следующей страницы (параметр before), null на последней странице")
+    private String nextCursor;
+}
@@ -0,0 +1,18 @@
+package com.julenka.api.primitiveBank.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class RefreshTokenDTO {
+
+    @NotNull
+    @NotEmpty
+    private String refreshToken;
+}
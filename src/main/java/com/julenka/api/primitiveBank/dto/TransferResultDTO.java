@@ -0,0 +1,31 @@
+package com.julenka.api.primitiveBank.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@ApiModel("Результат перевода из пакета")
+public class TransferResultDTO {
+
+    @ApiModelProperty("Порядковый номер перевода в пакете")
+    private int index;
+
+    @ApiModelProperty("Перевод выполнен")
+    private boolean success;
+
+    @ApiModelProperty("Причина отказа")
+    private String error;
+
+    public static TransferResultDTO succeeded(int index) {
+        return new TransferResultDTO(index, true, null);
+    }
+
+    public static TransferResultDTO failed(int index, String error) {
+        return new TransferResultDTO(index, false, error);
+    }
+}
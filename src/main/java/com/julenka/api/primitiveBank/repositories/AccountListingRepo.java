@@ -0,0 +1,23 @@
+package com.julenka.api.primitiveBank.repositories;
+
+import com.julenka.api.primitiveBank.dto.AccountDTO;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Accounts of a user with their full balance, read by plain JDBC without entities.
+ */
+public interface AccountListingRepo {
+
+    /**
+     * Accounts of the user with ids greater than afterId, in id order.
+     */
+    List<AccountDTO> findPageOfUser(Long userId, Long afterId, int limit);
+
+    /**
+     * Passes every account of the user to the action as rows come off a database cursor,
+     * the whole list is never held in memory.
+     */
+    void forEachOfUser(Long userId, Consumer<AccountDTO> action);
+}
@@ -0,0 +1,48 @@
+package com.julenka.api.primitiveBank.repositories;
+
+import com.julenka.api.primitiveBank.config.AccountProperties;
+import com.julenka.api.primitiveBank.dto.AccountDTO;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+
+import javax.sql.DataSource;
+import javax.transaction.Transactional;
+import java.util.List;
+import java.util.function.Consumer;
+
+class AccountListingRepoImpl implements AccountListingRepo {
+
+    //the snapshot plus the slots and the unapplied tail of the ledger, as LedgerService.balanceOf
+    private static final String SELECT_ACCOUNTS = "SELECT a.id, a.balance" +
+            " + coalesce((SELECT sum(s.balance) FROM account_slots s WHERE s.account_id = a.id), 0)" +
+            " + coalesce((SELECT sum(e.amount) FROM ledger_entries e WHERE e.account_id = a.id AND NOT e.applied), 0)" +
+            " AS balance FROM accounts a ";
+
+    private static final RowMapper<AccountDTO> ACCOUNT = (rs, i) -> new AccountDTO(rs.getLong("id"), rs.getBigDecimal("balance"));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate cursorTemplate;
+
+    AccountListingRepoImpl(DataSource dataSource, AccountProperties accountProperties) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.cursorTemplate = new JdbcTemplate(dataSource);
+        this.cursorTemplate.setFetchSize(accountProperties.getStreamFetchSize());
+    }
+
+    @Override
+    public List<AccountDTO> findPageOfUser(Long userId, Long afterId, int limit) {
+        return jdbcTemplate.query(SELECT_ACCOUNTS + "WHERE a.user_id = ? AND a.id > ? ORDER BY a.id LIMIT ?",
+                ACCOUNT, userId, afterId, limit);
+    }
+
+    /**
+     * The driver reads by fetch size only with autocommit off, so the call has to run in a transaction.
+     */
+    @Override
+    @Transactional
+    public void forEachOfUser(Long userId, Consumer<AccountDTO> action) {
+        cursorTemplate.query(SELECT_ACCOUNTS + "WHERE a.user_id = ? ORDER BY a.id",
+                (RowCallbackHandler) rs -> action.accept(ACCOUNT.mapRow(rs, rs.getRow())), userId);
+    }
+}
@@ -3,28 +3,200 @@ package com.julenka.api.primitiveBank.repositories;
 import com.julenka.api.primitiveBank.domain.Account;
 import com.julenka.api.primitiveBank.domain.User;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
-import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import javax.persistence.LockModeType;
-import javax.persistence.QueryHint;
 import javax.transaction.Transactional;
+import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 @Transactional
-public interface AccountRepo extends JpaRepository<Account, Long> {
+public interface AccountRepo extends JpaRepository<Account, Long>, AccountListingRepo {
 
+    @Query("SELECT a FROM Account a WHERE a.user = ?1 ORDER BY a.id")
     List<Account> findAllByUser(User user);
 
     Optional<Account> findOneByUser(User user);
 
-    @Lock(LockModeType.PESSIMISTIC_WRITE)
-    @QueryHints({@QueryHint(name = "javax.persistence.lock.timeout", value = "3000")})
-    @Query("SELECT a FROM Account a WHERE a.id = ?1")
+    @Query("SELECT a.id FROM Account a WHERE a.user = ?1 ORDER BY a.id")
+    List<Long> findIdsByUser(User user);
+
+    boolean existsByIdAndUser(Long id, User user);
+
+    @Query("SELECT a.slots FROM Account a WHERE a.id = ?1")
+    Optional<Integer> findSlotsById(Long id);
+
+    @Query("SELECT a.slots FROM Account a WHERE a.id = ?1 AND a.user = ?2")
+    Optional<Integer> findSlotsByIdAndUser(Long id, User user);
+
+    @Query(value = "SELECT id FROM accounts WHERE id = ?1 FOR UPDATE", nativeQuery = true)
+    Optional<Long> lockById(Long accId);
+
+    /**
+     * Reads the number of slots of a payee and keeps them until the end of the transaction:
+     * the lock doesn't hold off other credits or debits, which lock the row FOR NO KEY UPDATE,
+     * but does hold off {@link #restripe}, whose caller locks the row FOR UPDATE.
+     */
+    @Query(value = "SELECT slots FROM accounts WHERE id = ?1 FOR KEY SHARE", nativeQuery = true)
+    Optional<Integer> lockSlotsForCredit(Long accId);
+
+    /**
+     * Pending changes are flushed first, so a loaded instance of the account can't overwrite the credit later.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = "UPDATE accounts SET balance = balance + ?2 WHERE id = ?1", nativeQuery = true)
+    int creditBalance(Long accId, BigDecimal amount);
+
+    @Query(value = "SELECT coalesce(sum(balance), 0) FROM account_slots WHERE account_id = ?1", nativeQuery = true)
+    BigDecimal sumSlots(Long accId);
+
+    /**
+     * Credits one slot of a striped account, the account row itself isn't updated.
+     * The slot must be held by {@link #lockSlotsForCredit}.
+     */
+    @Modifying
+    @Query(value = "UPDATE account_slots SET balance = balance + ?3 WHERE account_id = ?1 AND slot = ?2", nativeQuery = true)
+    int creditSlot(Long accId, int slot, BigDecimal amount);
+
+    /**
+     * Locks all slots of the account in slot order, empties them and returns what they held.
+     * Callers must hold the lock of the account row already.
+     */
+    @Query(value = "WITH old AS (" +
+            "    SELECT slot, balance FROM account_slots WHERE account_id = ?1 ORDER BY slot FOR UPDATE" +
+            "), swept AS (" +
+            "    UPDATE account_slots s SET balance = 0 FROM old" +
+            "    WHERE s.account_id = ?1 AND s.slot = old.slot AND old.balance <> 0" +
+            "    RETURNING old.balance" +
+            ") " +
+            "SELECT coalesce(sum(balance), 0) FROM swept",
+            nativeQuery = true)
+    BigDecimal sweepSlots(Long accId);
+
+    /**
+     * Sets the number of slots of a locked account, slots that are dropped give their money back to the account row.
+     */
+    @Modifying
+    @Query(value = "WITH removed AS (" +
+            "    DELETE FROM account_slots WHERE account_id = ?1 AND slot >= ?2 RETURNING balance" +
+            ") " +
+            "UPDATE accounts SET slots = ?2, balance = balance + (SELECT coalesce(sum(balance), 0) FROM removed) WHERE id = ?1",
+            nativeQuery = true)
+    int restripe(Long accId, int slots);
+
+    @Modifying
+    @Query(value = "INSERT INTO account_slots (account_id, slot, balance) " +
+            "SELECT ?1, s, 0 FROM generate_series(0, ?2 - 1) s ON CONFLICT DO NOTHING",
+            nativeQuery = true)
+    int createSlots(Long accId, int slots);
+
+    /**
+     * Sets lock_timeout till the end of the current transaction. The PostgreSQL dialect
+     * ignores the lock timeout hint of JPA, so the locking queries wait through this setting.
+     *
+     * @param timeout in the PostgreSQL format, 0 waits without a limit
+     */
+    @Query(value = "SELECT set_config('lock_timeout', ?1, true)", nativeQuery = true)
+    String setLockTimeout(String timeout);
+
+    /**
+     * Locks the account for an update of its balance. FOR NO KEY UPDATE, unlike the pessimistic
+     * lock of JPA, lets a striped payee be credited and ledger entries reference the account meanwhile.
+     */
+    @Query(value = "SELECT * FROM accounts WHERE id = ?1 FOR NO KEY UPDATE", nativeQuery = true)
     Optional<Account> fetchAccountWithLockById(Long accId);
 
+    /**
+     * Locks all given accounts with one statement. Rows are locked in id order,
+     * so two transactions locking the same set of accounts never deadlock.
+     * The locks are FOR NO KEY UPDATE as in {@link #fetchAccountWithLockById}: a striped payee
+     * left out of the set takes only a KEY SHARE lock, which must not wait for them.
+     */
+    @Query(value = "SELECT * FROM accounts WHERE id IN ?1 ORDER BY id FOR NO KEY UPDATE", nativeQuery = true)
+    List<Account> fetchAccountsWithLockByIds(Collection<Long> accIds);
+
+    /**
+     * Locks the sender's account without blocking inserts of ledger entries that reference it.
+     * Returns the balance of the account row together with its slots.
+     */
+    @Query(value = "SELECT a.balance + coalesce((SELECT sum(s.balance) FROM account_slots s WHERE s.account_id = a.id), 0) " +
+            "FROM accounts a WHERE a.id = ?1 AND a.user_id = ?2 FOR NO KEY UPDATE OF a", nativeQuery = true)
+    Optional<BigDecimal> lockBalanceForDebit(Long accId, Long userId);
+
+    /**
+     * Statement of {@link #lockForTransfer}, {@link ReactiveAccountRepo} runs it as well.
+     */
+    String LOCK_FOR_TRANSFER = "SELECT id FROM accounts WHERE id IN (:fromId, :toId) ORDER BY id FOR NO KEY UPDATE";
+
+    /**
+     * Locks both accounts of a transfer in id order. Must precede {@link #transferAtomically}
+     * in the same transaction: a statement that waits on a row lock keeps the snapshot taken before the wait,
+     * so its sums would still count the slots swept and the ledger entries compacted by the lock holder.
+     */
+    @Query(value = LOCK_FOR_TRANSFER, nativeQuery = true)
+    List<Long> lockForTransfer(@Param("fromId") Long fromId, @Param("toId") Long toId);
+
+    /**
+     * Statement of {@link #transferAtomically}, {@link ReactiveAccountRepo} runs it as well.
+     */
+    String TRANSFER_ATOMICALLY = "WITH locked AS (" +
+            "    SELECT id FROM accounts WHERE id IN (:fromId, :toId) ORDER BY id FOR NO KEY UPDATE" +
+            "), found AS (" +
+            "    SELECT count(*) AS n FROM locked" +
+            "), debit AS (" +
+            "    UPDATE accounts SET balance = balance - (CASE WHEN :fromId = :toId THEN 0 ELSE :amount END)" +
+            "    WHERE id = :fromId AND user_id = :userId" +
+            "      AND balance + coalesce((SELECT sum(balance) FROM account_slots WHERE account_id = :fromId), 0)" +
+            "          + coalesce((SELECT sum(amount) FROM ledger_entries WHERE account_id = :fromId AND NOT applied), 0) >= :amount" +
+            "      AND (SELECT n FROM found) = (CASE WHEN :fromId = :toId THEN 1 ELSE 2 END)" +
+            "    RETURNING id" +
+            "), credit AS (" +
+            "    UPDATE accounts SET balance = balance + :amount" +
+            "    WHERE id = :toId AND :toId <> :fromId AND EXISTS (SELECT 1 FROM debit)" +
+            "    RETURNING id" +
+            "), journal AS (" +
+            "    INSERT INTO ledger_entries (id, account_id, amount, type, created_at, applied)" +
+            "    SELECT nextval('ledger_entries_id_seq'), e.account_id, e.amount, e.type, now(), true" +
+            "    FROM (VALUES (CAST(:fromId AS bigint), -CAST(:amount AS numeric), 'TRANSFER_OUT')," +
+            "                 (CAST(:toId AS bigint), CAST(:amount AS numeric), 'TRANSFER_IN')) AS e (account_id, amount, type)" +
+            "    WHERE EXISTS (SELECT 1 FROM debit)" +
+            "), outbox AS (" +
+            "    INSERT INTO history_outbox (id, account_id, counterparty_id, amount, type, created_at)" +
+            "    SELECT nextval('history_outbox_id_seq'), CAST(:fromId AS bigint), CAST(:toId AS bigint)," +
+            "           -CAST(:amount AS numeric), 'TRANSFER_OUT', now()" +
+            "    WHERE EXISTS (SELECT 1 FROM debit)" +
+            ") " +
+            "SELECT (SELECT count(*) FROM accounts WHERE id = :fromId AND user_id = :userId) AS owned," +
+            "       (SELECT n FROM found) AS found," +
+            "       (SELECT count(*) FROM debit) AS debited," +
+            "       (SELECT count(*) FROM credit) AS credited";
+
+    /**
+     * Transfers money with one statement once {@link #lockForTransfer} holds both accounts: debits the sender
+     * only if it belongs to the user and has enough money, counting its slots and the unapplied tail
+     * of the journal mode, then credits the payee, journals both
+     * and puts the transfer into the history outbox, the history partition isn't touched.
+     * Nothing is changed unless every check passes; the counts tell which one failed.
+     * Ledger entry and outbox ids come straight from the pooled sequences, each takes the first id of a fresh block.
+     */
+    @Query(value = TRANSFER_ATOMICALLY, nativeQuery = true)
+    TransferOutcome transferAtomically(@Param("fromId") Long fromId, @Param("toId") Long toId,
+                                       @Param("amount") BigDecimal amount, @Param("userId") Long userId);
+
+    interface TransferOutcome {
+
+        long getOwned();
+
+        long getFound();
+
+        long getDebited();
+
+        long getCredited();
+    }
+
 }
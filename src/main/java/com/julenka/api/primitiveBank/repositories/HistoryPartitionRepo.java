@@ -0,0 +1,29 @@
+package com.julenka.api.primitiveBank.repositories;
+
+import com.julenka.api.primitiveBank.dto.HistoryEntryDTO;
+
+import java.time.Instant;
+import java.time.YearMonth;
+import java.util.List;
+
+/**
+ * Monthly partitions of the account history, months are in UTC.
+ */
+public interface HistoryPartitionRepo {
+
+    /**
+     * Months that have a partition, oldest first.
+     */
+    List<YearMonth> findPartitionMonths();
+
+    /**
+     * Creates the partition of the month with its indexes, does nothing if it's already there.
+     */
+    void createPartition(YearMonth month);
+
+    /**
+     * Entries of the account from the partition of the month that are older than the given
+     * time and id, newest first.
+     */
+    List<HistoryEntryDTO> findPageInPartition(YearMonth month, Long accountId, Instant beforeTime, long beforeId, int limit);
+}
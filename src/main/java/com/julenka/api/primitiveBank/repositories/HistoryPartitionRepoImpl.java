@@ -0,0 +1,64 @@
+package com.julenka.api.primitiveBank.repositories;
+
+import com.julenka.api.primitiveBank.domain.LedgerEntryType;
+import com.julenka.api.primitiveBank.dto.HistoryEntryDTO;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import javax.sql.DataSource;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+class HistoryPartitionRepoImpl implements HistoryPartitionRepo {
+
+    //the same name create_account_history_partition gives
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'account_history_y'yyyy'm'MM");
+
+    private static final RowMapper<HistoryEntryDTO> ENTRY = (rs, i) -> new HistoryEntryDTO(
+            rs.getLong("id"),
+            rs.getObject("created_at", OffsetDateTime.class).toInstant(),
+            LedgerEntryType.valueOf(rs.getString("type")),
+            rs.getBigDecimal("amount"),
+            rs.getObject("counterparty_id", Long.class));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    HistoryPartitionRepoImpl(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    static String partitionOf(YearMonth month) {
+        return PARTITION_NAME.format(month);
+    }
+
+    /**
+     * The partition is queried by its name: postgres 10 excludes partitions only while planning,
+     * so a cached generic plan over the parent table would probe every month.
+     */
+    static String pageQuery(YearMonth month) {
+        return "SELECT id, created_at, type, amount, counterparty_id FROM " + partitionOf(month) +
+                " WHERE account_id = ? AND (created_at, id) < (?, ?) ORDER BY created_at DESC, id DESC LIMIT ?";
+    }
+
+    @Override
+    public List<YearMonth> findPartitionMonths() {
+        return jdbcTemplate.query("SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                        "WHERE i.inhparent = 'account_history'::regclass ORDER BY c.relname",
+                (rs, i) -> YearMonth.parse(rs.getString("relname"), PARTITION_NAME));
+    }
+
+    @Override
+    public void createPartition(YearMonth month) {
+        jdbcTemplate.queryForList("SELECT create_account_history_partition(?)", month.atDay(1));
+    }
+
+    @Override
+    public List<HistoryEntryDTO> findPageInPartition(YearMonth month, Long accountId, Instant beforeTime, long beforeId, int limit) {
+        return jdbcTemplate.query(pageQuery(month), ENTRY,
+                accountId, beforeTime.atOffset(ZoneOffset.UTC), beforeId, limit);
+    }
+}
@@ -0,0 +1,12 @@
+package com.julenka.api.primitiveBank.repositories;
+
+import com.julenka.api.primitiveBank.domain.HistoryEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import javax.transaction.Transactional;
+
+@Repository
+@Transactional
+public interface HistoryRepo extends JpaRepository<HistoryEntry, Long>, HistoryPartitionRepo {
+}
@@ -0,0 +1,32 @@
+package com.julenka.api.primitiveBank.repositories;
+
+import com.julenka.api.primitiveBank.domain.IdempotencyKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import javax.transaction.Transactional;
+import java.time.Instant;
+
+@Repository
+@Transactional
+public interface IdempotencyKeyRepo extends JpaRepository<IdempotencyKey, IdempotencyKey.Pk> {
+
+    /**
+     * Claims the key for the current transaction. Waits while another transaction holds the same key
+     * and returns 0 if that one committed.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO idempotency_keys (user_id, idempotency_key, request_hash) VALUES (?1, ?2, ?3) " +
+            "ON CONFLICT DO NOTHING", nativeQuery = true)
+    int claim(Long userId, String key, String requestHash);
+
+    @Modifying
+    @Query(value = "UPDATE idempotency_keys SET response = ?3 WHERE user_id = ?1 AND idempotency_key = ?2", nativeQuery = true)
+    int storeResponse(Long userId, String key, String response);
+
+    @Modifying
+    @Query(value = "DELETE FROM idempotency_keys WHERE created_at < ?1", nativeQuery = true)
+    int deleteCreatedBefore(Instant createdBefore);
+}
@@ -0,0 +1,37 @@
+package com.julenka.api.primitiveBank.repositories;
+
+import com.julenka.api.primitiveBank.domain.LedgerEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import javax.transaction.Transactional;
+import java.math.BigDecimal;
+import java.util.List;
+
+@Repository
+@Transactional
+public interface LedgerEntryRepo extends JpaRepository<LedgerEntry, Long> {
+
+    List<LedgerEntry> findAllByAccountIdOrderById(Long accountId);
+
+    @Query("SELECT coalesce(sum(e.amount), 0) FROM LedgerEntry e WHERE e.accountId = ?1 AND e.applied = false")
+    BigDecimal sumUnapplied(Long accountId);
+
+    @Query("SELECT DISTINCT e.accountId FROM LedgerEntry e WHERE e.applied = false")
+    List<Long> findAccountsWithUnappliedEntries(Pageable pageable);
+
+    /**
+     * Moves the committed unapplied tail of the account into its balance snapshot.
+     * Entries committed after the statement started stay in the tail for the next run.
+     */
+    @Modifying
+    @Query(value = "WITH tail AS (" +
+            "    UPDATE ledger_entries SET applied = true WHERE account_id = ?1 AND NOT applied RETURNING amount" +
+            ") " +
+            "UPDATE accounts SET balance = balance + (SELECT coalesce(sum(amount), 0) FROM tail) WHERE id = ?1",
+            nativeQuery = true)
+    int compact(Long accountId);
+}
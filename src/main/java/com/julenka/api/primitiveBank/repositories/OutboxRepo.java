@@ -0,0 +1,39 @@
+package com.julenka.api.primitiveBank.repositories;
+
+import com.julenka.api.primitiveBank.domain.OutboxEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import javax.transaction.Transactional;
+import java.time.Instant;
+import java.util.Optional;
+
+@Repository
+@Transactional
+public interface OutboxRepo extends JpaRepository<OutboxEntry, Long> {
+
+    /**
+     * Moves up to limit oldest operations into the history by one statement, so they are either
+     * moved or left in the outbox as a whole, in the order they were made. A transfer also gets the payee's row.
+     * Rows taken by another worker are skipped. Returns the number of moved operations.
+     */
+    @Query(value = "WITH batch AS (" +
+            "    DELETE FROM history_outbox WHERE id IN (" +
+            "        SELECT id FROM history_outbox ORDER BY id LIMIT ?1 FOR UPDATE SKIP LOCKED" +
+            "    ) RETURNING id, account_id, counterparty_id, amount, type, created_at" +
+            "), moved AS (" +
+            "    INSERT INTO account_history (id, account_id, counterparty_id, amount, type, created_at)" +
+            "    SELECT nextval('account_history_id_seq'), h.account_id, h.counterparty_id, h.amount, h.type, b.created_at" +
+            "    FROM batch b CROSS JOIN LATERAL (VALUES (b.account_id, b.counterparty_id, b.amount, b.type)," +
+            "                                            (b.counterparty_id, b.account_id, -b.amount, 'TRANSFER_IN'))" +
+            "         AS h (account_id, counterparty_id, amount, type)" +
+            "    WHERE h.account_id IS NOT NULL" +
+            "    ORDER BY b.id" +
+            ") " +
+            "SELECT count(*) FROM batch", nativeQuery = true)
+    long drain(int limit);
+
+    @Query(value = "SELECT created_at FROM history_outbox ORDER BY id LIMIT 1", nativeQuery = true)
+    Optional<Instant> findOldestCreatedAt();
+}
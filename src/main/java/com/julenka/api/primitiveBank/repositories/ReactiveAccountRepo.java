@@ -0,0 +1,98 @@
+package com.julenka.api.primitiveBank.repositories;
+
+import com.julenka.api.primitiveBank.repositories.AccountRepo.TransferOutcome;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+
+/**
+ * Счета через R2DBC. Каждая операция, кроме перевода, - один statement, поэтому транзакции не нужны.
+ * Идентификаторы берутся прямо из последовательностей, как в {@link AccountRepo#transferAtomically}.
+ */
+@Repository
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveAccountRepo {
+
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+
+    public Mono<Long> create(Long userId) {
+        return databaseClient.sql("INSERT INTO accounts (id, balance, slots, user_id) " +
+                        "VALUES (nextval('accounts_id_seq'), 0, 0, :userId) RETURNING id")
+                .bind("userId", userId)
+                .map(row -> row.get("id", Long.class))
+                .one();
+    }
+
+    public Flux<Long> findIdsByUser(Long userId) {
+        return databaseClient.sql("SELECT id FROM accounts WHERE user_id = :userId ORDER BY id")
+                .bind("userId", userId)
+                .map(row -> row.get("id", Long.class))
+                .all();
+    }
+
+    /**
+     * Credits the account row if it belongs to the user, journals the deposit and puts it into the history outbox.
+     * A striped account is credited on its row as well, the slots only spread the blocking transfers.
+     *
+     * @return 1 if the account was credited, 0 if the user has no such account
+     */
+    public Mono<Long> deposit(Long accountId, BigDecimal amount, Long userId) {
+        return databaseClient.sql("WITH credit AS (" +
+                        "    UPDATE accounts SET balance = balance + :amount WHERE id = :accountId AND user_id = :userId" +
+                        "    RETURNING id" +
+                        "), journal AS (" +
+                        "    INSERT INTO ledger_entries (id, account_id, amount, type, created_at, applied)" +
+                        "    SELECT nextval('ledger_entries_id_seq'), id, :amount, 'DEPOSIT', now(), true FROM credit" +
+                        "), outbox AS (" +
+                        "    INSERT INTO history_outbox (id, account_id, counterparty_id, amount, type, created_at)" +
+                        "    SELECT nextval('history_outbox_id_seq'), id, NULL, :amount, 'DEPOSIT', now() FROM credit" +
+                        ") " +
+                        "SELECT count(*) AS credited FROM credit")
+                .bind("accountId", accountId)
+                .bind("amount", amount)
+                .bind("userId", userId)
+                .map(row -> row.get("credited", Long.class))
+                .one();
+    }
+
+    /**
+     * Locks both accounts and transfers in one transaction, the transfer statement sums
+     * the unapplied tail only after the lock is held.
+     *
+     * @see AccountRepo#lockForTransfer
+     * @see AccountRepo#transferAtomically
+     */
+    public Mono<TransferOutcome> transfer(Long fromId, Long toId, BigDecimal amount, Long userId) {
+        return databaseClient.sql(AccountRepo.LOCK_FOR_TRANSFER)
+                .bind("fromId", fromId)
+                .bind("toId", toId)
+                .map(row -> row.get("id", Long.class))
+                .all()
+                .then(databaseClient.sql(AccountRepo.TRANSFER_ATOMICALLY)
+                        .bind("fromId", fromId)
+                        .bind("toId", toId)
+                        .bind("amount", amount)
+                        .bind("userId", userId)
+                        .map(row -> (TransferOutcome) new Outcome(row.get("owned", Long.class), row.get("found", Long.class),
+                                row.get("debited", Long.class), row.get("credited", Long.class)))
+                        .one())
+                .as(transactionalOperator::transactional);
+    }
+
+    @Value
+    private static class Outcome implements TransferOutcome {
+        long owned;
+        long found;
+        long debited;
+        long credited;
+    }
+}
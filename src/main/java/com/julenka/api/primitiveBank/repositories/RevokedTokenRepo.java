@@ -0,0 +1,30 @@
+package com.julenka.api.primitiveBank.repositories;
+
+import com.julenka.api.primitiveBank.domain.RevokedToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import javax.transaction.Transactional;
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+@Transactional
+public interface RevokedTokenRepo extends JpaRepository<RevokedToken, String> {
+
+    /**
+     * @return 0 if the token has already been revoked, so a refresh token can be used only once
+     */
+    @Modifying
+    @Query(value = "INSERT INTO revoked_tokens (jti, token_type, expires_at) VALUES (?1, ?2, ?3) " +
+            "ON CONFLICT DO NOTHING", nativeQuery = true)
+    int revoke(String jti, String tokenType, Instant expiresAt);
+
+    List<RevokedToken> findByTokenTypeAndRevokedAtAfter(String tokenType, Instant revokedAfter);
+
+    @Modifying
+    @Query(value = "DELETE FROM revoked_tokens WHERE expires_at < ?1", nativeQuery = true)
+    int deleteExpiredBefore(Instant expiredBefore);
+}
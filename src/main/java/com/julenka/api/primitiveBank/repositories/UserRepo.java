@@ -1,10 +1,13 @@
 package com.julenka.api.primitiveBank.repositories;
 
+import com.julenka.api.primitiveBank.domain.Roles;
 import com.julenka.api.primitiveBank.domain.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import javax.transaction.Transactional;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -14,4 +17,31 @@ public interface UserRepo extends JpaRepository<User, Long> {
     Optional<User> findOneByUsername(String username);
 
     boolean existsByUsername(String username);
+
+    @Query("SELECT u.tokenVersion FROM User u WHERE u.id = ?1")
+    Optional<Integer> findTokenVersionById(Long id);
+
+    /**
+     * The user with the info in one query, one row per authority.
+     * Nothing is loaded into the persistence context.
+     */
+    @Query("SELECT u.id AS id, u.username AS username, i.id AS userInfoId, i.firstName AS firstName, " +
+            "i.lastName AS lastName, a AS authority " +
+            "FROM User u LEFT JOIN u.userInfo i LEFT JOIN u.authorities a WHERE u.username = ?1")
+    List<ProfileRow> findProfileByUsername(String username);
+
+    interface ProfileRow {
+
+        Long getId();
+
+        String getUsername();
+
+        Long getUserInfoId();
+
+        String getFirstName();
+
+        String getLastName();
+
+        Roles getAuthority();
+    }
 }
@@ -0,0 +1,69 @@
+package com.julenka.api.primitiveBank.services;
+
+import com.julenka.api.primitiveBank.exceptions.BadRequestException;
+import com.julenka.api.primitiveBank.exceptions.ForbiddenOperationException;
+import com.julenka.api.primitiveBank.exceptions.UncertainAccountException;
+import com.julenka.api.primitiveBank.repositories.AccountRepo.TransferOutcome;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Проверки операций со счетами, общие для {@link AccountService} и {@link ReactiveAccountService}
+ */
+final class AccountRules {
+
+    private AccountRules() {
+    }
+
+    static void requireBody(Object dto) {
+        if (dto == null) {
+            throw new BadRequestException("Empty request body");
+        }
+    }
+
+    static void checkAmount(BigDecimal amount) {
+        if (amount == null) {
+            throw new ForbiddenOperationException("Request doesn't contain the amount");
+        }
+        if (amount.compareTo(BigDecimal.ZERO) < 0) {
+            throw new ForbiddenOperationException("You can't transfer negative amount");
+        }
+    }
+
+    static void requirePayee(Long toId) {
+        if (toId == null) {
+            throw new UncertainAccountException("Account for transfer hasn't been defined");
+        }
+    }
+
+    /**
+     * @param ids accounts of the user
+     * @return the account an operation without an explicit account goes to
+     */
+    static Long onlyAccount(List<Long> ids) {
+        if (ids.size() != 1) {
+            throw new UncertainAccountException("User has no or more than 1 account");
+        }
+        return ids.get(0);
+    }
+
+    static UncertainAccountException notOwnAccount() {
+        return new UncertainAccountException("Forbidden.User has not such an account");
+    }
+
+    /**
+     * Recovers the failure reason of a single statement transfer from the counts it reports.
+     */
+    static void checkTransferOutcome(TransferOutcome outcome, Long fromId, Long toId) {
+        if (outcome.getOwned() == 0) {
+            throw notOwnAccount();
+        }
+        if (outcome.getFound() < (fromId.equals(toId) ? 1 : 2)) {
+            throw new UncertainAccountException("Such an account for transfer doesn't exist");
+        }
+        if (outcome.getDebited() == 0) {
+            throw new ForbiddenOperationException("Not enough money for this operation");
+        }
+    }
+}
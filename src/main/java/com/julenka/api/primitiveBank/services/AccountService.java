@@ -1,27 +1,75 @@
 package com.julenka.api.primitiveBank.services;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.julenka.api.primitiveBank.config.AccountProperties;
+import com.julenka.api.primitiveBank.config.AccountProperties.TransferMode;
 import com.julenka.api.primitiveBank.domain.Account;
 import com.julenka.api.primitiveBank.domain.User;
+import com.julenka.api.primitiveBank.dto.AccountDTO;
+import com.julenka.api.primitiveBank.dto.AccountPageDTO;
 import com.julenka.api.primitiveBank.dto.FundDepositDTO;
 import com.julenka.api.primitiveBank.dto.MoneyTransferDTO;
+import com.julenka.api.primitiveBank.dto.TransferResultDTO;
 import com.julenka.api.primitiveBank.exceptions.BadRequestException;
 import com.julenka.api.primitiveBank.exceptions.ForbiddenOperationException;
 import com.julenka.api.primitiveBank.exceptions.UncertainAccountException;
 import com.julenka.api.primitiveBank.repositories.AccountRepo;
-import lombok.RequiredArgsConstructor;
+import com.julenka.api.primitiveBank.repositories.AccountRepo.TransferOutcome;
+import com.julenka.api.primitiveBank.config.OutcomeTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.transaction.Transactional;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Service
-@RequiredArgsConstructor
 public class AccountService {
 
     private final CurrentUserService currentUserService;
     private final AccountRepo accountRepo;
+    private final AccountProperties accountProperties;
+    private final LedgerService ledgerService;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final OutcomeTimer transfers;
+    private final OutcomeTimer deposits;
+    private final LockContentionMonitor lockMonitor;
+
+    public AccountService(CurrentUserService currentUserService, AccountRepo accountRepo, AccountProperties accountProperties,
+                          LedgerService ledgerService, ObjectMapper objectMapper, TransactionTemplate transactionTemplate,
+                          LockContentionMonitor lockMonitor, MeterRegistry meterRegistry) {
+        this.currentUserService = currentUserService;
+        this.accountRepo = accountRepo;
+        this.accountProperties = accountProperties;
+        this.ledgerService = ledgerService;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.lockMonitor = lockMonitor;
+        Tags mode = Tags.of("mode", accountProperties.getTransferMode().name().toLowerCase());
+        this.transfers = new OutcomeTimer("bank.transfers", "transfers between accounts, commit included",
+                mode, meterRegistry, LockContentionMonitor::outcomeOf);
+        this.deposits = new OutcomeTimer("bank.deposits", "deposits to accounts, commit included",
+                mode, meterRegistry, LockContentionMonitor::outcomeOf);
+    }
 
     @Transactional
     public Long createAccountForCurrentUser() {
@@ -33,120 +81,348 @@ public class AccountService {
         return saved.getId();
     }
 
-    @Transactional
+    // timed together with the commit, so the transaction is opened here and not by the annotation
     public Long fundDepositOfCurrentUser(FundDepositDTO dto) {
-        if (dto == null) {
-            throw new BadRequestException("Empty request body");
-        }
-        checkAmountToFund(dto);
+        return deposits.record(() -> lockMonitor.trace("deposit", () -> Collections.singletonList(dto.getToId()),
+                () -> transactionTemplate.execute(status -> fundDeposit(dto))));
+    }
+
+    private Long fundDeposit(FundDepositDTO dto) {
+        AccountRules.requireBody(dto);
+        AccountRules.checkAmount(dto.getAmount());
         User user = currentUserService.getCurrentUser();
         if (dto.getToId() == null) {
-            try {
-                Account only = accountRepo.findOneByUser(user).orElseThrow();
-                dto.setToId(only.getId());
-            } catch (RuntimeException ex) {
-                throw new UncertainAccountException("User has no or more than 1 account");
+            dto.setToId(onlyAccountOf(user));
+        }
+        if (accountProperties.getTransferMode() == TransferMode.JOURNAL) {
+            if (!accountRepo.existsByIdAndUser(dto.getToId(), user)) {
+                throw AccountRules.notOwnAccount();
             }
+            ledgerService.recordDeposit(dto.getToId(), dto.getAmount(), false);
+            return dto.getToId();
         }
-        Account toFund = accountRepo.fetchAccountWithLockById(dto.getToId())
-                .filter(acc -> acc.getUser().getId().equals(user.getId()))
-                .orElseThrow(() -> new UncertainAccountException("Forbidden.User has not such an account"));
+        int slots = accountRepo.findSlotsByIdAndUser(dto.getToId(), user)
+                .orElseThrow(AccountRules::notOwnAccount);
+        if (slots > 0) {
+            setLockTimeout();
+            creditSlot(dto.getToId(), dto.getAmount());
+            ledgerService.recordDeposit(dto.getToId(), dto.getAmount(), true);
+            return dto.getToId();
+        }
+        Account toFund = lock(List.of(dto.getToId()), () -> accountRepo.fetchAccountWithLockById(dto.getToId()))
+                .orElseThrow(AccountRules::notOwnAccount);
 
         toFund.setBalance(toFund.getBalance().add(dto.getAmount()));
+        ledgerService.recordDeposit(toFund.getId(), dto.getAmount(), true);
         Account savedAcc = accountRepo.saveAndFlush(toFund);
         return savedAcc.getId();
     }
 
-    private void checkAmountToFund(FundDepositDTO dto) {
-        if (dto.getAmount() == null) {
-            throw new ForbiddenOperationException("Request doesn't contain the amount");
-        }
-        if (dto.getAmount().compareTo(BigDecimal.ZERO) < 0) {
-            throw new ForbiddenOperationException("You can't transfer negative amount");
-        }
+    private Long onlyAccountOf(User user) {
+        return AccountRules.onlyAccount(accountRepo.findIdsByUser(user));
     }
 
-
-    @Transactional
     public void transferMoney(MoneyTransferDTO dto) {
-        if (dto == null) {
-            throw new BadRequestException("Empty request body");
+        transfers.record(() -> lockMonitor.trace("transfer", () -> Arrays.asList(dto.getFromId(), dto.getToId()),
+                () -> transactionTemplate.execute(status -> {
+                    transfer(dto);
+                    return null;
+                })));
+    }
+
+    private void transfer(MoneyTransferDTO dto) {
+        AccountRules.requireBody(dto);
+        if (accountProperties.getTransferMode() == TransferMode.ATOMIC) {
+            atomicTransfer(dto);
+            return;
+        }
+        if (accountProperties.getTransferMode() == TransferMode.JOURNAL) {
+            journalTransfer(dto);
+            return;
         }
         checkFromField(dto);
-        checkToField(dto);
-        checkAmount(dto);
-        actualTransfer(dto);
+        int payeeSlots = checkToField(dto);
+        AccountRules.checkAmount(dto.getAmount());
+        actualTransfer(dto, payeeSlots);
     }
 
+    // accounts must not get into the persistence context before they are locked,
+    // otherwise the locking query hands back the stale instances
     private void checkFromField(MoneyTransferDTO dto) {
         User user = currentUserService.getCurrentUser();
         if (dto.getFromId() == null) {
-            try {
-                Account only = accountRepo.findOneByUser(user).orElseThrow();
-                dto.setFromId(only.getId());
-            } catch (RuntimeException ex) {
-                throw new UncertainAccountException("User has no or more than 1 account");
-            }
+            dto.setFromId(onlyAccountOf(user));
+        }
+        if (!accountRepo.existsByIdAndUser(dto.getFromId(), user)) {
+            throw AccountRules.notOwnAccount();
         }
-        accountRepo.findById(dto.getFromId())
-                .filter(acc -> acc.getUser().getId().equals(user.getId()))
-                .orElseThrow(() -> new UncertainAccountException("Forbidden.User has not such an account"));
     }
 
-    void checkToField(MoneyTransferDTO dto) {
-        if (dto.getToId() == null) {
-            throw new UncertainAccountException("Account for transfer hasn't been defined");
+    /**
+     * @return number of slots of the payee's account
+     */
+    int checkToField(MoneyTransferDTO dto) {
+        AccountRules.requirePayee(dto.getToId());
+        return accountRepo.findSlotsById(dto.getToId())
+                .orElseThrow(() -> new UncertainAccountException("Such an account for transfer doesn't exist"));
+    }
+
+    /**
+     * Both accounts are locked by a single statement in id order, so opposite transfers
+     * between the same accounts queue up instead of deadlocking. The balance is checked
+     * under the lock and both updates leave in one JDBC batch.
+     * A striped payee isn't locked with them, the money goes to one of its slots under a KEY SHARE
+     * lock that doesn't wait for the FOR NO KEY UPDATE locks of debits.
+     */
+    private void actualTransfer(MoneyTransferDTO dto, int payeeSlots) {
+        Long fromId = dto.getFromId();
+        Long toId = dto.getToId();
+        BigDecimal amount = dto.getAmount();
+        List<Long> toLock = payeeSlots > 0 ? List.of(fromId) : List.of(fromId, toId);
+        Map<Long, Account> locked = lock(toLock, () -> accountRepo.fetchAccountsWithLockByIds(toLock)).stream()
+                .collect(Collectors.toMap(Account::getId, Function.identity()));
+        Account from = locked.get(fromId);
+        Account to = locked.get(toId);
+        if (from == null || (payeeSlots == 0 && to == null)) {
+            throw new UncertainAccountException("Such an account for transfer doesn't exist");
+        }
+        if (from.getBalance().compareTo(amount) < 0 && from.getSlots() > 0) {
+            // slots are locked after the account row, the same order every debit uses
+            from.setBalance(from.getBalance().add(accountRepo.sweepSlots(fromId)));
+        }
+        if (from.getBalance().compareTo(amount) < 0) {
+            throw new ForbiddenOperationException("Not enough money for this operation");
+        }
+        from.setBalance(from.getBalance().subtract(amount));
+        if (payeeSlots > 0) {
+            creditSlot(toId, amount);
         } else {
-            if (!accountRepo.existsById(dto.getToId())) {
-                throw new UncertainAccountException("Such an account for transfer doesn't exist");
-            }
+            to.setBalance(to.getBalance().add(amount));
         }
+        ledgerService.recordTransfer(fromId, toId, amount, true);
+        accountRepo.flush();
     }
 
-    private void checkAmount(MoneyTransferDTO dto) {
-        if (dto.getAmount() == null) {
-            throw new ForbiddenOperationException("Request doesn't contain the amount");
+    /**
+     * Ownership check, sufficient-funds check and both balance updates are done by one
+     * statement, the failure reason is recovered from the counts it reports.
+     * The accounts are locked by a statement of their own, so the transfer sums what the lock holder committed.
+     */
+    private void atomicTransfer(MoneyTransferDTO dto) {
+        User user = currentUserService.getCurrentUser();
+        if (dto.getFromId() == null) {
+            dto.setFromId(onlyAccountOf(user));
         }
+        AccountRules.requirePayee(dto.getToId());
+        AccountRules.checkAmount(dto.getAmount());
+        lock(Arrays.asList(dto.getFromId(), dto.getToId()), () -> accountRepo.lockForTransfer(dto.getFromId(), dto.getToId()));
+        TransferOutcome outcome = accountRepo.transferAtomically(dto.getFromId(), dto.getToId(), dto.getAmount(), user.getId());
+        AccountRules.checkTransferOutcome(outcome, dto.getFromId(), dto.getToId());
+    }
 
-        if (dto.getAmount().compareTo(BigDecimal.ZERO) < 0) {
-            throw new ForbiddenOperationException("You can't transfer negative amount");
+    /**
+     * Only the sender's row is locked: the payee gets an unapplied ledger credit,
+     * so a hot payee doesn't serialize its senders. Available money is the balance
+     * snapshot plus the unapplied tail.
+     */
+    private void journalTransfer(MoneyTransferDTO dto) {
+        User user = currentUserService.getCurrentUser();
+        if (dto.getFromId() == null) {
+            dto.setFromId(onlyAccountOf(user));
         }
+        checkToField(dto);
+        AccountRules.checkAmount(dto.getAmount());
+        BigDecimal snapshot = lock(List.of(dto.getFromId()), () -> accountRepo.lockBalanceForDebit(dto.getFromId(), user.getId()))
+                .orElseThrow(AccountRules::notOwnAccount);
+        if (snapshot.add(ledgerService.unappliedSum(dto.getFromId())).compareTo(dto.getAmount()) < 0) {
+            throw new ForbiddenOperationException("Not enough money for this operation");
+        }
+        ledgerService.recordTransfer(dto.getFromId(), dto.getToId(), dto.getAmount(), false);
+    }
 
-        accountRepo.findById(dto.getFromId()).ifPresent(acc -> {
-            BigDecimal balance = acc.getBalance();
-            if (balance.compareTo(dto.getAmount()) < 0) {
-                throw new ForbiddenOperationException("Not enough money for this operation");
+    /**
+     * Applies transfers in the given order within one transaction. All involved accounts
+     * are locked once, in id order, and every account gets a single update with its net
+     * balance change. A transfer that fails validation or lacks money is reported
+     * in its result and doesn't affect the others.
+     * In the journal mode the money of an account includes its unapplied tail, which
+     * stays in the journal; the transfers of the batch are applied at once.
+     * A striped sender that is short of money has its slots swept once, as a single transfer does.
+     */
+    @Transactional
+    public List<TransferResultDTO> transferMoneyBatch(List<MoneyTransferDTO> dtos) {
+        if (dtos == null || dtos.isEmpty()) {
+            throw new BadRequestException("Empty request body");
+        }
+        if (dtos.size() > accountProperties.getMaxBatchSize()) {
+            throw new BadRequestException("Batch can't contain more than " + accountProperties.getMaxBatchSize() + " transfers");
+        }
+        List<Long> ownIds = accountRepo.findIdsByUser(currentUserService.getCurrentUser());
+        TransferResultDTO[] results = new TransferResultDTO[dtos.size()];
+        Set<Long> involved = new HashSet<>();
+        for (int i = 0; i < dtos.size(); i++) {
+            try {
+                MoneyTransferDTO dto = dtos.get(i);
+                checkBatchItem(dto, ownIds);
+                involved.add(dto.getFromId());
+                involved.add(dto.getToId());
+            } catch (BadRequestException | UncertainAccountException | ForbiddenOperationException ex) {
+                results[i] = TransferResultDTO.failed(i, ex.getMessage());
+            }
+        }
+        Map<Long, Account> locked = involved.isEmpty() ? Map.of() : lock(involved, () -> accountRepo.fetchAccountsWithLockByIds(involved)).stream()
+                .collect(Collectors.toMap(Account::getId, Function.identity()));
+        boolean journal = accountProperties.getTransferMode() == TransferMode.JOURNAL;
+        //money each account can spend, and the change of its balance snapshot
+        Map<Long, BigDecimal> available = new HashMap<>();
+        Map<Long, BigDecimal> changes = new HashMap<>();
+        Set<Long> swept = new HashSet<>();
+        locked.values().forEach(acc -> available.put(acc.getId(),
+                journal ? acc.getBalance().add(ledgerService.unappliedSum(acc.getId())) : acc.getBalance()));
+        for (int i = 0; i < dtos.size(); i++) {
+            if (results[i] != null) {
+                continue;
+            }
+            MoneyTransferDTO dto = dtos.get(i);
+            if (!locked.containsKey(dto.getFromId()) || !locked.containsKey(dto.getToId())) {
+                results[i] = TransferResultDTO.failed(i, "Such an account for transfer doesn't exist");
+                continue;
+            }
+            if (available.get(dto.getFromId()).compareTo(dto.getAmount()) < 0
+                    && locked.get(dto.getFromId()).getSlots() > 0 && swept.add(dto.getFromId())) {
+                // slots are locked after the account rows, the same order every debit uses
+                BigDecimal slots = accountRepo.sweepSlots(dto.getFromId());
+                available.merge(dto.getFromId(), slots, BigDecimal::add);
+                changes.merge(dto.getFromId(), slots, BigDecimal::add);
+            }
+            if (available.get(dto.getFromId()).compareTo(dto.getAmount()) < 0) {
+                results[i] = TransferResultDTO.failed(i, "Not enough money for this operation");
+            } else {
+                available.merge(dto.getFromId(), dto.getAmount().negate(), BigDecimal::add);
+                available.merge(dto.getToId(), dto.getAmount(), BigDecimal::add);
+                changes.merge(dto.getFromId(), dto.getAmount().negate(), BigDecimal::add);
+                changes.merge(dto.getToId(), dto.getAmount(), BigDecimal::add);
+                ledgerService.recordTransfer(dto.getFromId(), dto.getToId(), dto.getAmount(), true);
+                results[i] = TransferResultDTO.succeeded(i);
+            }
+        }
+        changes.forEach((id, change) -> {
+            if (change.signum() != 0) {
+                locked.get(id).setBalance(locked.get(id).getBalance().add(change));
             }
         });
+        accountRepo.flush();
+        return Arrays.asList(results);
+    }
+
+    private void checkBatchItem(MoneyTransferDTO dto, List<Long> ownIds) {
+        if (dto == null) {
+            throw new BadRequestException("Empty transfer");
+        }
+        if (dto.getFromId() == null) {
+            dto.setFromId(AccountRules.onlyAccount(ownIds));
+        }
+        if (!ownIds.contains(dto.getFromId())) {
+            throw AccountRules.notOwnAccount();
+        }
+        AccountRules.requirePayee(dto.getToId());
+        AccountRules.checkAmount(dto.getAmount());
     }
 
+    /**
+     * Runs a locking query within the lock timeout, its wait is charged to the accounts.
+     */
+    private <T> T lock(Collection<Long> accountIds, Supplier<T> query) {
+        setLockTimeout();
+        return lockMonitor.lock(accountIds, query);
+    }
 
-    private void actualTransfer(MoneyTransferDTO dto) {
-        Long fromId = dto.getFromId();
-        Long toId = dto.getToId();
-        BigDecimal amount = dto.getAmount();
-        Account from = accountRepo.fetchAccountWithLockById(fromId).get();
-        from.setBalance(from.getBalance().subtract(amount));
-        Account to = accountRepo.fetchAccountWithLockById((toId)).get();
-        to.setBalance(to.getBalance().add(amount));
-        accountRepo.saveAndFlush(from);
-        accountRepo.saveAndFlush(to);
+    // lasts till the end of the transaction, so the locks taken after the first one wait as long
+    private void setLockTimeout() {
+        accountRepo.setLockTimeout(accountProperties.getLockTimeout().toMillis() + "ms");
+    }
+
+    /**
+     * The number of slots read before may be stale, a restripe could have dropped the chosen slot.
+     * It's read again under a lock that keeps restripe away, and a payee that isn't striped
+     * anymore is credited on its row. Nothing credited fails the whole transaction, the debit included.
+     */
+    private void creditSlot(Long accId, BigDecimal amount) {
+        int slots = accountRepo.lockSlotsForCredit(accId)
+                .orElseThrow(() -> new UncertainAccountException("Such an account for transfer doesn't exist"));
+        int credited = slots > 0
+                ? accountRepo.creditSlot(accId, ThreadLocalRandom.current().nextInt(slots), amount)
+                : accountRepo.creditBalance(accId, amount);
+        if (credited != 1) {
+            throw new IllegalStateException("Account " + accId + " wasn't credited");
+        }
+    }
+
+    /**
+     * Spreads incoming money of the account over the given number of slot rows,
+     * 0 turns striping off. Money of the dropped slots goes back to the account row.
+     */
+    @Transactional
+    public void stripeAccount(Long id, int slots) {
+        if (slots < 0 || slots > accountProperties.getMaxSlots()) {
+            throw new BadRequestException("Number of slots must be between 0 and " + accountProperties.getMaxSlots());
+        }
+        lock(List.of(id), () -> accountRepo.lockById(id))
+                .orElseThrow(() -> new UncertainAccountException("Such an account doesn't exist"));
+        accountRepo.restripe(id, slots);
+        accountRepo.createSlots(id, slots);
+    }
+
+    public AccountPageDTO getAccountsOfCurrentUser(Long after, int limit) {
+        if (limit < 1 || limit > accountProperties.getMaxPageSize()) {
+            throw new BadRequestException("Page size must be from 1 to " + accountProperties.getMaxPageSize());
+        }
+        Long userId = currentUserService.getCurrentUser().getId();
+        // one row more tells if there is a next page
+        List<AccountDTO> accounts = accountRepo.findPageOfUser(userId, after == null ? 0L : after, limit + 1);
+        if (accounts.size() <= limit) {
+            return new AccountPageDTO(accounts, null);
+        }
+        List<AccountDTO> page = new ArrayList<>(accounts.subList(0, limit));
+        return new AccountPageDTO(page, page.get(limit - 1).getId());
+    }
+
+    /**
+     * All accounts of the current user as a JSON array that is written while the rows are read.
+     * The user is taken here, the body is written later by another thread.
+     */
+    public StreamingResponseBody streamAccountsOfCurrentUser() {
+        Long userId = currentUserService.getCurrentUser().getId();
+        return out -> {
+            JsonGenerator json = objectMapper.getFactory().createGenerator(out);
+            json.writeStartArray();
+            accountRepo.forEachOfUser(userId, account -> {
+                try {
+                    json.writeObject(account);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            json.writeEndArray();
+            json.flush();
+        };
     }
 
+    /**
+     * The account is locked before its money is checked, so nothing can be credited to it
+     * between the check and the delete. Its ledger entries are archived by the database.
+     */
     @Transactional
     public void deleteAccount(Long id) {
         if (id < 0) {
             throw new BadRequestException("Wrong id!No such account in the system");
         }
-        List<Account> accounts = currentUserService.getCurrentUser().getAccounts();
-        Optional<Long> first = accounts.stream()
-                .map(Account::getId)
-                .filter(aLong -> aLong.equals(id))
-                .findFirst();
-        if (first.isEmpty()) {
+        if (!accountRepo.existsByIdAndUser(id, currentUserService.getCurrentUser())) {
             throw new ForbiddenOperationException("Forbidden.User has not such an account");
         }
-        if (accountRepo.findById(id).get().getBalance().compareTo(BigDecimal.ZERO) > 0) {
+        lock(List.of(id), () -> accountRepo.lockById(id))
+                .orElseThrow(() -> new UncertainAccountException("Such an account doesn't exist"));
+        if (ledgerService.balanceOf(accountRepo.findById(id).get()).compareTo(BigDecimal.ZERO) > 0) {
             throw new ForbiddenOperationException("This account has positive balance");
         }
         accountRepo.deleteById(id);
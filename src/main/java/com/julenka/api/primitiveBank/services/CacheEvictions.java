@@ -0,0 +1,30 @@
+package com.julenka.api.primitiveBank.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Сброс кэшей, общий для {@link UserDetailsLoader} и {@link UserService}
+ */
+final class CacheEvictions {
+
+    private CacheEvictions() {
+    }
+
+    /**
+     * Drops the entry now and once more after the current transaction completes,
+     * so a request running meanwhile can't put the old state back.
+     */
+    static <K> void evict(Cache<K, ?> cache, K key) {
+        cache.invalidate(key);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.invalidate(key);
+                }
+            });
+        }
+    }
+}
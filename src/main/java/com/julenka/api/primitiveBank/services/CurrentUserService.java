@@ -3,6 +3,7 @@ package com.julenka.api.primitiveBank.services;
 import com.julenka.api.primitiveBank.domain.User;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
@@ -12,16 +13,19 @@ public class CurrentUserService {
 
     private final UserDetailsLoader loader;
 
-    private String getCurrentUsername() {
-        return SecurityContextHolder.getContext().getAuthentication().getName();
-    }
-
+    /**
+     * The returned user is shared between requests, load a managed instance by its id to change it.
+     */
     public User getCurrentUser() {
-        String name = getCurrentUsername();
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication.getPrincipal() instanceof User) {
+            return (User) authentication.getPrincipal();
+        }
+        String name = authentication.getName();
         if (name == null) {
             throw new BadCredentialsException("This user has authentication problems");
         }
-        return loader.loadUserByUsername(name);
+        return loader.loadPrincipal(name);
     }
 
 }
@@ -0,0 +1,68 @@
+package com.julenka.api.primitiveBank.services;
+
+import com.julenka.api.primitiveBank.config.AccountProperties;
+import com.julenka.api.primitiveBank.repositories.OutboxRepo;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Переносит операции из outbox в историю счетов пачками, вне транзакций переводов.
+ * Несколько экземпляров приложения разбирают outbox параллельно, не мешая друг другу.
+ */
+@Component
+public class HistoryOutboxWorker {
+
+    private final OutboxRepo outboxRepo;
+    private final AccountProperties accountProperties;
+    private final Counter moved;
+    //creation time of the oldest operation left after the last run, null if the outbox was empty
+    private volatile Instant oldestPending;
+
+    public HistoryOutboxWorker(OutboxRepo outboxRepo, AccountProperties accountProperties, MeterRegistry meterRegistry) {
+        this.outboxRepo = outboxRepo;
+        this.accountProperties = accountProperties;
+        this.moved = Counter.builder("history.outbox.moved")
+                .description("operations moved from the outbox into the history")
+                .register(meterRegistry);
+        TimeGauge.builder("history.outbox.lag", this, TimeUnit.MILLISECONDS, worker -> worker.lag().toMillis())
+                .description("age of the oldest operation waiting in the outbox")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Moves full batches while there are any. A crash in the middle loses nothing:
+     * every batch is moved by one statement, the rest stays for the next run.
+     */
+    @Scheduled(fixedDelayString = "#{@accountProperties.historyOutboxInterval.toMillis()}")
+    public void drain() {
+        int batchSize = accountProperties.getHistoryOutboxBatchSize();
+        long count;
+        do {
+            count = outboxRepo.drain(batchSize);
+            moved.increment(count);
+        } while (count == batchSize);
+        oldestPending = outboxRepo.findOldestCreatedAt().orElse(null);
+    }
+
+    /**
+     * How long the oldest known operation has been waiting. It keeps growing if the worker stops.
+     */
+    public Duration lag() {
+        Instant oldest = oldestPending;
+        return oldest == null ? Duration.ZERO : Duration.between(oldest, Instant.now());
+    }
+
+    /**
+     * The worker doesn't keep up, new operations should go to the history directly.
+     */
+    public boolean isBehind() {
+        return lag().compareTo(accountProperties.getHistoryOutboxMaxLag()) > 0;
+    }
+}
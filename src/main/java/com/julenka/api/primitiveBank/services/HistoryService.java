@@ -0,0 +1,129 @@
+package com.julenka.api.primitiveBank.services;
+
+import com.julenka.api.primitiveBank.config.AccountProperties;
+import com.julenka.api.primitiveBank.domain.HistoryEntry;
+import com.julenka.api.primitiveBank.domain.LedgerEntryType;
+import com.julenka.api.primitiveBank.domain.OutboxEntry;
+import com.julenka.api.primitiveBank.dto.HistoryEntryDTO;
+import com.julenka.api.primitiveBank.dto.HistoryPageDTO;
+import com.julenka.api.primitiveBank.exceptions.BadRequestException;
+import com.julenka.api.primitiveBank.exceptions.ForbiddenOperationException;
+import com.julenka.api.primitiveBank.repositories.AccountRepo;
+import com.julenka.api.primitiveBank.repositories.HistoryRepo;
+import com.julenka.api.primitiveBank.repositories.OutboxRepo;
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * История операций по счетам для выписок.
+ * Хранится по месяцам в отдельных партициях, страница читается по курсору (время и id операции)
+ * от новых операций к старым, месяц за месяцем.
+ * Операции записываются в outbox и переносятся в историю фоновым {@link HistoryOutboxWorker},
+ * пока он не отстаёт, поэтому в выписке операция появляется с небольшой задержкой.
+ */
+@Service
+@RequiredArgsConstructor
+public class HistoryService {
+
+    private final HistoryRepo historyRepo;
+    private final OutboxRepo outboxRepo;
+    private final HistoryOutboxWorker outboxWorker;
+    private final AccountRepo accountRepo;
+    private final CurrentUserService currentUserService;
+    private final AccountProperties accountProperties;
+    //months that have a partition, refreshed by createPartitions
+    private volatile NavigableSet<YearMonth> partitions;
+
+    public void recordDeposit(Long accountId, BigDecimal amount) {
+        if (useOutbox()) {
+            outboxRepo.save(new OutboxEntry(accountId, null, amount, LedgerEntryType.DEPOSIT));
+        } else {
+            historyRepo.save(new HistoryEntry(accountId, null, amount, LedgerEntryType.DEPOSIT));
+        }
+    }
+
+    public void recordTransfer(Long fromId, Long toId, BigDecimal amount) {
+        if (useOutbox()) {
+            outboxRepo.save(new OutboxEntry(fromId, toId, amount.negate(), LedgerEntryType.TRANSFER_OUT));
+        } else {
+            historyRepo.saveAll(List.of(
+                    new HistoryEntry(fromId, toId, amount.negate(), LedgerEntryType.TRANSFER_OUT),
+                    new HistoryEntry(toId, fromId, amount, LedgerEntryType.TRANSFER_IN)));
+        }
+    }
+
+    // a lagging worker isn't given more work, the transactions write the history themselves meanwhile
+    private boolean useOutbox() {
+        return accountProperties.isHistoryOutbox() && !outboxWorker.isBehind();
+    }
+
+    public HistoryPageDTO getHistory(Long accountId, String before, int limit) {
+        if (limit < 1 || limit > accountProperties.getMaxPageSize()) {
+            throw new BadRequestException("Page size must be from 1 to " + accountProperties.getMaxPageSize());
+        }
+        if (!accountRepo.existsByIdAndUser(accountId, currentUserService.getCurrentUser())) {
+            throw new ForbiddenOperationException("Forbidden.User has not such an account");
+        }
+        Instant beforeTime = null;
+        long beforeId = Long.MAX_VALUE;
+        NavigableSet<YearMonth> months = partitions().descendingSet();
+        if (before != null) {
+            int separator = before.lastIndexOf('_');
+            try {
+                beforeTime = Instant.parse(before.substring(0, Math.max(separator, 0)));
+                beforeId = Long.parseLong(before.substring(separator + 1));
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw new BadRequestException("Wrong history cursor");
+            }
+            months = months.tailSet(YearMonth.from(beforeTime.atZone(ZoneOffset.UTC)), true);
+        }
+        // one entry more tells if there is a next page
+        List<HistoryEntryDTO> entries = new ArrayList<>();
+        for (YearMonth month : months) {
+            Instant upper = beforeTime != null ? beforeTime : month.plusMonths(1).atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+            entries.addAll(historyRepo.findPageInPartition(month, accountId, upper, beforeId, limit + 1 - entries.size()));
+            if (entries.size() > limit) {
+                break;
+            }
+        }
+        if (entries.size() <= limit) {
+            return new HistoryPageDTO(entries, null);
+        }
+        List<HistoryEntryDTO> page = new ArrayList<>(entries.subList(0, limit));
+        HistoryEntryDTO last = page.get(limit - 1);
+        return new HistoryPageDTO(page, last.getCreatedAt() + "_" + last.getId());
+    }
+
+    /**
+     * Makes sure the current month and the configured number of months ahead have partitions.
+     * Postgres 10 has no default partition, an operation in a month without one would fail.
+     */
+    @Scheduled(fixedDelayString = "#{@accountProperties.historyMaintenanceInterval.toMillis()}")
+    public void createPartitions() {
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+        for (int i = 0; i <= accountProperties.getHistoryMonthsAhead(); i++) {
+            historyRepo.createPartition(current.plusMonths(i));
+        }
+        partitions = new TreeSet<>(historyRepo.findPartitionMonths());
+    }
+
+    private NavigableSet<YearMonth> partitions() {
+        NavigableSet<YearMonth> known = partitions;
+        if (known == null) {
+            known = new TreeSet<>(historyRepo.findPartitionMonths());
+            partitions = known;
+        }
+        return known;
+    }
+}
@@ -0,0 +1,144 @@
+package com.julenka.api.primitiveBank.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.julenka.api.primitiveBank.config.AccountProperties;
+import com.julenka.api.primitiveBank.domain.IdempotencyKey;
+import com.julenka.api.primitiveBank.exceptions.BadRequestException;
+import com.julenka.api.primitiveBank.repositories.IdempotencyKeyRepo;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.function.Supplier;
+
+/**
+ * Идемпотентность запросов по заголовку Idempotency-Key.
+ * Повторный запрос с тем же ключом получает сохранённый результат и не выполняется снова.
+ */
+@Service
+public class IdempotencyService {
+
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    private final IdempotencyKeyRepo idempotencyKeyRepo;
+    private final CurrentUserService currentUserService;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final AccountProperties accountProperties;
+    //recently completed requests by user id and key, so retries don't need the database
+    private final Cache<String, IdempotencyKey> recent;
+
+    public IdempotencyService(IdempotencyKeyRepo idempotencyKeyRepo, CurrentUserService currentUserService,
+                              TransactionTemplate transactionTemplate, ObjectMapper objectMapper,
+                              AccountProperties accountProperties) {
+        this.idempotencyKeyRepo = idempotencyKeyRepo;
+        this.currentUserService = currentUserService;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.accountProperties = accountProperties;
+        this.recent = Caffeine.newBuilder()
+                .maximumSize(accountProperties.getIdempotencyCacheSize())
+                .expireAfterWrite(accountProperties.getIdempotencyCacheTtl())
+                .build();
+    }
+
+    /**
+     * Runs the action at most once per key of the current user. The key is claimed in the same
+     * transaction as the action, so a failed action leaves the key free for a retry, and a retry
+     * that comes while the first request is running waits for its result.
+     *
+     * @param key       value of the Idempotency-Key header, the action is just run if it's null
+     * @param operation name of the operation, the same key can't be used for different operations
+     * @param request   request body, a retry with another body is rejected
+     */
+    public <T> T execute(String key, String operation, Object request, Class<T> resultType, Supplier<T> action) {
+        if (key == null) {
+            return action.get();
+        }
+        if (key.isBlank() || key.length() > 255) {
+            throw new BadRequestException("Idempotency-Key must be from 1 to 255 characters long");
+        }
+        Long userId = currentUserService.getCurrentUser().getId();
+        String requestHash = hash(operation, request);
+        String cacheKey = userId + ":" + key;
+        IdempotencyKey done = recent.getIfPresent(cacheKey);
+        if (done != null) {
+            return replay(done, requestHash, resultType);
+        }
+        return transactionTemplate.execute(status -> {
+            if (idempotencyKeyRepo.claim(userId, key, requestHash) == 0) {
+                IdempotencyKey stored = idempotencyKeyRepo.findById(new IdempotencyKey.Pk(userId, key))
+                        .orElseThrow(() -> new IllegalStateException("Idempotency key disappeared"));
+                rememberAfterCommit(cacheKey, stored);
+                return replay(stored, requestHash, resultType);
+            }
+            T result = action.get();
+            IdempotencyKey stored = new IdempotencyKey();
+            stored.setUserId(userId);
+            stored.setKey(key);
+            stored.setRequestHash(requestHash);
+            stored.setResponse(write(result));
+            idempotencyKeyRepo.storeResponse(userId, key, stored.getResponse());
+            rememberAfterCommit(cacheKey, stored);
+            return result;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "#{@accountProperties.idempotencyCleanupInterval.toMillis()}")
+    public void deleteExpired() {
+        idempotencyKeyRepo.deleteCreatedBefore(Instant.now().minus(accountProperties.getIdempotencyKeyTtl()));
+    }
+
+    private <T> T replay(IdempotencyKey stored, String requestHash, Class<T> resultType) {
+        if (!stored.getRequestHash().equals(requestHash)) {
+            throw new BadRequestException("Idempotency-Key has already been used for another request");
+        }
+        try {
+            return objectMapper.readValue(stored.getResponse(), resultType);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Stored response can't be read", e);
+        }
+    }
+
+    private void rememberAfterCommit(String cacheKey, IdempotencyKey stored) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                recent.put(cacheKey, stored);
+            }
+        });
+    }
+
+    private String hash(String operation, Object request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(operation.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) ':');
+            byte[] hash = digest.digest(objectMapper.writeValueAsBytes(request));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String write(Object result) {
+        try {
+            return objectMapper.writeValueAsString(result);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Response can't be stored", e);
+        }
+    }
+}
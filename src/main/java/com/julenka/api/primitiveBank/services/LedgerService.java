@@ -0,0 +1,62 @@
+package com.julenka.api.primitiveBank.services;
+
+import com.julenka.api.primitiveBank.config.AccountProperties;
+import com.julenka.api.primitiveBank.domain.Account;
+import com.julenka.api.primitiveBank.domain.LedgerEntry;
+import com.julenka.api.primitiveBank.domain.LedgerEntryType;
+import com.julenka.api.primitiveBank.repositories.AccountRepo;
+import com.julenka.api.primitiveBank.repositories.LedgerEntryRepo;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Журнал операций по счетам.
+ * Баланс счёта - это снимок в accounts.balance плюс ещё не учтённый хвост журнала,
+ * который периодически переносится в снимок, и сумма слотов, если счёт разбит на слоты.
+ * Каждая операция также попадает в историю счёта для выписок.
+ */
+@Service
+@RequiredArgsConstructor
+public class LedgerService {
+
+    private final LedgerEntryRepo ledgerEntryRepo;
+    private final AccountRepo accountRepo;
+    private final HistoryService historyService;
+    private final AccountProperties accountProperties;
+
+    public void recordDeposit(Long accountId, BigDecimal amount, boolean applied) {
+        ledgerEntryRepo.save(new LedgerEntry(accountId, amount, LedgerEntryType.DEPOSIT, applied));
+        historyService.recordDeposit(accountId, amount);
+    }
+
+    public void recordTransfer(Long fromId, Long toId, BigDecimal amount, boolean applied) {
+        ledgerEntryRepo.saveAll(List.of(
+                new LedgerEntry(fromId, amount.negate(), LedgerEntryType.TRANSFER_OUT, applied),
+                new LedgerEntry(toId, amount, LedgerEntryType.TRANSFER_IN, applied)));
+        historyService.recordTransfer(fromId, toId, amount);
+    }
+
+    public BigDecimal unappliedSum(Long accountId) {
+        return ledgerEntryRepo.sumUnapplied(accountId);
+    }
+
+    public BigDecimal balanceOf(Account account) {
+        BigDecimal balance = account.getBalance().add(unappliedSum(account.getId()));
+        return account.getSlots() > 0 ? balance.add(accountRepo.sumSlots(account.getId())) : balance;
+    }
+
+    @Scheduled(fixedDelayString = "#{@accountProperties.compactionInterval.toMillis()}")
+    public void compact() {
+        List<Long> accounts;
+        do {
+            accounts = ledgerEntryRepo.findAccountsWithUnappliedEntries(PageRequest.of(0, accountProperties.getCompactionBatchSize()));
+            // every account is compacted in its own short transaction
+            accounts.forEach(ledgerEntryRepo::compact);
+        } while (accounts.size() == accountProperties.getCompactionBatchSize());
+    }
+}
@@ -0,0 +1,252 @@
+package com.julenka.api.primitiveBank.services;
+
+import com.julenka.api.primitiveBank.config.AccountProperties;
+import com.julenka.api.primitiveBank.config.OutcomeTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Ожидания блокировок счетов, таймауты и дедлоки по каждому счёту за скользящее окно,
+ * а также последние медленные переводы. Показывается в /actuator/locks.
+ */
+@Component
+public class LockContentionMonitor {
+
+    public static final String TIMEOUT = "timeout";
+    public static final String DEADLOCK = "deadlock";
+
+    private final AccountProperties accountProperties;
+    private final OutcomeTimer locks;
+    private final Contention totals = new Contention();
+    private final ThreadLocal<Trace> traces = new ThreadLocal<>();
+    private final Deque<Map<String, Object>> slowOperations = new ArrayDeque<>();
+    private volatile Map<Long, Contention> current = new ConcurrentHashMap<>();
+    private volatile Map<Long, Contention> previous = Map.of();
+    private volatile Instant currentStart = Instant.now();
+    //start of the ranked period, the previous window or the start of the application
+    private volatile Instant since = currentStart;
+
+    public LockContentionMonitor(AccountProperties accountProperties, MeterRegistry meterRegistry) {
+        this.accountProperties = accountProperties;
+        this.locks = new OutcomeTimer("bank.account.locks", "waits for row locks of accounts",
+                Tags.empty(), meterRegistry, LockContentionMonitor::outcomeOf);
+    }
+
+    /**
+     * Lock timeouts and deadlocks are told apart by the SQL state, Hibernate and Spring
+     * wrap them into different exceptions depending on the query.
+     */
+    public static String outcomeOf(RuntimeException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException) {
+                String state = ((SQLException) cause).getSQLState();
+                if ("55P03".equals(state) || "57014".equals(state)) {
+                    return TIMEOUT;
+                }
+                if ("40P01".equals(state)) {
+                    return DEADLOCK;
+                }
+            }
+        }
+        return e.getClass().getSimpleName();
+    }
+
+    /**
+     * Runs a query that locks the given accounts and charges its time to each of them.
+     */
+    public <T> T lock(Collection<Long> accountIds, Supplier<T> query) {
+        long start = System.nanoTime();
+        String outcome = OutcomeTimer.SUCCESS;
+        try {
+            return query.get();
+        } catch (RuntimeException e) {
+            outcome = outcomeOf(e);
+            throw e;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            locks.record(outcome, nanos);
+            Trace trace = traces.get();
+            if (trace != null) {
+                trace.lockWaitNanos += nanos;
+                trace.deadlockCounted |= DEADLOCK.equals(outcome);
+            }
+            for (Long id : accountIds) {
+                Contention contention = contentionOf(id);
+                if (contention != null) {
+                    contention.waited(nanos, outcome);
+                }
+            }
+            totals.waited(nanos, outcome);
+        }
+    }
+
+    /**
+     * Runs a transfer or a deposit. A deadlock is charged to its accounts unless a locking query
+     * has already reported it, a slow one is kept together with the time it waited for locks.
+     *
+     * @param accountIds accounts of the operation, asked for when it's over, since they may be
+     *                   found out only within it
+     */
+    public <T> T trace(String operation, Supplier<List<Long>> accountIds, Supplier<T> action) {
+        Trace outer = traces.get();
+        if (outer != null) {
+            return action.get();
+        }
+        Trace trace = new Trace();
+        traces.set(trace);
+        long start = System.nanoTime();
+        String outcome = OutcomeTimer.SUCCESS;
+        try {
+            return action.get();
+        } catch (RuntimeException e) {
+            outcome = outcomeOf(e);
+            throw e;
+        } finally {
+            traces.remove();
+            long nanos = System.nanoTime() - start;
+            if (DEADLOCK.equals(outcome) && !trace.deadlockCounted) {
+                accountIds.get().stream().filter(Objects::nonNull).map(this::contentionOf)
+                        .filter(Objects::nonNull)
+                        .forEach(contention -> contention.deadlocks.increment());
+                totals.deadlocks.increment();
+            }
+            if (nanos >= accountProperties.getSlowTransferThreshold().toNanos()) {
+                slow(operation, accountIds.get(), nanos, trace.lockWaitNanos, outcome);
+            }
+        }
+    }
+
+    private void slow(String operation, List<Long> accountIds, long nanos, long lockWaitNanos, String outcome) {
+        Map<String, Object> slow = new LinkedHashMap<>();
+        slow.put("operation", operation);
+        slow.put("accountIds", accountIds);
+        slow.put("at", Instant.now());
+        slow.put("durationMs", Duration.ofNanos(nanos).toMillis());
+        slow.put("lockWaitMs", Duration.ofNanos(lockWaitNanos).toMillis());
+        slow.put("outcome", outcome);
+        synchronized (slowOperations) {
+            slowOperations.addFirst(slow);
+            while (slowOperations.size() > accountProperties.getSlowTransferLogSize()) {
+                slowOperations.removeLast();
+            }
+        }
+    }
+
+    // null once the window tracks too many accounts, they still count in the totals
+    private Contention contentionOf(Long accountId) {
+        Map<Long, Contention> window = current;
+        Contention contention = window.get(accountId);
+        if (contention != null || window.size() >= accountProperties.getLockStatsMaxAccounts()) {
+            return contention;
+        }
+        return window.computeIfAbsent(accountId, id -> new Contention());
+    }
+
+    /**
+     * Starts a new window, the ranking covers it and the one before.
+     */
+    @Scheduled(fixedDelayString = "#{@accountProperties.lockStatsWindow.toMillis()}",
+            initialDelayString = "#{@accountProperties.lockStatsWindow.toMillis()}")
+    public void rotate() {
+        previous = current;
+        current = new ConcurrentHashMap<>();
+        since = currentStart;
+        currentStart = Instant.now();
+    }
+
+    /**
+     * @return accounts with the longest lock waits first, then those with most timeouts and deadlocks
+     */
+    public List<Map<String, Object>> hottest(int limit) {
+        Map<Long, long[]> merged = new HashMap<>();
+        previous.forEach((id, contention) -> merged.merge(id, contention.snapshot(), LockContentionMonitor::add));
+        current.forEach((id, contention) -> merged.merge(id, contention.snapshot(), LockContentionMonitor::add));
+        return merged.entrySet().stream()
+                .sorted(Comparator.<Map.Entry<Long, long[]>>comparingLong(e -> e.getValue()[1])
+                        .thenComparingLong(e -> e.getValue()[3] + e.getValue()[4])
+                        .reversed())
+                .limit(limit)
+                .map(e -> describe(e.getKey(), e.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    public Map<String, Object> report() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("window", accountProperties.getLockStatsWindow().toString());
+        report.put("since", since);
+        report.put("totals", describe(null, totals.snapshot()));
+        report.put("hottest", hottest(accountProperties.getLockStatsTop()));
+        synchronized (slowOperations) {
+            report.put("slowTransfers", new ArrayList<>(slowOperations));
+        }
+        return report;
+    }
+
+    private static long[] add(long[] a, long[] b) {
+        return new long[]{a[0] + b[0], a[1] + b[1], Math.max(a[2], b[2]), a[3] + b[3], a[4] + b[4]};
+    }
+
+    private static Map<String, Object> describe(Long accountId, long[] stats) {
+        Map<String, Object> description = new LinkedHashMap<>();
+        if (accountId != null) {
+            description.put("accountId", accountId);
+        }
+        description.put("waits", stats[0]);
+        description.put("waitMs", Duration.ofNanos(stats[1]).toMillis());
+        description.put("maxWaitMs", Duration.ofNanos(stats[2]).toMillis());
+        description.put("timeouts", stats[3]);
+        description.put("deadlocks", stats[4]);
+        return description;
+    }
+
+    private static class Contention {
+
+        final LongAdder waits = new LongAdder();
+        final LongAdder waitNanos = new LongAdder();
+        final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+        final LongAdder timeouts = new LongAdder();
+        final LongAdder deadlocks = new LongAdder();
+
+        void waited(long nanos, String outcome) {
+            waits.increment();
+            waitNanos.add(nanos);
+            maxWaitNanos.accumulate(nanos);
+            if (TIMEOUT.equals(outcome)) {
+                timeouts.increment();
+            } else if (DEADLOCK.equals(outcome)) {
+                deadlocks.increment();
+            }
+        }
+
+        long[] snapshot() {
+            return new long[]{waits.sum(), waitNanos.sum(), maxWaitNanos.get(), timeouts.sum(), deadlocks.sum()};
+        }
+    }
+
+    private static class Trace {
+
+        long lockWaitNanos;
+        boolean deadlockCounted;
+    }
+}
@@ -0,0 +1,59 @@
+package com.julenka.api.primitiveBank.services;
+
+import com.julenka.api.primitiveBank.dto.FundDepositDTO;
+import com.julenka.api.primitiveBank.dto.MoneyTransferDTO;
+import com.julenka.api.primitiveBank.repositories.ReactiveAccountRepo;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+/**
+ * Неблокирующие операции со счетами для профиля reactive, с теми же проверками, что и в {@link AccountService}.
+ * Запрос проверяется и текущий пользователь берётся сразу, в потоке запроса,
+ * а к базе обращается уже возвращённый Mono.
+ */
+@Service
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveAccountService {
+
+    private final CurrentUserService currentUserService;
+    private final ReactiveAccountRepo reactiveAccountRepo;
+
+    public Mono<Long> createAccountForCurrentUser() {
+        return reactiveAccountRepo.create(currentUserService.getCurrentUser().getId());
+    }
+
+    public Mono<Long> fundDepositOfCurrentUser(FundDepositDTO dto) {
+        AccountRules.requireBody(dto);
+        AccountRules.checkAmount(dto.getAmount());
+        Long userId = currentUserService.getCurrentUser().getId();
+        return accountOrOnlyAccount(dto.getToId(), userId)
+                .flatMap(toId -> reactiveAccountRepo.deposit(toId, dto.getAmount(), userId)
+                        .flatMap(credited -> credited == 0 ? Mono.error(AccountRules.notOwnAccount()) : Mono.just(toId)));
+    }
+
+    /**
+     * Works as the atomic transfer mode of {@link AccountService} whatever mode is configured.
+     * The debit is applied at once, the money of the sender includes the unapplied tail
+     * left by the journal mode.
+     */
+    public Mono<Void> transferMoney(MoneyTransferDTO dto) {
+        AccountRules.requireBody(dto);
+        AccountRules.requirePayee(dto.getToId());
+        AccountRules.checkAmount(dto.getAmount());
+        Long userId = currentUserService.getCurrentUser().getId();
+        return accountOrOnlyAccount(dto.getFromId(), userId)
+                .flatMap(fromId -> reactiveAccountRepo.transfer(fromId, dto.getToId(), dto.getAmount(), userId)
+                        .doOnNext(outcome -> AccountRules.checkTransferOutcome(outcome, fromId, dto.getToId())))
+                .then();
+    }
+
+    private Mono<Long> accountOrOnlyAccount(Long accountId, Long userId) {
+        if (accountId != null) {
+            return Mono.just(accountId);
+        }
+        return reactiveAccountRepo.findIdsByUser(userId).collectList().map(AccountRules::onlyAccount);
+    }
+}
@@ -0,0 +1,165 @@
+package com.julenka.api.primitiveBank.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.julenka.api.primitiveBank.config.AuthProperties;
+import com.julenka.api.primitiveBank.config.JwtTokenUtils;
+import com.julenka.api.primitiveBank.domain.RevokedToken;
+import com.julenka.api.primitiveBank.dto.AuthResponseDTO;
+import com.julenka.api.primitiveBank.exceptions.UnauthorizedException;
+import com.julenka.api.primitiveBank.repositories.RevokedTokenRepo;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Выдача пары токенов, обмен refresh-токена на новую пару и отзыв токенов.
+ * Отозванные access-токены держатся в памяти до истечения, другие экземпляры
+ * приложения узнают о них из таблицы revoked_tokens.
+ */
+@Service
+public class TokenService {
+
+    // a revocation is seen by the sync only after its transaction commits, so its revoked_at may be older than the last seen one
+    private static final Duration SYNC_OVERLAP = Duration.ofMinutes(1);
+
+    private final JwtTokenUtils jwtTokenUtils;
+    private final UserDetailsLoader userDetailsLoader;
+    private final RevokedTokenRepo revokedTokenRepo;
+    private final AuthProperties authProperties;
+    //revoked access tokens by jti, an entry lives until the token expires
+    private final Cache<String, Instant> revokedAccessTokens;
+    private volatile Instant syncedUpTo;
+
+    public TokenService(JwtTokenUtils jwtTokenUtils, UserDetailsLoader userDetailsLoader,
+                        RevokedTokenRepo revokedTokenRepo, AuthProperties authProperties) {
+        this.jwtTokenUtils = jwtTokenUtils;
+        this.userDetailsLoader = userDetailsLoader;
+        this.revokedTokenRepo = revokedTokenRepo;
+        this.authProperties = authProperties;
+        this.revokedAccessTokens = Caffeine.newBuilder()
+                .maximumSize(authProperties.getRevokedTokenCacheSize())
+                .expireAfter(new Expiry<String, Instant>() {
+                    @Override
+                    public long expireAfterCreate(String jti, Instant expiresAt, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(Duration.between(Instant.now(), expiresAt).toMillis(), 0));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String jti, Instant expiresAt, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String jti, Instant expiresAt, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+        // older access tokens have expired, their revocations don't matter
+        this.syncedUpTo = Instant.now().minus(authProperties.getAccessTokenTtl());
+    }
+
+    public AuthResponseDTO issue(UserDetails user) {
+        return new AuthResponseDTO(jwtTokenUtils.generateToken(user), jwtTokenUtils.generateRefreshToken(user),
+                authProperties.getAccessTokenTtl().getSeconds());
+    }
+
+    /**
+     * Gives a new pair for a refresh token without checking the password. The refresh token
+     * is revoked by the same statement that checks it, so it works only once even when
+     * it's sent twice at the same moment. The user is read from the database, so the new
+     * access token carries the current roles and token version.
+     */
+    public AuthResponseDTO refresh(String refreshToken) {
+        Claims claims = parse(refreshToken);
+        if (claims == null || !JwtTokenUtils.REFRESH.equals(JwtTokenUtils.tokenType(claims)) || claims.getId() == null) {
+            throw new UnauthorizedException("Invalid refresh token");
+        }
+        if (!revoke(claims)) {
+            throw new UnauthorizedException("Refresh token has already been used");
+        }
+        UserDetails user;
+        try {
+            user = userDetailsLoader.loadUserByUsername(claims.getSubject());
+        } catch (UsernameNotFoundException e) {
+            throw new UnauthorizedException("Invalid refresh token");
+        }
+        return issue(user);
+    }
+
+    /**
+     * Revokes both tokens of the session; a token that is invalid or already expired is skipped.
+     */
+    public void logout(String refreshToken, String accessToken) {
+        Claims refresh = parse(refreshToken);
+        if (refresh != null && JwtTokenUtils.REFRESH.equals(JwtTokenUtils.tokenType(refresh))) {
+            revoke(refresh);
+        }
+        Claims access = parse(accessToken);
+        if (access != null && JwtTokenUtils.ACCESS.equals(JwtTokenUtils.tokenType(access))) {
+            revoke(access);
+        }
+    }
+
+    /**
+     * Checks only the memory, a token revoked by another instance is seen after the next sync.
+     */
+    public boolean isRevoked(Claims accessClaims) {
+        return accessClaims.getId() != null && revokedAccessTokens.getIfPresent(accessClaims.getId()) != null;
+    }
+
+    /**
+     * @return false if the token had been revoked before
+     */
+    private boolean revoke(Claims claims) {
+        if (claims.getId() == null) {
+            return false;
+        }
+        String type = JwtTokenUtils.tokenType(claims);
+        Instant expiresAt = claims.getExpiration().toInstant();
+        if (JwtTokenUtils.ACCESS.equals(type)) {
+            revokedAccessTokens.put(claims.getId(), expiresAt);
+        }
+        return revokedTokenRepo.revoke(claims.getId(), type, expiresAt) == 1;
+    }
+
+    private Claims parse(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        try {
+            return jwtTokenUtils.parseClaims(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "#{@authProperties.revokedTokenSyncInterval.toMillis()}")
+    public void syncRevokedAccessTokens() {
+        Instant now = Instant.now();
+        Instant latest = syncedUpTo;
+        for (RevokedToken revoked : revokedTokenRepo.findByTokenTypeAndRevokedAtAfter(JwtTokenUtils.ACCESS, syncedUpTo.minus(SYNC_OVERLAP))) {
+            if (revoked.getExpiresAt().isAfter(now)) {
+                revokedAccessTokens.put(revoked.getJti(), revoked.getExpiresAt());
+            }
+            if (revoked.getRevokedAt().isAfter(latest)) {
+                latest = revoked.getRevokedAt();
+            }
+        }
+        syncedUpTo = latest;
+    }
+
+    @Scheduled(fixedDelayString = "#{@authProperties.revokedTokenCleanupInterval.toMillis()}")
+    public void deleteExpired() {
+        revokedTokenRepo.deleteExpiredBefore(Instant.now());
+    }
+}
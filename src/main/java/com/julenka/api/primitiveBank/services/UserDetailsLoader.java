@@ -1,8 +1,14 @@
 package com.julenka.api.primitiveBank.services;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.julenka.api.primitiveBank.config.AuthProperties;
 import com.julenka.api.primitiveBank.domain.User;
 import com.julenka.api.primitiveBank.repositories.UserRepo;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Component;
@@ -10,19 +16,97 @@ import org.springframework.stereotype.Component;
 import javax.transaction.Transactional;
 import java.util.Optional;
 
-@RequiredArgsConstructor
+/**
+ * Загрузка пользователей.
+ * Пользователи, уже прошедшие аутентификацию, кэшируются по логину,
+ * чтобы запрос с токеном не читал пользователя из базы.
+ */
 @Component
-public class UserDetailsLoader implements UserDetailsService {
+public class UserDetailsLoader implements UserDetailsService, UserDetailsPasswordService {
+
+    private static final int DELETED = -1;
 
     private final UserRepo repo;
+    private final Cache<String, User> principals;
+    //token versions by user id, DELETED for a user that doesn't exist
+    private final Cache<Long, Integer> tokenVersions;
+
+    public UserDetailsLoader(UserRepo repo, AuthProperties authProperties, MeterRegistry meterRegistry) {
+        this.repo = repo;
+        this.principals = Caffeine.newBuilder()
+                .maximumSize(authProperties.getPrincipalCacheSize())
+                .expireAfterWrite(authProperties.getPrincipalCacheTtl())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, principals, "principals");
+        this.tokenVersions = Caffeine.newBuilder()
+                .maximumSize(authProperties.getPrincipalCacheSize())
+                .expireAfterWrite(authProperties.getTokenVersionCacheTtl())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, tokenVersions, "token.versions");
+    }
 
+    /**
+     * Always reads the database, so the password checked on login is the current one.
+     * The loaded user replaces the cached one.
+     */
     @Override
-    @Transactional
     public User loadUserByUsername(String username) throws UsernameNotFoundException {
         Optional<User> user = repo.findOneByUsername(username);
         if (!user.isPresent()) {
             throw new UsernameNotFoundException("No such user!");
         }
+        principals.put(username, user.get());
         return user.get();
     }
+
+    /**
+     * User for an already authenticated request. The returned instance is shared
+     * and detached, it mustn't be modified.
+     */
+    public User loadPrincipal(String username) throws UsernameNotFoundException {
+        User cached = principals.getIfPresent(username);
+        return cached != null ? cached : loadUserByUsername(username);
+    }
+
+    /**
+     * Whether a token issued with the given version still stands: the user exists and
+     * its roles haven't changed since. Reads only the version column, and at most once
+     * per token-version-cache-ttl for a user.
+     */
+    public boolean isCurrentTokenVersion(Long userId, int tokenVersion) {
+        int current = tokenVersions.get(userId, id -> repo.findTokenVersionById(id).orElse(DELETED));
+        return current != DELETED && current == tokenVersion;
+    }
+
+    /**
+     * Stores the hash of the password just checked on login, made with the current algorithm and cost.
+     * The hash is ready by then, so the transaction is short.
+     */
+    @Override
+    @Transactional
+    public User updatePassword(UserDetails details, String newPassword) {
+        User user = repo.findOneByUsername(details.getUsername())
+                .orElseThrow(() -> new UsernameNotFoundException("No such user!"));
+        user.setPassword(newPassword);
+        User saved = repo.save(user);
+        evict(user.getUsername());
+        return saved;
+    }
+
+    /**
+     * Drops the cached user now and once more after the current transaction commits,
+     * so a request running meanwhile can't put the old state back.
+     */
+    public void evict(String username) {
+        CacheEvictions.evict(principals, username);
+    }
+
+    /**
+     * Same as {@link #evict(String)} for the token version of a user whose roles change or who is deleted.
+     */
+    public void evictTokenVersion(Long userId) {
+        CacheEvictions.evict(tokenVersions, userId);
+    }
 }
@@ -1,31 +1,61 @@
 package com.julenka.api.primitiveBank.services;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.julenka.api.primitiveBank.config.UserProperties;
 import com.julenka.api.primitiveBank.domain.Roles;
 import com.julenka.api.primitiveBank.domain.User;
 import com.julenka.api.primitiveBank.domain.UserInfo;
 import com.julenka.api.primitiveBank.dto.CreateUserDTO;
 import com.julenka.api.primitiveBank.dto.GetUserDTO;
 import com.julenka.api.primitiveBank.dto.UserInfoDTO;
+import com.julenka.api.primitiveBank.exceptions.BadRequestException;
 import com.julenka.api.primitiveBank.exceptions.EntityAlreadyExistsException;
 import com.julenka.api.primitiveBank.mappers.UserInfoMapper;
 import com.julenka.api.primitiveBank.repositories.UserRepo;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
 import javax.persistence.EntityNotFoundException;
 import javax.transaction.Transactional;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
-@RequiredArgsConstructor
 public class UserService {
 
     private final UserRepo userRepo;
     private final PasswordEncoder encoder;
     private final CurrentUserService currentUserService;
     private final UserInfoMapper userInfoMapper;
+    private final UserDetailsLoader userDetailsLoader;
+    //users returned by getUserByUsername, null if the cache is switched off
+    private final Cache<String, GetUserDTO> profiles;
+
+    public UserService(UserRepo userRepo, PasswordEncoder encoder, CurrentUserService currentUserService,
+                       UserInfoMapper userInfoMapper, UserDetailsLoader userDetailsLoader,
+                       UserProperties userProperties, MeterRegistry meterRegistry) {
+        this.userRepo = userRepo;
+        this.encoder = encoder;
+        this.currentUserService = currentUserService;
+        this.userInfoMapper = userInfoMapper;
+        this.userDetailsLoader = userDetailsLoader;
+        if (userProperties.getProfileCacheSize() > 0) {
+            this.profiles = Caffeine.newBuilder()
+                    .maximumSize(userProperties.getProfileCacheSize())
+                    .expireAfterWrite(userProperties.getProfileCacheTtl())
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, profiles, "profiles");
+        } else {
+            this.profiles = null;
+        }
+    }
 
     @Transactional
     public Long createUser(CreateUserDTO createUserDTO) {
@@ -49,37 +79,85 @@ public class UserService {
 
     @Transactional
     public void changeUserInfo(UserInfoDTO userInfoDTO) {
-        User currentUser = currentUserService.getCurrentUser();
+        User currentUser = userRepo.getById(currentUserService.getCurrentUser().getId());
         currentUser.setUserInfo(userInfoMapper.toUserInfo(userInfoDTO));
         userRepo.save(currentUser);
-
+        userDetailsLoader.evict(currentUser.getUsername());
+        evictProfile(currentUser.getUsername());
     }
 
     @Transactional
     public void deleteCurrentUser() {
         User currentUser = currentUserService.getCurrentUser();
-        userRepo.delete(currentUser);
+        userRepo.deleteById(currentUser.getId());
+        userDetailsLoader.evict(currentUser.getUsername());
+        userDetailsLoader.evictTokenVersion(currentUser.getId());
+        evictProfile(currentUser.getUsername());
     }
 
     @Transactional
     public void deleteUserById(Long id) {
+        userRepo.findById(id).map(User::getUsername).ifPresent(username -> {
+            userDetailsLoader.evict(username);
+            evictProfile(username);
+        });
+        userDetailsLoader.evictTokenVersion(id);
         userRepo.deleteById(id);
     }
 
+    /**
+     * Replaces the roles of the user and raises its token version, so its access tokens
+     * carrying the old roles stop working and it has to refresh them.
+     */
     @Transactional
+    public void changeRoles(Long id, Set<Roles> roles) {
+        if (roles == null || roles.isEmpty()) {
+            throw new BadRequestException("A user needs at least one role");
+        }
+        User user = userRepo.findById(id).orElseThrow(EntityNotFoundException::new);
+        user.setAuthorities(new ArrayList<>(roles));
+        user.setTokenVersion(user.getTokenVersion() + 1);
+        userRepo.save(user);
+        userDetailsLoader.evict(user.getUsername());
+        userDetailsLoader.evictTokenVersion(id);
+        evictProfile(user.getUsername());
+    }
+
+    /**
+     * Reads the user with one projection query, no entity is loaded.
+     * The returned object may be shared through the cache, it mustn't be modified.
+     */
     public GetUserDTO getUserByUsername(String username) {
-        GetUserDTO getUserDTO = new GetUserDTO();
-        Optional<User> userOptional = userRepo.findOneByUsername(username);
-        if (!userOptional.isPresent()) {
+        return profiles != null ? profiles.get(username, this::loadProfile) : loadProfile(username);
+    }
+
+    private GetUserDTO loadProfile(String username) {
+        List<UserRepo.ProfileRow> rows = userRepo.findProfileByUsername(username);
+        if (rows.isEmpty()) {
             throw new EntityNotFoundException();
         }
-        User user = userOptional.get();
+        UserRepo.ProfileRow user = rows.get(0);
+        GetUserDTO getUserDTO = new GetUserDTO();
         getUserDTO.setUsername(user.getUsername());
         getUserDTO.setId(user.getId());
-        getUserDTO.setUserinfo(userInfoMapper.fromUserInfo(user.getUserInfo()));
-        getUserDTO.setAuthorities(user.getAuthorities());
+        if (user.getUserInfoId() != null) {
+            UserInfoDTO userInfoDTO = new UserInfoDTO();
+            userInfoDTO.setFirstName(user.getFirstName());
+            userInfoDTO.setLastName(user.getLastName());
+            getUserDTO.setUserinfo(userInfoDTO);
+        }
+        getUserDTO.setAuthorities(rows.stream()
+                .map(UserRepo.ProfileRow::getAuthority)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList()));
         return getUserDTO;
     }
 
+    private void evictProfile(String username) {
+        if (profiles != null) {
+            CacheEvictions.evict(profiles, username);
+        }
+    }
+
 
 }
@@ -0,0 +1,20 @@
+
+create table IF NOT EXISTS ledger_entries
+(
+    id         bigint                   not null
+        constraint ledger_entries_pkey
+            primary key,
+    account_id bigint                   not null
+        constraint accounts_pkey
+            references accounts
+            on delete cascade,
+    amount     numeric(10, 2)           not null,
+    type       varchar(16)              not null,
+    created_at timestamp with time zone not null default now(),
+    applied    boolean                  not null default false
+);
+
+create index IF NOT EXISTS ledger_entries_account_id_idx on ledger_entries (account_id, id);
+
+-- the unapplied tail is what balance reads and compaction look for
+create index IF NOT EXISTS ledger_entries_unapplied_idx on ledger_entries (account_id) where not applied;
@@ -0,0 +1,15 @@
+
+alter table accounts
+    add column IF NOT EXISTS slots integer not null default 0;
+
+create table IF NOT EXISTS account_slots
+(
+    account_id bigint         not null
+        constraint accounts_pkey
+            references accounts
+            on delete cascade,
+    slot       integer        not null,
+    balance    numeric(10, 2) not null default 0.00,
+    constraint account_slots_pkey
+        primary key (account_id, slot)
+);
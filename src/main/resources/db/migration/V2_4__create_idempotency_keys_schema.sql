@@ -0,0 +1,16 @@
+create table IF NOT EXISTS idempotency_keys
+(
+    user_id         bigint       not null
+        constraint users_pkey
+            references users
+            on delete cascade,
+    idempotency_key varchar(255) not null,
+    request_hash    varchar(64)  not null,
+    response        text,
+    created_at      timestamp with time zone not null default now(),
+    constraint idempotency_keys_pkey
+        primary key (user_id, idempotency_key)
+);
+
+create index IF NOT EXISTS idempotency_keys_created_at_idx
+    on idempotency_keys (created_at);
@@ -0,0 +1,10 @@
+-- every table gets its own sequence, ids are handed out by blocks of 50 (pooled-lo on the hibernate side)
+create sequence if not exists userinfo_id_seq increment by 50;
+create sequence if not exists users_id_seq increment by 50;
+create sequence if not exists accounts_id_seq increment by 50;
+create sequence if not exists ledger_entries_id_seq increment by 50;
+
+select setval('userinfo_id_seq', (select coalesce(max(id), 0) + 1 from userinfo), false);
+select setval('users_id_seq', (select coalesce(max(id), 0) + 1 from users), false);
+select setval('accounts_id_seq', (select coalesce(max(id), 0) + 1 from accounts), false);
+select setval('ledger_entries_id_seq', (select coalesce(max(id), 0) + 1 from ledger_entries), false);
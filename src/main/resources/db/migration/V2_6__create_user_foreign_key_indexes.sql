@@ -0,0 +1,19 @@
+-- accounts of a user (findAllByUser, findOneByUser, User.accounts), listed in id order
+create index IF NOT EXISTS accounts_user_id_idx on accounts (user_id, id);
+
+-- duplicated and empty authorities can't be told apart by hibernate anyway
+delete from user_authorities a
+    using user_authorities b
+where a.user_id = b.user_id
+  and a.authorities = b.authorities
+  and a.ctid > b.ctid;
+
+delete from user_authorities where authorities is null;
+
+alter table user_authorities
+    alter column authorities set not null;
+
+-- user_id goes first, so the key also serves the authorities fetch of a user
+alter table user_authorities
+    add constraint user_authorities_pkey
+        primary key (user_id, authorities);
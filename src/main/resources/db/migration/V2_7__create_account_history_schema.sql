@@ -0,0 +1,40 @@
+-- history of transfers and deposits for statements, one partition per month (UTC).
+-- postgres 10 has no indexes, keys or foreign keys on the partitioned table itself,
+-- they are created for every partition
+create table IF NOT EXISTS account_history
+(
+    id              bigint                   not null,
+    account_id      bigint                   not null,
+    counterparty_id bigint,
+    amount          numeric(10, 2)           not null,
+    type            varchar(16)              not null,
+    created_at      timestamp with time zone not null default now()
+) partition by range (created_at);
+
+create sequence if not exists account_history_id_seq increment by 50;
+
+-- the statement columns follow the keyset ones, so a statement page of a settled month
+-- is read by an index only scan (postgres 10 has no INCLUDE)
+create or replace function create_account_history_partition(month date) returns void as
+$$
+declare
+    month_start timestamp with time zone := date_trunc('month', month::timestamp) at time zone 'UTC';
+    partition   text                     := 'account_history_' || to_char(month, '"y"YYYY"m"MM');
+begin
+    if to_regclass(partition) is not null then
+        return;
+    end if;
+    execute format('create table %I partition of account_history for values from (%L) to (%L)',
+                   partition, month_start, month_start + interval '1 month');
+    execute format('alter table %I add constraint %I primary key (id)', partition, partition || '_pkey');
+    execute format('create index %I on %I (account_id, created_at, id, amount, type, counterparty_id)',
+                   partition || '_statement_idx', partition);
+exception
+    when duplicate_table then
+        -- created by another instance meanwhile
+        null;
+end
+$$ language plpgsql;
+
+select create_account_history_partition(cast((now() at time zone 'UTC')::date + make_interval(months => m) as date))
+from generate_series(0, 2) as m;
@@ -0,0 +1,15 @@
+-- operations waiting to be moved into account_history, one row per operation:
+-- a transfer is kept as the sender's row, the payee's row is derived when it's moved
+create table IF NOT EXISTS history_outbox
+(
+    id              bigint                   not null
+        constraint history_outbox_pkey
+            primary key,
+    account_id      bigint                   not null,
+    counterparty_id bigint,
+    amount          numeric(10, 2)           not null,
+    type            varchar(16)              not null,
+    created_at      timestamp with time zone not null default now()
+);
+
+create sequence if not exists history_outbox_id_seq increment by 50;
@@ -0,0 +1,12 @@
+create table IF NOT EXISTS revoked_tokens
+(
+    jti        varchar(36)              not null
+        constraint revoked_tokens_pkey
+            primary key,
+    token_type varchar(16)              not null,
+    expires_at timestamp with time zone not null,
+    revoked_at timestamp with time zone not null default now()
+);
+
+create index IF NOT EXISTS revoked_tokens_revoked_at_idx
+    on revoked_tokens (revoked_at);
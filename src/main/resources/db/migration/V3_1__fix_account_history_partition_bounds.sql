@@ -0,0 +1,48 @@
+-- the upper bound of a history partition was a month after its UTC start in the session time zone:
+-- west of UTC it fell short of the next month, leaving a gap no insert could go to,
+-- and across a DST change it could reach into the next month, so that partition couldn't be created
+create or replace function create_account_history_partition(month date) returns void as
+$$
+declare
+    month_start timestamp with time zone := date_trunc('month', month::timestamp) at time zone 'UTC';
+    month_end   timestamp with time zone := (date_trunc('month', month::timestamp) + interval '1 month') at time zone 'UTC';
+    partition   text                     := 'account_history_' || to_char(month, '"y"YYYY"m"MM');
+begin
+    if to_regclass(partition) is not null then
+        return;
+    end if;
+    execute format('create table %I partition of account_history for values from (%L) to (%L)',
+                   partition, month_start, month_end);
+    execute format('alter table %I add constraint %I primary key (id)', partition, partition || '_pkey');
+    execute format('create index %I on %I (account_id, created_at, id, amount, type, counterparty_id)',
+                   partition || '_statement_idx', partition);
+exception
+    when duplicate_table then
+        -- created by another instance meanwhile
+        null;
+end
+$$ language plpgsql;
+
+-- partitions created with the old bounds get the UTC ones, the rows they hold are within both
+do
+$$
+declare
+    part        record;
+    month_start timestamp;
+    bound       text;
+begin
+    for part in select c.relname, pg_get_expr(c.relpartbound, c.oid) as bound
+                from pg_inherits i
+                         join pg_class c on c.oid = i.inhrelid
+                where i.inhparent = 'account_history'::regclass
+        loop
+            month_start := make_date(substring(part.relname, 18, 4)::int, substring(part.relname, 23, 2)::int, 1);
+            bound := format('FOR VALUES FROM (%L) TO (%L)',
+                            month_start at time zone 'UTC', (month_start + interval '1 month') at time zone 'UTC');
+            if part.bound <> bound then
+                execute format('alter table account_history detach partition %I', part.relname);
+                execute format('alter table account_history attach partition %I %s', part.relname, bound);
+            end if;
+        end loop;
+end
+$$;
@@ -0,0 +1,37 @@
+-- the journal outlives the accounts: ledger entries of a deleted account are moved here
+-- instead of being deleted with it
+create table IF NOT EXISTS ledger_entries_archive
+(
+    id         bigint                   not null
+        constraint ledger_entries_archive_pkey
+            primary key,
+    account_id bigint                   not null,
+    amount     numeric(10, 2)           not null,
+    type       varchar(16)              not null,
+    created_at timestamp with time zone not null,
+    applied    boolean                  not null
+);
+
+create index IF NOT EXISTS ledger_entries_archive_account_id_idx on ledger_entries_archive (account_id, id);
+
+create or replace function archive_ledger_entries() returns trigger as
+$$
+begin
+    with moved as (
+        delete from ledger_entries where account_id = old.id returning id, account_id, amount, type, created_at, applied
+    )
+    insert into ledger_entries_archive (id, account_id, amount, type, created_at, applied)
+    select id, account_id, amount, type, created_at, applied from moved;
+    return old;
+end
+$$ language plpgsql;
+
+create trigger accounts_archive_ledger_entries
+    before delete on accounts
+    for each row execute procedure archive_ledger_entries();
+
+-- without the cascade a credit journaled while its account is being deleted waits for the delete and fails
+alter table ledger_entries
+    drop constraint accounts_pkey;
+alter table ledger_entries
+    add constraint ledger_entries_account_id_fkey foreign key (account_id) references accounts;
@@ -0,0 +1,85 @@
+package com.julenka.api.primitiveBank.config;
+
+import com.julenka.api.primitiveBank.domain.Roles;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {"management.endpoints.web.exposure.include=datasource",
+        "bank.datasource.pool-size=0", "bank.datasource.cores=3", "bank.datasource.wait-ratio=2"})
+@AutoConfigureMockMvc
+class DataSourceTuningIT {
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    @DisplayName("Pool is sized from cores and waits, the driver gets the statement cache settings")
+    void dataSourceIsTuned() throws Exception {
+        assertEquals(9, ((HikariDataSource) dataSource).getMaximumPoolSize());
+        try (Connection connection = dataSource.getConnection()) {
+            assertEquals(1, connection.unwrap(PGConnection.class).getPrepareThreshold());
+        }
+    }
+
+    @Test
+    @DisplayName("Explicit settings are kept")
+    void explicitSettingsWin() {
+        DataSourceTuningProperties tuning = new DataSourceTuningProperties();
+        try (HikariDataSource explicit = new HikariDataSource()) {
+            explicit.setMaximumPoolSize(4);
+            explicit.addDataSourceProperty("prepareThreshold", "0");
+            DataSourceTuner.tune(explicit, tuning, true);
+            assertEquals(4, explicit.getMaximumPoolSize());
+            assertEquals("0", explicit.getDataSourceProperties().getProperty("prepareThreshold"));
+            assertEquals("true", explicit.getDataSourceProperties().getProperty("reWriteBatchedInserts"));
+        }
+        tuning.setPoolSize(6);
+        assertEquals(6, tuning.derivedPoolSize());
+    }
+
+    @Test
+    @DisplayName("Without the server cores or the pool size the Hikari pool size is kept")
+    void nothingToDeriveFrom() {
+        DataSourceTuningProperties tuning = new DataSourceTuningProperties();
+        assertEquals(0, tuning.derivedPoolSize());
+        try (HikariDataSource pool = new HikariDataSource()) {
+            int hikariDefault = pool.getMaximumPoolSize();
+            DataSourceTuner.tune(pool, tuning, false);
+            assertEquals(hikariDefault, pool.getMaximumPoolSize());
+        }
+        tuning.setCores(1);
+        tuning.setWaitRatio(0);
+        assertEquals(2, tuning.derivedPoolSize());
+    }
+
+    @Test
+    @DisplayName("Admin sees the pool settings")
+    void endpointForAdmin() throws Exception {
+        mockMvc.perform(get("/actuator/datasource").with(user("admin").authorities(Roles.ADMIN)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.maximumPoolSize").value(9))
+                .andExpect(jsonPath("$.derivedPoolSize").value(9))
+                .andExpect(jsonPath("$.driverProperties.prepareThreshold").value("1"))
+                .andExpect(jsonPath("$.driverProperties.reWriteBatchedInserts").value("true"));
+        mockMvc.perform(get("/actuator/datasource").with(user("user").authorities(Roles.USER)))
+                .andExpect(status().isForbidden());
+    }
+}
@@ -0,0 +1,127 @@
+package com.julenka.api.primitiveBank.config;
+
+import com.julenka.api.primitiveBank.domain.User;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SignatureException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JwtKeyRingTest {
+
+    private static final User USER = new User();
+
+    static {
+        USER.setUsername("key-ring-user");
+    }
+
+    private static AuthProperties.Key ecKey(String id, KeyPair pair, boolean withPrivateKey) {
+        AuthProperties.Key key = new AuthProperties.Key();
+        key.setId(id);
+        key.setAlgorithm(SignatureAlgorithm.ES256);
+        key.setPublicKey(Base64.getEncoder().encodeToString(pair.getPublic().getEncoded()));
+        if (withPrivateKey) {
+            key.setPrivateKey(Base64.getEncoder().encodeToString(pair.getPrivate().getEncoded()));
+        }
+        return key;
+    }
+
+    private static AuthProperties.Key hmacKey(String id) {
+        AuthProperties.Key key = new AuthProperties.Key();
+        key.setId(id);
+        key.setAlgorithm(SignatureAlgorithm.HS256);
+        key.setSecret(Base64.getEncoder().encodeToString(new byte[32]));
+        return key;
+    }
+
+    private static JwtTokenUtils tokenUtils(String activeKeyId, AuthProperties.Key... keys) {
+        AuthProperties properties = new AuthProperties();
+        properties.getJwt().setActiveKeyId(activeKeyId);
+        properties.getJwt().setKeys(List.of(keys));
+        return new JwtTokenUtils(properties);
+    }
+
+    private static KeyPair ecPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(256);
+        return generator.generateKeyPair();
+    }
+
+    @Test
+    @DisplayName("Tokens of the previous key still verify after a rotation, new ones are signed by the active key")
+    void rotation() throws Exception {
+        KeyPair old = ecPair();
+        KeyPair current = ecPair();
+        String oldToken = tokenUtils("old", ecKey("old", old, true)).generateToken(USER);
+
+        JwtTokenUtils rotated = tokenUtils("new", ecKey("old", old, false), ecKey("new", current, true));
+        assertEquals(USER.getUsername(), rotated.verifyClaims(oldToken).getSubject());
+        String newToken = rotated.generateToken(USER);
+        assertEquals("new", Jwts.parser().setSigningKeyResolver(new JwtKeyRing(properties(ecKey("new", current, true))))
+                .parseClaimsJws(newToken).getHeader().getKeyId());
+    }
+
+    @Test
+    @DisplayName("A key without the private key can't be the active one")
+    void activeKeyNeedsPrivateKey() throws Exception {
+        KeyPair pair = ecPair();
+        assertThrows(IllegalStateException.class, () -> tokenUtils("old", ecKey("old", pair, false)));
+    }
+
+    @Test
+    @DisplayName("Without keys a key is generated only when it's allowed")
+    void generatedKey() {
+        assertThrows(IllegalStateException.class, () -> new JwtKeyRing(properties()));
+        AuthProperties.Jwt settings = properties();
+        settings.setAllowGeneratedKey(true);
+        JwtKeyRing generated = new JwtKeyRing(settings);
+        assertEquals(SignatureAlgorithm.ES256, generated.active().getAlgorithm());
+        assertTrue(generated.active().getId().startsWith("generated-"));
+    }
+
+    @Test
+    @DisplayName("Tokens with an unknown kid or another algorithm than the key's are rejected")
+    void foreignTokens() throws Exception {
+        KeyPair pair = ecPair();
+        JwtTokenUtils tokenUtils = tokenUtils(null, ecKey("ec", pair, true), hmacKey("hmac"));
+
+        String unknownKid = Jwts.builder().setSubject(USER.getUsername()).setExpiration(new Date(System.currentTimeMillis() + 60_000))
+                .setHeaderParam(JwsHeader.KEY_ID, "other").signWith(SignatureAlgorithm.ES256, ecPair().getPrivate()).compact();
+        assertThrows(SignatureException.class, () -> tokenUtils.verifyClaims(unknownKid));
+
+        String wrongAlgorithm = Jwts.builder().setSubject(USER.getUsername()).setExpiration(new Date(System.currentTimeMillis() + 60_000))
+                .setHeaderParam(JwsHeader.KEY_ID, "ec").signWith(SignatureAlgorithm.HS256, pair.getPublic().getEncoded()).compact();
+        assertThrows(SignatureException.class, () -> tokenUtils.verifyClaims(wrongAlgorithm));
+    }
+
+    @Test
+    @DisplayName("JWKS publishes public keys and leaves shared secrets out")
+    @SuppressWarnings("unchecked")
+    void jwks() throws Exception {
+        JwtTokenUtils tokenUtils = tokenUtils("ec", ecKey("ec", ecPair(), true), hmacKey("hmac"));
+        List<Map<String, Object>> keys = (List<Map<String, Object>>) tokenUtils.jwks().get("keys");
+        assertEquals(1, keys.size());
+        assertEquals("ec", keys.get(0).get("kid"));
+        assertEquals("EC", keys.get(0).get("kty"));
+        assertEquals("P-256", keys.get(0).get("crv"));
+        assertEquals(43, ((String) keys.get(0).get("x")).length());
+    }
+
+    private static AuthProperties.Jwt properties(AuthProperties.Key... keys) {
+        AuthProperties.Jwt jwt = new AuthProperties.Jwt();
+        jwt.setKeys(List.of(keys));
+        return jwt;
+    }
+}
@@ -0,0 +1,103 @@
+package com.julenka.api.primitiveBank.config;
+
+import com.julenka.api.primitiveBank.domain.Roles;
+import com.julenka.api.primitiveBank.domain.User;
+import com.julenka.api.primitiveBank.repositories.UserRepo;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// more logins than connections, each of them waits for the only hashing thread;
+// open-in-view is off as in the main properties, otherwise a request keeps its connection to the end
+@SpringBootTest(properties = {"spring.jpa.open-in-view=false",
+        "spring.datasource.hikari.maximum-pool-size=3", "spring.datasource.hikari.connection-timeout=1000",
+        "bank.auth.password-encoding=pbkdf2", "bank.auth.pbkdf2-iterations=1000000",
+        "bank.auth.password-hash-threads=1", "bank.auth.password-hash-timeout=2m"})
+@AutoConfigureMockMvc
+class LoginConnectionsIT {
+
+    private static final String USERNAME = "busy-login";
+    private static final String LOGIN = "{\"username\":\"" + USERNAME + "\",\"password\":\"busy-password\"}";
+    private static final int LOGINS = 8;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepo userRepo;
+
+    @Autowired
+    private PasswordEncoder encoder;
+
+    @Autowired
+    private JwtTokenUtils jwtTokenUtils;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @AfterEach
+    void deleteUser() {
+        userRepo.findOneByUsername(USERNAME).ifPresent(userRepo::delete);
+    }
+
+    private double queuedHashes() {
+        return meterRegistry.get("executor.queued").tag("name", "password.hash").gauge().value();
+    }
+
+    @Test
+    @DisplayName("Logins waiting for a hash don't hold connections, other requests still get them")
+    void loginsDoNotHoldConnections() throws Exception {
+        deleteUser();
+        User user = new User();
+        user.setUsername(USERNAME);
+        user.setPassword(encoder.encode("busy-password"));
+        user.setAuthorities(Set.of(Roles.USER));
+        String token = jwtTokenUtils.generateToken(userRepo.saveAndFlush(user));
+
+        ExecutorService clients = Executors.newFixedThreadPool(LOGINS);
+        try {
+            List<Future<Integer>> logins = new ArrayList<>();
+            for (int i = 0; i < LOGINS; i++) {
+                logins.add(clients.submit(() -> mockMvc.perform(post("/auth/authenticate")
+                        .contentType(MediaType.APPLICATION_JSON).content(LOGIN)).andReturn().getResponse().getStatus()));
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (queuedHashes() < LOGINS / 2 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(queuedHashes() >= LOGINS / 2, "logins haven't queued up");
+
+            for (int i = 0; i < 3; i++) {
+                mockMvc.perform(get("/accounts").header("Authorization", "Bearer " + token)).andExpect(status().isOk());
+            }
+            assertTrue(queuedHashes() > 0, "logins were over before the other requests");
+
+            for (Future<Integer> login : logins) {
+                assertEquals(200, login.get(2, TimeUnit.MINUTES));
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.julenka.api.primitiveBank.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.julenka.api.primitiveBank.domain.Account;
+import com.julenka.api.primitiveBank.domain.Roles;
+import com.julenka.api.primitiveBank.domain.User;
+import com.julenka.api.primitiveBank.dto.AuthResponseDTO;
+import com.julenka.api.primitiveBank.repositories.AccountRepo;
+import com.julenka.api.primitiveBank.repositories.UserRepo;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.math.BigDecimal;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "management.endpoints.web.exposure.include=prometheus")
+@AutoConfigureMockMvc
+@AutoConfigureMetrics
+class MetricsIT {
+
+    private static final String USERNAME = "metrics-user";
+    private static final String PASSWORD = "metrics-password";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private UserRepo userRepo;
+
+    @Autowired
+    private AccountRepo accountRepo;
+
+    @Autowired
+    private PasswordEncoder encoder;
+
+    private Long fromId;
+    private Long toId;
+
+    @BeforeEach
+    void setUp() {
+        cleanUp();
+        User user = new User();
+        user.setUsername(USERNAME);
+        user.setPassword(encoder.encode(PASSWORD));
+        user.setAuthorities(Set.of(Roles.USER));
+        User owner = userRepo.saveAndFlush(user);
+        fromId = saveAccount(owner, BigDecimal.TEN);
+        toId = saveAccount(owner, BigDecimal.ZERO);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        userRepo.findOneByUsername(USERNAME).ifPresent(userRepo::delete);
+    }
+
+    private Long saveAccount(User owner, BigDecimal balance) {
+        Account account = new Account();
+        account.setBalance(balance);
+        account.setUser(owner);
+        return accountRepo.saveAndFlush(account).getId();
+    }
+
+    @SneakyThrows
+    private String login() {
+        String body = mockMvc.perform(post("/auth/authenticate").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"username\":\"" + USERNAME + "\",\"password\":\"" + PASSWORD + "\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return new ObjectMapper().readValue(body, AuthResponseDTO.class).getJwtToken();
+    }
+
+    private long count(String name, String outcome) {
+        Timer timer = meterRegistry.find(name).tag("outcome", outcome).timer();
+        return timer == null ? 0 : timer.count();
+    }
+
+    @Test
+    @DisplayName("Transfers, lock waits, token and password checks are timed by outcome")
+    void operationsAreTimed() throws Exception {
+        long transfers = count("bank.transfers", OutcomeTimer.SUCCESS);
+        long refused = count("bank.transfers", "ForbiddenOperationException");
+        long locks = count("bank.account.locks", OutcomeTimer.SUCCESS);
+        long tokens = count("bank.auth.tokens", OutcomeTimer.SUCCESS);
+        long passwords = count("bank.auth.password.checks", OutcomeTimer.SUCCESS);
+
+        String token = login();
+        mockMvc.perform(post("/accounts/transfer").header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"fromId\":" + fromId + ",\"toId\":" + toId + ",\"amount\":4}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/accounts/transfer").header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"fromId\":" + fromId + ",\"toId\":" + toId + ",\"amount\":100}"))
+                .andExpect(status().isBadRequest());
+
+        assertEquals(transfers + 1, count("bank.transfers", OutcomeTimer.SUCCESS));
+        assertEquals(refused + 1, count("bank.transfers", "ForbiddenOperationException"));
+        assertEquals(locks + 2, count("bank.account.locks", OutcomeTimer.SUCCESS));
+        assertEquals(tokens + 2, count("bank.auth.tokens", OutcomeTimer.SUCCESS));
+        assertEquals(passwords + 1, count("bank.auth.password.checks", OutcomeTimer.SUCCESS));
+    }
+
+    @Test
+    @DisplayName("Prometheus scrapes the timers without a token")
+    void prometheusEndpoint() throws Exception {
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("bank_transfers_seconds_bucket{mode=\"locking\",outcome=\"success\",le=\"")))
+                .andExpect(content().string(containsString("bank_auth_password_checks_seconds_count")));
+    }
+}
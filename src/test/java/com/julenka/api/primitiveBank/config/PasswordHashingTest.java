@@ -0,0 +1,99 @@
+package com.julenka.api.primitiveBank.config;
+
+import com.julenka.api.primitiveBank.config.AuthProperties.PasswordEncoding;
+import com.julenka.api.primitiveBank.exceptions.ServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PasswordHashingTest {
+
+    private static AuthProperties properties(PasswordEncoding encoding, int pbkdf2Iterations) {
+        AuthProperties properties = new AuthProperties();
+        properties.setPasswordEncoding(encoding);
+        properties.setBcryptStrength(4);
+        properties.setPbkdf2Iterations(pbkdf2Iterations);
+        return properties;
+    }
+
+    @Test
+    @DisplayName("Hashes without a prefix are BCrypt and get upgraded")
+    void legacyHashes() {
+        PasswordEncoder encoder = PasswordEncoders.delegating(properties(PasswordEncoding.PBKDF2, 1000));
+        String legacy = new BCryptPasswordEncoder(4).encode("secret");
+        assertTrue(encoder.matches("secret", legacy));
+        assertTrue(encoder.upgradeEncoding(legacy));
+
+        String upgraded = encoder.encode("secret");
+        assertTrue(upgraded.startsWith("{pbkdf2}1000$"), upgraded);
+        assertTrue(encoder.matches("secret", upgraded));
+        assertFalse(encoder.upgradeEncoding(upgraded));
+    }
+
+    @Test
+    @DisplayName("Changed cost doesn't lock anyone out, old hashes are upgraded")
+    void changedCost() {
+        String pbkdf2 = PasswordEncoders.delegating(properties(PasswordEncoding.PBKDF2, 1000)).encode("secret");
+        PasswordEncoder moreIterations = PasswordEncoders.delegating(properties(PasswordEncoding.PBKDF2, 2000));
+        assertTrue(moreIterations.matches("secret", pbkdf2));
+        assertFalse(moreIterations.matches("wrong", pbkdf2));
+        assertTrue(moreIterations.upgradeEncoding(pbkdf2));
+
+        String bcrypt = PasswordEncoders.delegating(properties(PasswordEncoding.BCRYPT, 1000)).encode("secret");
+        AuthProperties stronger = properties(PasswordEncoding.BCRYPT, 1000);
+        stronger.setBcryptStrength(5);
+        assertTrue(PasswordEncoders.delegating(stronger).matches("secret", bcrypt));
+        assertTrue(PasswordEncoders.delegating(stronger).upgradeEncoding(bcrypt));
+    }
+
+    @Test
+    @DisplayName("Hashing beyond the threads and the queue is refused at once")
+    void boundedHashing() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        PasswordEncoder slow = new BCryptPasswordEncoder(4) {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                started.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.encode(rawPassword);
+            }
+        };
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        BoundedPasswordEncoder bounded = new BoundedPasswordEncoder(slow, 1, 1, Duration.ofSeconds(10), meterRegistry);
+        try {
+            CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> bounded.encode("first"));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> bounded.encode("second"));
+            while (meterRegistry.get("executor.queued").gauge().value() < 1) {
+                Thread.sleep(10);
+            }
+            assertThrows(ServiceUnavailableException.class, () -> bounded.encode("third"));
+            assertEquals(1, meterRegistry.get("password.hash.rejected").counter().count());
+
+            release.countDown();
+            String first = running.get(10, TimeUnit.SECONDS);
+            String second = queued.get(10, TimeUnit.SECONDS);
+            assertTrue(bounded.matches("first", first));
+            assertTrue(bounded.matches("second", second));
+        } finally {
+            bounded.destroy();
+        }
+    }
+}
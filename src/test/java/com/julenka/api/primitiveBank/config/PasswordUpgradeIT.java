@@ -0,0 +1,57 @@
+package com.julenka.api.primitiveBank.config;
+
+import com.julenka.api.primitiveBank.domain.Roles;
+import com.julenka.api.primitiveBank.domain.User;
+import com.julenka.api.primitiveBank.repositories.UserRepo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {"bank.auth.password-encoding=pbkdf2", "bank.auth.pbkdf2-iterations=1000"})
+@AutoConfigureMockMvc
+class PasswordUpgradeIT {
+
+    private static final String LOGIN = "{\"username\":\"legacy-hash\",\"password\":\"legacy-password\"}";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepo userRepo;
+
+    @AfterEach
+    void deleteUser() {
+        userRepo.findOneByUsername("legacy-hash").ifPresent(userRepo::delete);
+    }
+
+    @Test
+    @DisplayName("A hash made before the algorithm prefix is replaced on login")
+    void hashIsUpgradedOnLogin() throws Exception {
+        deleteUser();
+        User user = new User();
+        user.setUsername("legacy-hash");
+        user.setPassword(new BCryptPasswordEncoder().encode("legacy-password"));
+        user.setAuthorities(Set.of(Roles.USER));
+        userRepo.saveAndFlush(user);
+
+        mockMvc.perform(post("/auth/authenticate").contentType(MediaType.APPLICATION_JSON).content(LOGIN))
+                .andExpect(status().isOk());
+        String stored = userRepo.findOneByUsername("legacy-hash").get().getPassword();
+        assertTrue(stored.startsWith("{pbkdf2}1000$"), stored);
+
+        mockMvc.perform(post("/auth/authenticate").contentType(MediaType.APPLICATION_JSON).content(LOGIN))
+                .andExpect(status().isOk());
+    }
+}
@@ -0,0 +1,124 @@
+package com.julenka.api.primitiveBank.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VirtualThreadsConfigTest {
+
+    @Test
+    @DisplayName("Virtual threads need Java 21")
+    void virtualThreadsNeedJava21() throws Exception {
+        if (Runtime.version().feature() < 21) {
+            assertThrows(IllegalStateException.class, VirtualThreadsConfig::newVirtualThreadExecutor);
+            return;
+        }
+        ExecutorService executor = VirtualThreadsConfig.newVirtualThreadExecutor();
+        try {
+            assertEquals(Boolean.TRUE, executor.submit(() -> Thread.class.getMethod("isVirtual").invoke(Thread.currentThread())).get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Limit is derived from the connection pool")
+    void limitFromConnectionPool() {
+        ExecutionProperties properties = new ExecutionProperties();
+        try (HikariDataSource dataSource = new HikariDataSource()) {
+            dataSource.setMaximumPoolSize(7);
+            assertEquals(14, VirtualThreadsConfig.maxConcurrentRequests(properties, dataSource));
+            properties.setMaxConcurrentRequests(5);
+            assertEquals(5, VirtualThreadsConfig.maxConcurrentRequests(properties, dataSource));
+        }
+    }
+
+    @Test
+    @DisplayName("Request over the limit gets 503")
+    void requestOverLimitIsRejected() throws Exception {
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(1, Duration.ofMillis(50), new SimpleMeterRegistry());
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        HttpServlet slow = new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            MockHttpServletResponse first = new MockHttpServletResponse();
+            Future<?> served = pool.submit(() -> {
+                filter.doFilter(new MockHttpServletRequest(), first, new MockFilterChain(slow));
+                return null;
+            });
+            assertTrue(entered.await(10, TimeUnit.SECONDS));
+
+            MockHttpServletResponse second = new MockHttpServletResponse();
+            filter.doFilter(new MockHttpServletRequest(), second, new MockFilterChain());
+            assertEquals(503, second.getStatus());
+            assertEquals("1", second.getHeader("Retry-After"));
+
+            release.countDown();
+            served.get(10, TimeUnit.SECONDS);
+            assertEquals(200, first.getStatus());
+            MockHttpServletResponse third = new MockHttpServletResponse();
+            filter.doFilter(new MockHttpServletRequest(), third, new MockFilterChain());
+            assertEquals(200, third.getStatus());
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Async request holds its permit until it completes")
+    void asyncRequestHoldsPermit() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(1, Duration.ofMillis(50), registry);
+        HttpServlet async = new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) {
+                req.startAsync();
+            }
+        };
+        MockHttpServletRequest first = new MockHttpServletRequest();
+        first.setAsyncSupported(true);
+        filter.doFilter(first, new MockHttpServletResponse(), new MockFilterChain(async));
+        assertTrue(first.isAsyncStarted());
+
+        MockHttpServletResponse second = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest(), second, new MockFilterChain());
+        assertEquals(503, second.getStatus());
+
+        first.getAsyncContext().complete();
+        assertEquals(0, registry.get("http.requests.active").gauge().value());
+        MockHttpServletResponse third = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest(), third, new MockFilterChain());
+        assertEquals(200, third.getStatus());
+        assertEquals(0, registry.get("http.requests.active").gauge().value());
+    }
+}
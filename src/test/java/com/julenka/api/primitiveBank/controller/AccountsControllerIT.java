@@ -6,6 +6,8 @@ import com.julenka.api.primitiveBank.domain.Account;
 import com.julenka.api.primitiveBank.domain.Roles;
 import com.julenka.api.primitiveBank.domain.User;
 import com.julenka.api.primitiveBank.domain.UserInfo;
+import com.julenka.api.primitiveBank.dto.AccountDTO;
+import com.julenka.api.primitiveBank.dto.AccountPageDTO;
 import com.julenka.api.primitiveBank.dto.AuthResponseDTO;
 import com.julenka.api.primitiveBank.dto.FundDepositDTO;
 import com.julenka.api.primitiveBank.repositories.AccountRepo;
@@ -27,12 +29,20 @@ import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.transaction.Transactional;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -154,5 +164,106 @@ class AccountsControllerIT {
 
     }
 
+    @Test
+    @SneakyThrows
+    @DisplayName("Retried fund with the same Idempotency-Key is applied once")
+    public void fundWithIdempotencyKey() {
+        FundDepositDTO dto = new FundDepositDTO();
+        template.executeWithoutResult(tr -> {
+            Long userId = createAndSafeSimpleUser("test", "test1", "First", "Last");
+            Account acc = new Account();
+            acc.setBalance(BigDecimal.ZERO);
+            acc.setUser(userRepo.getById(userId));
+            dto.setToId(accounts.saveAndFlush(acc).getId());
+            dto.setAmount(new BigDecimal(100));
+        });
+        final String token = login(ResourceConverter.getString(new ClassPathResource("test.requests/auth.json"))).getJwtToken();
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(post("/accounts/fund")
+                    .header("Authorization", "Bearer " + token)
+                    .header("Idempotency-Key", "fund-once")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(new ObjectMapper().writeValueAsString(dto)))
+                    .andExpect(status().isOk())
+                    .andExpect(content().string(dto.getToId().toString()));
+        }
+        template.executeWithoutResult(tr ->
+                assertEquals(0, accounts.findById(dto.getToId()).get().getBalance().compareTo(new BigDecimal(100))));
+    }
+
+    private List<Long> saveAccounts(int count) {
+        List<Long> ids = new ArrayList<>();
+        template.executeWithoutResult(tr -> {
+            Long userId = createAndSafeSimpleUser("test", "test1", "First", "Last");
+            for (int i = 0; i < count; i++) {
+                Account acc = new Account();
+                acc.setBalance(new BigDecimal(i));
+                acc.setUser(userRepo.getById(userId));
+                ids.add(accounts.saveAndFlush(acc).getId());
+            }
+            createAndSafeSimpleUser("other", "other1", "Other", "User");
+            Account foreign = new Account();
+            foreign.setUser(userRepo.findOneByUsername("other").get());
+            accounts.saveAndFlush(foreign);
+        });
+        return ids;
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Accounts are listed page by page")
+    public void listAccountsByPages() {
+        List<Long> ids = saveAccounts(5);
+        final String token = login(ResourceConverter.getString(new ClassPathResource("test.requests/auth.json"))).getJwtToken();
+        ObjectMapper mapper = new ObjectMapper();
+        List<AccountDTO> listed = new ArrayList<>();
+        List<Long> cursors = new ArrayList<>();
+        Long cursor = null;
+        do {
+            MvcResult page = mockMvc.perform(get("/accounts")
+                    .header("Authorization", "Bearer " + token)
+                    .param("limit", "2")
+                    .param("after", cursor == null ? "" : cursor.toString()))
+                    .andExpect(status().isOk())
+                    .andReturn();
+            AccountPageDTO dto = mapper.readValue(page.getResponse().getContentAsString(), AccountPageDTO.class);
+            listed.addAll(dto.getAccounts());
+            cursor = dto.getNextCursor();
+            cursors.add(cursor);
+        } while (cursor != null);
+        assertEquals(ids, listed.stream().map(AccountDTO::getId).collect(Collectors.toList()));
+        assertEquals(Arrays.asList(ids.get(1), ids.get(3), null), cursors);
+        assertEquals(0, listed.get(4).getBalance().compareTo(new BigDecimal(4)));
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Page size over the limit")
+    public void listAccountsWithTooBigPage() {
+        saveAccounts(1);
+        final String token = login(ResourceConverter.getString(new ClassPathResource("test.requests/auth.json"))).getJwtToken();
+        mockMvc.perform(get("/accounts")
+                .header("Authorization", "Bearer " + token)
+                .param("limit", "101"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("All accounts are streamed as one array")
+    public void streamAccounts() {
+        List<Long> ids = saveAccounts(3);
+        final String token = login(ResourceConverter.getString(new ClassPathResource("test.requests/auth.json"))).getJwtToken();
+        MvcResult started = mockMvc.perform(get("/accounts/stream")
+                .header("Authorization", "Bearer " + token))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult streamed = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn();
+        AccountDTO[] listed = new ObjectMapper().readValue(streamed.getResponse().getContentAsString(), AccountDTO[].class);
+        assertEquals(ids, Arrays.stream(listed).map(AccountDTO::getId).collect(Collectors.toList()));
+        assertEquals(0, listed[2].getBalance().compareTo(new BigDecimal(2)));
+    }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,173 @@
+package com.julenka.api.primitiveBank.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.julenka.api.primitiveBank.config.JwtTokenUtils;
+import com.julenka.api.primitiveBank.domain.Roles;
+import com.julenka.api.primitiveBank.domain.User;
+import com.julenka.api.primitiveBank.dto.AuthResponseDTO;
+import com.julenka.api.primitiveBank.repositories.RevokedTokenRepo;
+import com.julenka.api.primitiveBank.repositories.UserRepo;
+import com.julenka.api.primitiveBank.services.TokenService;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.security.KeyPairGenerator;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class AuthControllerIT {
+
+    private static final String USERNAME = "token-user";
+    private static final String PASSWORD = "token-password";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepo userRepo;
+
+    @Autowired
+    private PasswordEncoder encoder;
+
+    @Autowired
+    private JwtTokenUtils jwtTokenUtils;
+
+    @Autowired
+    private TokenService tokenService;
+
+    @Autowired
+    private RevokedTokenRepo revokedTokenRepo;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    void saveUser() {
+        deleteUser();
+        User user = new User();
+        user.setUsername(USERNAME);
+        user.setPassword(encoder.encode(PASSWORD));
+        user.setAuthorities(Set.of(Roles.USER));
+        userRepo.saveAndFlush(user);
+    }
+
+    @AfterEach
+    void deleteUser() {
+        userRepo.findOneByUsername(USERNAME).ifPresent(userRepo::delete);
+    }
+
+    @SneakyThrows
+    private AuthResponseDTO read(ResultActions result) {
+        return objectMapper.readValue(result.andExpect(status().isOk()).andReturn().getResponse().getContentAsString(),
+                AuthResponseDTO.class);
+    }
+
+    @SneakyThrows
+    private AuthResponseDTO login() {
+        return read(mockMvc.perform(post("/auth/authenticate").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"username\":\"" + USERNAME + "\",\"password\":\"" + PASSWORD + "\"}")));
+    }
+
+    @SneakyThrows
+    private ResultActions refresh(String refreshToken) {
+        return mockMvc.perform(post("/auth/refresh").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"refreshToken\":\"" + refreshToken + "\"}"));
+    }
+
+    @SneakyThrows
+    private ResultActions accounts(String token) {
+        return mockMvc.perform(get("/accounts").header("Authorization", "Bearer " + token));
+    }
+
+    @Test
+    @DisplayName("Refresh token gives a new pair once and isn't accepted as an access token")
+    void refreshTokenIsSingleUse() throws Exception {
+        AuthResponseDTO first = login();
+        assertEquals(15 * 60, first.getExpiresIn());
+        accounts(first.getJwtToken()).andExpect(status().isOk());
+        accounts(first.getRefreshToken()).andExpect(status().isUnauthorized());
+
+        AuthResponseDTO second = read(refresh(first.getRefreshToken()));
+        assertNotEquals(first.getRefreshToken(), second.getRefreshToken());
+        accounts(second.getJwtToken()).andExpect(status().isOk());
+
+        refresh(first.getRefreshToken()).andExpect(status().isUnauthorized());
+        refresh(second.getJwtToken()).andExpect(status().isUnauthorized());
+        refresh("not-a-token").andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    @DisplayName("Logout revokes both tokens of the session")
+    void logoutRevokesTokens() throws Exception {
+        AuthResponseDTO session = login();
+        mockMvc.perform(post("/auth/logout").header("Authorization", "Bearer " + session.getJwtToken())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"refreshToken\":\"" + session.getRefreshToken() + "\"}"))
+                .andExpect(status().isOk());
+
+        accounts(session.getJwtToken()).andExpect(status().isUnauthorized());
+        refresh(session.getRefreshToken()).andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    @DisplayName("Access tokens revoked by another instance are picked up from the database")
+    void revocationsAreSynced() {
+        Claims claims = jwtTokenUtils.parseClaims(login().getJwtToken());
+        assertFalse(tokenService.isRevoked(claims));
+
+        revokedTokenRepo.revoke(claims.getId(), JwtTokenUtils.ACCESS, claims.getExpiration().toInstant());
+        tokenService.syncRevokedAccessTokens();
+        assertTrue(tokenService.isRevoked(claims));
+    }
+
+    @Test
+    @DisplayName("Public keys are given without a token and name the key of issued tokens")
+    void jwksIsPublic() throws Exception {
+        String header = new String(Base64.getUrlDecoder().decode(login().getJwtToken().split("\\.")[0]));
+        String kid = objectMapper.readTree(header).get("kid").asText();
+        mockMvc.perform(get("/auth/jwks"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.keys[0].kid").value(kid))
+                .andExpect(jsonPath("$.keys[0].kty").value("EC"))
+                .andExpect(jsonPath("$.keys[0].alg").value("ES256"));
+    }
+
+    @Test
+    @DisplayName("A token signed by an unknown key leaves the request unauthenticated instead of failing it")
+    void unknownKeyId() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(256);
+        String foreign = Jwts.builder().setSubject(USERNAME).setExpiration(new Date(System.currentTimeMillis() + 60_000))
+                .setHeaderParam(JwsHeader.KEY_ID, "retired").signWith(SignatureAlgorithm.ES256, generator.generateKeyPair().getPrivate())
+                .compact();
+        accounts(foreign).andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/auth/jwks").header("Authorization", "Bearer " + foreign)).andExpect(status().isOk());
+        accounts(foreign.substring(0, foreign.length() - 4) + "AAAA").andExpect(status().isUnauthorized());
+        accounts("not.a.token").andExpect(status().isUnauthorized());
+    }
+}
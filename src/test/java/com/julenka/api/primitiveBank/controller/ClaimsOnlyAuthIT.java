@@ -0,0 +1,132 @@
+package com.julenka.api.primitiveBank.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.julenka.api.primitiveBank.config.JwtTokenUtils;
+import com.julenka.api.primitiveBank.domain.Roles;
+import com.julenka.api.primitiveBank.domain.User;
+import com.julenka.api.primitiveBank.dto.AuthResponseDTO;
+import com.julenka.api.primitiveBank.repositories.UserRepo;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.springframework.security.core.userdetails.User.withUsername;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "bank.auth.claims-only=true")
+@AutoConfigureMockMvc
+class ClaimsOnlyAuthIT {
+
+    private static final String USERNAME = "claims-user";
+    private static final String PASSWORD = "claims-password";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepo userRepo;
+
+    @Autowired
+    private PasswordEncoder encoder;
+
+    @Autowired
+    private JwtTokenUtils jwtTokenUtils;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    void saveUser() {
+        deleteUser();
+        User user = new User();
+        user.setUsername(USERNAME);
+        user.setPassword(encoder.encode(PASSWORD));
+        user.setAuthorities(Set.of(Roles.USER));
+        userRepo.saveAndFlush(user);
+    }
+
+    @AfterEach
+    void deleteUser() {
+        userRepo.findOneByUsername(USERNAME).ifPresent(userRepo::delete);
+    }
+
+    @SneakyThrows
+    private AuthResponseDTO read(ResultActions result) {
+        return objectMapper.readValue(result.andExpect(status().isOk()).andReturn().getResponse().getContentAsString(),
+                AuthResponseDTO.class);
+    }
+
+    @SneakyThrows
+    private AuthResponseDTO login() {
+        return read(mockMvc.perform(post("/auth/authenticate").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"username\":\"" + USERNAME + "\",\"password\":\"" + PASSWORD + "\"}")));
+    }
+
+    @SneakyThrows
+    private ResultActions accounts(String token) {
+        return mockMvc.perform(get("/accounts").header("Authorization", "Bearer " + token));
+    }
+
+    @Test
+    @DisplayName("The user is built from the claims of the token")
+    void principalFromClaims() {
+        User saved = userRepo.findOneByUsername(USERNAME).get();
+        User principal = JwtTokenUtils.principal(jwtTokenUtils.parseClaims(login().getJwtToken()));
+        assertEquals(saved.getId(), principal.getId());
+        assertEquals(USERNAME, principal.getUsername());
+        assertEquals(List.of(Roles.USER), principal.getAuthorities());
+        assertEquals(0, principal.getTokenVersion());
+    }
+
+    @Test
+    @DisplayName("A role change makes the tokens with the old roles invalid, a refreshed one carries the new roles")
+    void roleChange() throws Exception {
+        AuthResponseDTO session = login();
+        accounts(session.getJwtToken()).andExpect(status().isOk());
+
+        Long id = userRepo.findOneByUsername(USERNAME).get().getId();
+        mockMvc.perform(post("/users/changeRoles/" + id).with(user("admin").authorities(Roles.ADMIN))
+                .contentType(MediaType.APPLICATION_JSON).content("[\"USER\",\"ADMIN\"]"))
+                .andExpect(status().isOk());
+        accounts(session.getJwtToken()).andExpect(status().isUnauthorized());
+
+        AuthResponseDTO refreshed = read(mockMvc.perform(post("/auth/refresh").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"refreshToken\":\"" + session.getRefreshToken() + "\"}")));
+        accounts(refreshed.getJwtToken()).andExpect(status().isOk());
+        assertEquals(Set.of(Roles.USER, Roles.ADMIN),
+                Set.copyOf(JwtTokenUtils.principal(jwtTokenUtils.parseClaims(refreshed.getJwtToken())).getAuthorities()));
+    }
+
+    @Test
+    @DisplayName("Tokens of a deleted user aren't accepted")
+    void deletedUser() throws Exception {
+        String token = login().getJwtToken();
+        mockMvc.perform(delete("/users/delete").header("Authorization", "Bearer " + token)).andExpect(status().isOk());
+        accounts(token).andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    @DisplayName("Tokens issued without the claims still work, the user is loaded")
+    void tokensWithoutClaims() throws Exception {
+        String token = jwtTokenUtils.generateToken(withUsername(USERNAME).password(PASSWORD).authorities(Roles.USER).build());
+        assertNull(JwtTokenUtils.principal(jwtTokenUtils.parseClaims(token)));
+        accounts(token).andExpect(status().isOk());
+    }
+}
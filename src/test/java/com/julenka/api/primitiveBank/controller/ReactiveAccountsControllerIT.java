@@ -0,0 +1,269 @@
+package com.julenka.api.primitiveBank.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.julenka.api.primitiveBank.domain.Account;
+import com.julenka.api.primitiveBank.domain.LedgerEntryType;
+import com.julenka.api.primitiveBank.domain.Roles;
+import com.julenka.api.primitiveBank.domain.User;
+import com.julenka.api.primitiveBank.dto.FundDepositDTO;
+import com.julenka.api.primitiveBank.dto.MoneyTransferDTO;
+import com.julenka.api.primitiveBank.repositories.AccountRepo;
+import com.julenka.api.primitiveBank.repositories.UserRepo;
+import com.julenka.api.primitiveBank.services.HistoryOutboxWorker;
+import com.julenka.api.primitiveBank.services.LedgerService;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import javax.transaction.Transactional;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("reactive")
+class ReactiveAccountsControllerIT {
+
+    private static PostgreSQLContainer<?> postgres;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepo userRepo;
+
+    @Autowired
+    private AccountRepo accountRepo;
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private HistoryOutboxWorker outboxWorker;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private User from;
+    private User to;
+
+    // R2DBC can't be given the Testcontainers JDBC url of the test resources
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        if (System.getProperty("spring.datasource.url", "").startsWith("jdbc:postgresql:")) {
+            return;
+        }
+        postgres = new PostgreSQLContainer<>("postgres:10.17");
+        postgres.start();
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @AfterAll
+    static void stopPostgres() {
+        if (postgres != null) {
+            postgres.stop();
+        }
+    }
+
+    private User saveUser(String username) {
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword(username + "1");
+        user.setAuthorities(List.of(Roles.USER));
+        return userRepo.saveAndFlush(user);
+    }
+
+    private Long saveAccount(User user, BigDecimal balance) {
+        Account acc = new Account();
+        acc.setBalance(balance);
+        acc.setUser(user);
+        return accountRepo.saveAndFlush(acc).getId();
+    }
+
+    private BigDecimal balanceOf(Long accId) {
+        return ledgerService.balanceOf(accountRepo.findById(accId).get());
+    }
+
+    @SneakyThrows
+    private ResultActions perform(UserDetails principal, String path, Object body) {
+        MockHttpServletRequestBuilder request = post("/reactive/accounts" + path).with(user(principal));
+        if (body != null) {
+            request.contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(body));
+        }
+        MvcResult started = mockMvc.perform(request).andExpect(request().asyncStarted()).andReturn();
+        return mockMvc.perform(asyncDispatch(started));
+    }
+
+    private MoneyTransferDTO transfer(Long fromId, Long toId, BigDecimal amount) {
+        MoneyTransferDTO dto = new MoneyTransferDTO();
+        dto.setFromId(fromId);
+        dto.setToId(toId);
+        dto.setAmount(amount);
+        return dto;
+    }
+
+    @BeforeEach
+    void saveUsers() {
+        userRepo.deleteAll();
+        from = saveUser("From");
+        to = saveUser("To");
+    }
+
+    @AfterEach
+    @Transactional
+    void deleteAllUsers() {
+        userRepo.deleteAll();
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Account is created, funded and pays")
+    void createFundTransfer() {
+        Long toAccId = saveAccount(to, BigDecimal.ZERO);
+        Long fromAccId = Long.valueOf(perform(from, "/create", null).andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+        assertEquals(from.getId(), accountRepo.findById(fromAccId).get().getUser().getId());
+
+        FundDepositDTO deposit = new FundDepositDTO();
+        deposit.setAmount(new BigDecimal(20));
+        perform(from, "/fund", deposit).andExpect(status().isOk());
+        perform(from, "/transfer", transfer(null, toAccId, new BigDecimal(15))).andExpect(status().isOk());
+
+        assertEquals(0, balanceOf(fromAccId).compareTo(new BigDecimal(5)));
+        assertEquals(0, balanceOf(toAccId).compareTo(new BigDecimal(15)));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM account_history WHERE account_id = ?", Long.class, fromAccId));
+        outboxWorker.drain();
+        assertEquals(List.of(LedgerEntryType.DEPOSIT.name(), LedgerEntryType.TRANSFER_OUT.name()), jdbcTemplate.queryForList(
+                "SELECT type FROM account_history WHERE account_id = ? ORDER BY id", String.class, fromAccId));
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Transfer without enough money changes nothing")
+    void notEnoughMoney() {
+        Long fromAccId = saveAccount(from, new BigDecimal(10));
+        Long toAccId = saveAccount(to, BigDecimal.ZERO);
+        perform(from, "/transfer", transfer(fromAccId, toAccId, new BigDecimal(11))).andExpect(status().isBadRequest());
+        assertEquals(0, balanceOf(fromAccId).compareTo(new BigDecimal(10)));
+        assertEquals(0, balanceOf(toAccId).compareTo(BigDecimal.ZERO));
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Debits still in the unapplied journal tail count, the money can't be spent twice")
+    void unappliedTailCounts() {
+        Long fromAccId = saveAccount(from, new BigDecimal(10));
+        Long toAccId = saveAccount(to, BigDecimal.ZERO);
+        // a transfer of the journal mode that isn't compacted yet
+        jdbcTemplate.update("INSERT INTO ledger_entries (id, account_id, amount, type, created_at, applied) " +
+                "VALUES (nextval('ledger_entries_id_seq'), ?, -6, 'TRANSFER_OUT', now(), false)", fromAccId);
+
+        perform(from, "/transfer", transfer(fromAccId, toAccId, new BigDecimal(5))).andExpect(status().isBadRequest());
+        perform(from, "/transfer", transfer(fromAccId, toAccId, new BigDecimal(4))).andExpect(status().isOk());
+        assertEquals(0, balanceOf(fromAccId).compareTo(BigDecimal.ZERO));
+        assertEquals(0, balanceOf(toAccId).compareTo(new BigDecimal(4)));
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Journal debit committed while the transfer waits for the sender is counted")
+    void journalDebitDuringTransfer() {
+        Long fromAccId = saveAccount(from, new BigDecimal(10));
+        Long toAccId = saveAccount(to, BigDecimal.ZERO);
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // a transfer of the journal mode holds the sender while it appends the debit
+        CompletableFuture<Void> journal = CompletableFuture.runAsync(() -> transactionTemplate.executeWithoutResult(status -> {
+            accountRepo.fetchAccountWithLockById(fromAccId);
+            jdbcTemplate.update("INSERT INTO ledger_entries (id, account_id, amount, type, created_at, applied) " +
+                    "VALUES (nextval('ledger_entries_id_seq'), ?, -6, 'TRANSFER_OUT', now(), false)", fromAccId);
+            held.countDown();
+            try {
+                release.await(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        try {
+            assertTrue(held.await(10, TimeUnit.SECONDS));
+            CompletableFuture<ResultActions> transfer = CompletableFuture.supplyAsync(
+                    () -> perform(from, "/transfer", transfer(fromAccId, toAccId, new BigDecimal(5))));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (jdbcTemplate.queryForObject("SELECT count(*) FROM pg_stat_activity WHERE wait_event_type = 'Lock'", Long.class) == 0
+                    && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+            journal.get(10, TimeUnit.SECONDS);
+            transfer.get(10, TimeUnit.SECONDS).andExpect(status().isBadRequest());
+        } finally {
+            release.countDown();
+        }
+        assertEquals(0, balanceOf(fromAccId).compareTo(new BigDecimal(4)));
+        assertEquals(0, balanceOf(toAccId).compareTo(BigDecimal.ZERO));
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Money of another user can't be moved")
+    void foreignAccount() {
+        Long fromAccId = saveAccount(from, new BigDecimal(10));
+        Long toAccId = saveAccount(to, BigDecimal.ZERO);
+        perform(to, "/transfer", transfer(fromAccId, toAccId, BigDecimal.ONE)).andExpect(status().isBadRequest());
+        FundDepositDTO deposit = new FundDepositDTO();
+        deposit.setToId(fromAccId);
+        deposit.setAmount(BigDecimal.ONE);
+        perform(to, "/fund", deposit).andExpect(status().isBadRequest());
+        assertEquals(0, balanceOf(fromAccId).compareTo(new BigDecimal(10)));
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Negative amount is rejected before the database")
+    void negativeAmount() {
+        Long fromAccId = saveAccount(from, new BigDecimal(10));
+        Long toAccId = saveAccount(to, BigDecimal.ZERO);
+        mockMvc.perform(post("/reactive/accounts/transfer").with(user(from))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(transfer(fromAccId, toAccId, new BigDecimal(-1)))))
+                .andExpect(status().isBadRequest());
+        assertEquals(0, balanceOf(fromAccId).compareTo(new BigDecimal(10)));
+    }
+}
@@ -0,0 +1,68 @@
+package com.julenka.api.primitiveBank.loadtest;
+
+import lombok.Value;
+
+import java.time.Duration;
+
+/**
+ * Параметры нагрузочного теста, задаются системными свойствами loadtest.*
+ */
+@Value
+class LoadTestSettings {
+
+    /**
+     * number of users, each gets one account
+     */
+    int users;
+
+    /**
+     * number of threads sending requests
+     */
+    int threads;
+
+    Duration duration;
+
+    /**
+     * share of transfers, deposits and user lookups among the requests, the weights needn't sum up to 100
+     */
+    int transferWeight;
+    int fundWeight;
+    int getUserWeight;
+
+    /**
+     * number of accounts that are the payee of a transfer with probability hotShare
+     */
+    int hotAccounts;
+    double hotShare;
+
+    long initialBalance;
+
+    /**
+     * the application serves requests on virtual threads, compare with false under the same hot accounts
+     */
+    boolean virtualThreads;
+
+    /**
+     * blocking sends transfers and deposits to /accounts, reactive to /reactive/accounts
+     */
+    String stack;
+
+    String accountsPath() {
+        return "reactive".equals(stack) ? "/reactive/accounts" : "/accounts";
+    }
+
+    static LoadTestSettings fromSystemProperties() {
+        return new LoadTestSettings(
+                Integer.getInteger("loadtest.users", 50),
+                Integer.getInteger("loadtest.threads", 16),
+                Duration.ofSeconds(Long.getLong("loadtest.duration-seconds", 30)),
+                Integer.getInteger("loadtest.transfer-weight", 70),
+                Integer.getInteger("loadtest.fund-weight", 20),
+                Integer.getInteger("loadtest.get-user-weight", 10),
+                Integer.getInteger("loadtest.hot-accounts", 2),
+                Double.parseDouble(System.getProperty("loadtest.hot-share", "0.5")),
+                Long.getLong("loadtest.initial-balance", 1_000),
+                Boolean.getBoolean("loadtest.virtual-threads"),
+                System.getProperty("loadtest.stack", "blocking"));
+    }
+}
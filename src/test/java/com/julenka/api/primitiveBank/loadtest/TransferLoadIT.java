@@ -0,0 +1,250 @@
+package com.julenka.api.primitiveBank.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.julenka.api.primitiveBank.dto.AuthRequestDTO;
+import com.julenka.api.primitiveBank.dto.AuthResponseDTO;
+import com.julenka.api.primitiveBank.dto.CreateUserDTO;
+import com.julenka.api.primitiveBank.dto.FundDepositDTO;
+import com.julenka.api.primitiveBank.dto.MoneyTransferDTO;
+import com.julenka.api.primitiveBank.dto.UserInfoDTO;
+import com.julenka.api.primitiveBank.repositories.AccountRepo;
+import com.julenka.api.primitiveBank.repositories.UserRepo;
+import com.julenka.api.primitiveBank.services.LedgerService;
+import lombok.SneakyThrows;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import javax.transaction.Transactional;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Нагрузочный тест: пользователи переводят деньги друг другу, пополняют счета и ищут друг друга по логину
+ * через http. Печатает перцентили задержек и пропускную способность, в конце проверяет,
+ * что денег в системе столько, сколько было положено.
+ * <p>
+ * Запуск: mvn test -Dtest=TransferLoadIT -Dloadtest=true, параметры см. в {@link LoadTestSettings}.
+ * База поднимается в Testcontainers, либо берётся из loadtest.datasource.url/username/password.
+ * Виртуальные потоки против пула Tomcat под блокировками на горячих счетах (нужна Java 21):
+ * -Dloadtest.virtual-threads=true|false -Dloadtest.threads=400 -Dloadtest.hot-accounts=2 -Dloadtest.hot-share=0.9
+ * Блокирующий и реактивный (R2DBC) переводы и пополнения на одних и тех же параметрах: -Dloadtest.stack=blocking|reactive
+ */
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("reactive")
+class TransferLoadIT {
+
+    private static PostgreSQLContainer<?> postgres;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private UserRepo userRepo;
+
+    @Autowired
+    private AccountRepo accountRepo;
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    private enum Operation {TRANSFER, FUND, GET_USER}
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("bank.server.virtual-threads", () -> System.getProperty("loadtest.virtual-threads", "false"));
+        if (System.getProperty("loadtest.datasource.url") != null) {
+            registry.add("spring.datasource.url", () -> System.getProperty("loadtest.datasource.url"));
+            registry.add("spring.datasource.username", () -> System.getProperty("loadtest.datasource.username"));
+            registry.add("spring.datasource.password", () -> System.getProperty("loadtest.datasource.password"));
+            return;
+        }
+        postgres = new PostgreSQLContainer<>("postgres:10.17");
+        postgres.start();
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @AfterAll
+    static void stopPostgres() {
+        if (postgres != null) {
+            postgres.stop();
+        }
+    }
+
+    @AfterEach
+    @Transactional
+    void deleteAllUsers() {
+        userRepo.deleteAll();
+    }
+
+    @SneakyThrows
+    private HttpResponse<String> send(String method, String path, String token, Object body) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Content-Type", "application/json")
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body)));
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> expectOk(HttpResponse<String> response) {
+        assertEquals(200, response.statusCode(), response::body);
+        return response;
+    }
+
+    @SneakyThrows
+    private String createUserAndLogin(String username) {
+        CreateUserDTO user = new CreateUserDTO();
+        user.setUsername(username);
+        user.setPassword(username + "1");
+        UserInfoDTO info = new UserInfoDTO();
+        info.setFirstName("Load");
+        info.setLastName(username);
+        user.setUserinfo(info);
+        expectOk(send("POST", "/users/create", null, user));
+        AuthRequestDTO auth = new AuthRequestDTO();
+        auth.setUsername(username);
+        auth.setPassword(username + "1");
+        return objectMapper.readValue(expectOk(send("POST", "/auth/authenticate", null, auth)).body(),
+                AuthResponseDTO.class).getJwtToken();
+    }
+
+    private FundDepositDTO deposit(Long toId, BigDecimal amount) {
+        FundDepositDTO dto = new FundDepositDTO();
+        dto.setToId(toId);
+        dto.setAmount(amount);
+        return dto;
+    }
+
+    @Test
+    @DisplayName("Transfers, deposits and lookups under load keep the money")
+    void transfersUnderLoad() throws InterruptedException, ExecutionException {
+        LoadTestSettings settings = LoadTestSettings.fromSystemProperties();
+        List<String> usernames = new ArrayList<>();
+        List<String> tokens = new ArrayList<>();
+        List<Long> accounts = new ArrayList<>();
+        BigDecimal initialBalance = BigDecimal.valueOf(settings.getInitialBalance());
+        for (int i = 0; i < settings.getUsers(); i++) {
+            String username = "load" + i;
+            String token = createUserAndLogin(username);
+            Long accountId = Long.valueOf(expectOk(send("POST", "/accounts/create", token, null)).body());
+            expectOk(send("POST", "/accounts/fund", token, deposit(accountId, initialBalance)));
+            usernames.add(username);
+            tokens.add(token);
+            accounts.add(accountId);
+        }
+
+        Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(1), 3));
+        }
+        Map<String, LongAdder> statuses = new ConcurrentHashMap<>();
+        LongAdder funded = new LongAdder();
+        int totalWeight = settings.getTransferWeight() + settings.getFundWeight() + settings.getGetUserWeight();
+
+        ExecutorService pool = Executors.newFixedThreadPool(settings.getThreads());
+        long started = System.nanoTime();
+        long deadline = started + settings.getDuration().toNanos();
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < settings.getThreads(); t++) {
+            workers.add(pool.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    int user = random.nextInt(settings.getUsers());
+                    int pick = random.nextInt(totalWeight);
+                    Operation operation = pick < settings.getTransferWeight() ? Operation.TRANSFER
+                            : pick < settings.getTransferWeight() + settings.getFundWeight() ? Operation.FUND
+                            : Operation.GET_USER;
+                    long sent = System.nanoTime();
+                    HttpResponse<String> response;
+                    switch (operation) {
+                        case TRANSFER:
+                            int payee = random.nextDouble() < settings.getHotShare()
+                                    ? random.nextInt(Math.min(settings.getHotAccounts(), settings.getUsers()))
+                                    : random.nextInt(settings.getUsers());
+                            MoneyTransferDTO transfer = new MoneyTransferDTO();
+                            transfer.setFromId(accounts.get(user));
+                            transfer.setToId(accounts.get(payee));
+                            transfer.setAmount(BigDecimal.ONE);
+                            response = send("POST", settings.accountsPath() + "/transfer", tokens.get(user), transfer);
+                            break;
+                        case FUND:
+                            response = send("POST", settings.accountsPath() + "/fund", tokens.get(user), deposit(accounts.get(user), BigDecimal.ONE));
+                            if (response.statusCode() == 200) {
+                                funded.increment();
+                            }
+                            break;
+                        default:
+                            response = send("GET", "/users/get/" + usernames.get(random.nextInt(settings.getUsers())),
+                                    tokens.get(user), null);
+                    }
+                    latencies.get(operation).recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sent));
+                    statuses.computeIfAbsent(operation + " " + response.statusCode(), k -> new LongAdder()).increment();
+                }
+            }));
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(settings.getDuration().toSeconds() + 60, TimeUnit.SECONDS));
+        // a worker that died on an exception fails the run instead of just sending less
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        double elapsed = (System.nanoTime() - started) / 1_000_000_000.0;
+
+        System.out.printf("%s, ran %.1f s%n", settings, elapsed);
+        System.out.printf("%-10s %8s %10s %9s %9s %9s %9s %9s%n", "operation", "count", "ops/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        latencies.forEach((operation, histogram) -> System.out.printf("%-10s %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                operation, histogram.getTotalCount(), histogram.getTotalCount() / elapsed,
+                histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(90) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0));
+        statuses.forEach((status, count) -> System.out.printf("%s: %d%n", status, count.sum()));
+
+        assertTrue(statuses.keySet().stream().noneMatch(status -> status.endsWith(" 500")), statuses::toString);
+        BigDecimal expected = initialBalance.multiply(BigDecimal.valueOf(settings.getUsers()))
+                .add(BigDecimal.valueOf(funded.sum()));
+        BigDecimal actual = accountRepo.findAllById(accounts).stream()
+                .map(ledgerService::balanceOf)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertEquals(0, expected.compareTo(actual), () -> "Expected " + expected + " in total, found " + actual);
+    }
+}
@@ -0,0 +1,56 @@
+package com.julenka.api.primitiveBank.repositories;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The hot lookups by user must be served by an index. Sequential scans are switched off
+ * for the plan, so the planner falls back to one only when there is no usable index.
+ */
+@SpringBootTest
+class ForeignKeyIndexIT {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private String plan(String query) {
+        return transactionTemplate.execute(status -> {
+            jdbcTemplate.execute("SET LOCAL enable_seqscan = off");
+            List<String> lines = jdbcTemplate.queryForList("EXPLAIN " + query, String.class);
+            return String.join("\n", lines);
+        });
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "SELECT * FROM accounts WHERE user_id = 1",
+            "SELECT id FROM accounts WHERE user_id = 1 ORDER BY id",
+            "SELECT authorities FROM user_authorities WHERE user_id = 1",
+            "DELETE FROM user_authorities WHERE user_id = 1"})
+    @DisplayName("Lookups by user use an index")
+    void lookupByUserUsesIndex(String query) {
+        String plan = plan(query);
+        assertFalse(plan.contains("Seq Scan"), () -> "Sequential scan in the plan:\n" + plan);
+        assertTrue(plan.contains("Index"), () -> "No index in the plan:\n" + plan);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"accounts_user_id_idx", "user_authorities_pkey"})
+    @DisplayName("Indexes exist")
+    void indexExists(String name) {
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM pg_indexes WHERE indexname = ?", Integer.class, name));
+    }
+}
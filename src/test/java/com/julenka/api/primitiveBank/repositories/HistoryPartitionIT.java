@@ -0,0 +1,84 @@
+package com.julenka.api.primitiveBank.repositories;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class HistoryPartitionIT {
+
+    @Autowired
+    private HistoryRepo historyRepo;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    @DisplayName("Statement page reads one partition by its index")
+    void pageReadsOnePartition() {
+        YearMonth month = YearMonth.now(ZoneOffset.UTC);
+        String plan = String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + HistoryPartitionRepoImpl.pageQuery(month),
+                String.class, 1L, month.plusMonths(1).atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC), Long.MAX_VALUE, 20));
+        String partition = HistoryPartitionRepoImpl.partitionOf(month);
+        assertTrue(plan.contains(partition + "_statement_idx"), () -> "No statement index in the plan:\n" + plan);
+        assertEquals(plan.split("account_history_y", -1).length - 1, plan.split(partition, -1).length - 1,
+                () -> "Other partitions in the plan:\n" + plan);
+    }
+
+    @Test
+    @DisplayName("Partition is created once")
+    void createPartitionTwice() {
+        YearMonth month = YearMonth.now(ZoneOffset.UTC).minusMonths(2);
+        historyRepo.createPartition(month);
+        historyRepo.createPartition(month);
+        List<YearMonth> months = historyRepo.findPartitionMonths();
+        assertEquals(1, months.stream().filter(month::equals).count());
+    }
+
+    @Test
+    @DisplayName("Partitions cover whole UTC months whatever the session time zone")
+    void partitionBoundsInUtc() {
+        jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+            con.setAutoCommit(false);
+            try (Statement statement = con.createStatement()) {
+                // months with a DST change: bounds taken in the session zone overlap the next month
+                // east of UTC and leave a gap before it west of UTC
+                statement.execute("SET LOCAL TIME ZONE 'Europe/Berlin'");
+                statement.execute("SELECT create_account_history_partition('2031-10-01')");
+                statement.execute("SELECT create_account_history_partition('2031-11-01')");
+                statement.execute("SET LOCAL TIME ZONE 'America/New_York'");
+                statement.execute("SELECT create_account_history_partition('2031-03-01')");
+                statement.execute("SELECT create_account_history_partition('2031-04-01')");
+                assertEquals("account_history_y2031m10", partitionOf(statement, "2031-10-31 23:30:00+00"));
+                assertEquals("account_history_y2031m11", partitionOf(statement, "2031-11-01 00:00:00+00"));
+                assertEquals("account_history_y2031m03", partitionOf(statement, "2031-03-31 23:30:00+00"));
+                assertEquals("account_history_y2031m04", partitionOf(statement, "2031-04-01 00:00:00+00"));
+            } finally {
+                // the partitions are dropped with the rest of the transaction
+                con.rollback();
+                con.setAutoCommit(true);
+            }
+            return null;
+        });
+    }
+
+    private static String partitionOf(Statement statement, String createdAt) throws SQLException {
+        try (ResultSet rs = statement.executeQuery("INSERT INTO account_history (id, account_id, amount, type, created_at) " +
+                "VALUES (0, 0, 1, 'DEPOSIT', '" + createdAt + "') RETURNING tableoid::regclass::text")) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.julenka.api.primitiveBank.services;
+
+import com.julenka.api.primitiveBank.domain.Account;
+import com.julenka.api.primitiveBank.domain.LedgerEntryType;
+import com.julenka.api.primitiveBank.domain.Roles;
+import com.julenka.api.primitiveBank.domain.User;
+import com.julenka.api.primitiveBank.dto.HistoryEntryDTO;
+import com.julenka.api.primitiveBank.dto.MoneyTransferDTO;
+import com.julenka.api.primitiveBank.exceptions.ForbiddenOperationException;
+import com.julenka.api.primitiveBank.exceptions.UncertainAccountException;
+import com.julenka.api.primitiveBank.repositories.AccountRepo;
+import com.julenka.api.primitiveBank.repositories.LedgerEntryRepo;
+import com.julenka.api.primitiveBank.repositories.UserRepo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.transaction.Transactional;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = "bank.accounts.transfer-mode=atomic")
+class AccountServiceAtomicTransferIT {
+
+    @Autowired
+    private UserRepo userRepo;
+
+    @Autowired
+    private AccountRepo accountRepo;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private HistoryService historyService;
+
+    @Autowired
+    private HistoryOutboxWorker outboxWorker;
+
+    @Autowired
+    private LedgerEntryRepo ledgerEntryRepo;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    private CurrentUserService currentUserService;
+
+    private Long fromAccId;
+    private Long toAccId;
+
+    private User saveUser(String username) {
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword(username + "1");
+        user.setAuthorities(List.of(Roles.USER));
+        return userRepo.saveAndFlush(user);
+    }
+
+    private Long saveAccount(User user, BigDecimal balance) {
+        Account acc = new Account();
+        acc.setBalance(balance);
+        acc.setUser(user);
+        return accountRepo.saveAndFlush(acc).getId();
+    }
+
+    private BigDecimal balanceOf(Long accId) {
+        return accountRepo.findById(accId).get().getBalance();
+    }
+
+    private MoneyTransferDTO transfer(Long fromId, Long toId, BigDecimal amount) {
+        MoneyTransferDTO dto = new MoneyTransferDTO();
+        dto.setFromId(fromId);
+        dto.setToId(toId);
+        dto.setAmount(amount);
+        return dto;
+    }
+
+    @BeforeEach
+    void saveUsers() {
+        userRepo.deleteAll();
+        fromAccId = saveAccount(saveUser("From"), new BigDecimal(20));
+        toAccId = saveAccount(saveUser("To"), new BigDecimal(5));
+        Mockito.when(currentUserService.getCurrentUser()).thenAnswer((i) -> userRepo.findOneByUsername("From").get());
+    }
+
+    @AfterEach
+    @Transactional
+    void deleteAllUsers() {
+        userRepo.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Money can be transferred if dto is valid")
+    void transferMoneyWithValidDTO() {
+        accountService.transferMoney(transfer(fromAccId, toAccId, new BigDecimal(10)));
+        assertEquals(0, balanceOf(fromAccId).compareTo(new BigDecimal(10)));
+        assertEquals(0, balanceOf(toAccId).compareTo(new BigDecimal(15)));
+    }
+
+    @Test
+    @DisplayName("Slots swept into the row while the transfer waits for it aren't counted twice")
+    void sweepDuringTransfer() throws Exception {
+        accountService.stripeAccount(fromAccId, 2);
+        jdbcTemplate.update("UPDATE accounts SET balance = 10 WHERE id = ?", fromAccId);
+        jdbcTemplate.update("UPDATE account_slots SET balance = 5 WHERE account_id = ?", fromAccId);
+        // a blocking debit of another instance sweeps the slots and spends 15 of the 20
+        CompletableFuture<Void> transfer = transferWhileLocked(() -> jdbcTemplate.update(
+                "UPDATE accounts SET balance = balance + ? - 15 WHERE id = ?", accountRepo.sweepSlots(fromAccId), fromAccId),
+                new BigDecimal(15));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> transfer.get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof ForbiddenOperationException, e.getCause().toString());
+        assertEquals(0, balanceOf(fromAccId).compareTo(new BigDecimal(5)));
+        assertEquals(0, accountRepo.sumSlots(fromAccId).compareTo(BigDecimal.ZERO));
+        assertEquals(0, balanceOf(toAccId).compareTo(new BigDecimal(5)));
+    }
+
+    @Test
+    @DisplayName("Journal tail compacted while the transfer waits for the sender isn't counted twice")
+    void compactionDuringTransfer() throws Exception {
+        jdbcTemplate.update("INSERT INTO ledger_entries (id, account_id, amount, type, created_at, applied) " +
+                "VALUES (nextval('ledger_entries_id_seq'), ?, -6, 'TRANSFER_OUT', now(), false)", fromAccId);
+        CompletableFuture<Void> transfer = transferWhileLocked(() -> ledgerEntryRepo.compact(fromAccId), new BigDecimal(10));
+        transfer.get(10, TimeUnit.SECONDS);
+        assertEquals(0, balanceOf(fromAccId).compareTo(new BigDecimal(4)));
+        assertEquals(0, balanceOf(toAccId).compareTo(new BigDecimal(15)));
+    }
+
+    /**
+     * Runs the holder in a transaction that keeps the sender locked
+     * until the transfer started meanwhile waits for the lock.
+     */
+    private CompletableFuture<Void> transferWhileLocked(Runnable holder, BigDecimal amount) throws Exception {
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> holding = CompletableFuture.runAsync(() -> transactionTemplate.executeWithoutResult(status -> {
+            accountRepo.fetchAccountWithLockById(fromAccId);
+            holder.run();
+            held.countDown();
+            try {
+                release.await(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        try {
+            assertTrue(held.await(10, TimeUnit.SECONDS));
+            CompletableFuture<Void> transfer = CompletableFuture.runAsync(
+                    () -> accountService.transferMoney(transfer(fromAccId, toAccId, amount)));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (jdbcTemplate.queryForObject("SELECT count(*) FROM pg_stat_activity WHERE wait_event_type = 'Lock'", Long.class) == 0
+                    && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+            holding.get(10, TimeUnit.SECONDS);
+            return transfer;
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    @DisplayName("Transfer goes through the outbox to the history of both accounts")
+    void transferIsInHistory() {
+        accountService.transferMoney(transfer(fromAccId, toAccId, new BigDecimal(10)));
+        outboxWorker.drain();
+        List<HistoryEntryDTO> sent = historyService.getHistory(fromAccId, null, 10).getEntries();
+        assertEquals(1, sent.size());
+        assertEquals(LedgerEntryType.TRANSFER_OUT, sent.get(0).getType());
+        assertEquals(0, sent.get(0).getAmount().compareTo(new BigDecimal(-10)));
+        assertEquals(toAccId, sent.get(0).getCounterpartyId());
+        Mockito.when(currentUserService.getCurrentUser()).thenAnswer((i) -> userRepo.findOneByUsername("To").get());
+        List<HistoryEntryDTO> received = historyService.getHistory(toAccId, null, 10).getEntries();
+        assertEquals(1, received.size());
+        assertEquals(LedgerEntryType.TRANSFER_IN, received.get(0).getType());
+        assertEquals(fromAccId, received.get(0).getCounterpartyId());
+    }
+
+    @Test
+    @DisplayName("Sender is not defined but current user has only 1 account")
+    void transferWithoutSender() {
+        accountService.transferMoney(transfer(null, toAccId, new BigDecimal(20)));
+        assertEquals(0, balanceOf(fromAccId).compareTo(BigDecimal.ZERO));
+        assertEquals(0, balanceOf(toAccId).compareTo(new BigDecimal(25)));
+    }
+
+    @Test
+    @DisplayName("Transfer to the same account doesn't change the balance")
+    void transferToSameAccount() {
+        accountService.transferMoney(transfer(fromAccId, fromAccId, new BigDecimal(20)));
+        assertEquals(0, balanceOf(fromAccId).compareTo(new BigDecimal(20)));
+    }
+
+    @Test
+    @DisplayName("Can't transfer more than user has")
+    void transferMoreMoneyThanUserHas() {
+        assertThrows(ForbiddenOperationException.class,
+                () -> accountService.transferMoney(transfer(fromAccId, toAccId, new BigDecimal(30))),
+                "Not enough money for this operation");
+        assertEquals(0, balanceOf(fromAccId).compareTo(new BigDecimal(20)));
+        assertEquals(0, balanceOf(toAccId).compareTo(new BigDecimal(5)));
+    }
+
+    @Test
+    @DisplayName("Can't transfer from an account of another user")
+    void transferFromForeignAccount() {
+        assertThrows(UncertainAccountException.class,
+                () -> accountService.transferMoney(transfer(toAccId, fromAccId, new BigDecimal(1))),
+                "Forbidden.User has not such an account");
+        assertEquals(0, balanceOf(fromAccId).compareTo(new BigDecimal(20)));
+        assertEquals(0, balanceOf(toAccId).compareTo(new BigDecimal(5)));
+    }
+
+    @Test
+    @DisplayName("Can't transfer to a nonexistent account")
+    void transferWithNonexistentPayee() {
+        assertThrows(UncertainAccountException.class,
+                () -> accountService.transferMoney(transfer(fromAccId, 4000L, new BigDecimal(10))),
+                "Such an account for transfer doesn't exist");
+        assertEquals(0, balanceOf(fromAccId).compareTo(new BigDecimal(20)));
+    }
+
+    @Test
+    @DisplayName("Can't transfer negative amount")
+    void transferNegativeAmount() {
+        assertThrows(ForbiddenOperationException.class,
+                () -> accountService.transferMoney(transfer(fromAccId, toAccId, new BigDecimal(-10))),
+                "You can't transfer negative amount");
+        assertEquals(0, balanceOf(fromAccId).compareTo(new BigDecimal(20)));
+        assertEquals(0, balanceOf(toAccId).compareTo(new BigDecimal(5)));
+    }
+
+}
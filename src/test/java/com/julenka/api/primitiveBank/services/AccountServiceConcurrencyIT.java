@@ -0,0 +1,151 @@
+package com.julenka.api.primitiveBank.services;
+
+import com.julenka.api.primitiveBank.domain.Account;
+import com.julenka.api.primitiveBank.domain.Roles;
+import com.julenka.api.primitiveBank.domain.User;
+import com.julenka.api.primitiveBank.dto.MoneyTransferDTO;
+import com.julenka.api.primitiveBank.dto.TransferResultDTO;
+import com.julenka.api.primitiveBank.repositories.AccountRepo;
+import com.julenka.api.primitiveBank.repositories.UserRepo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import javax.transaction.Transactional;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Stress test for the transfer engine: many threads move money between the same two
+ * accounts in opposite directions at once. Prints throughput to stdout.
+ * Also compares the batch transfer with the single-transfer loop.
+ */
+@SpringBootTest
+class AccountServiceConcurrencyIT {
+
+    private static final int THREADS = 64;
+    private static final int TRANSFERS_PER_THREAD = 50;
+    private static final int BATCH_SIZE = 1000;
+    private static final BigDecimal INITIAL_BALANCE = new BigDecimal(1_000_000);
+
+    @Autowired
+    private UserRepo userRepo;
+
+    @Autowired
+    private AccountRepo accountRepo;
+
+    @Autowired
+    private AccountService accountService;
+
+    @MockBean
+    private CurrentUserService currentUserService;
+
+    @AfterEach
+    @Transactional
+    void deleteAllUsers() {
+        userRepo.deleteAll();
+    }
+
+    private Long saveAccount(User user) {
+        Account acc = new Account();
+        acc.setBalance(INITIAL_BALANCE);
+        acc.setUser(user);
+        return accountRepo.saveAndFlush(acc).getId();
+    }
+
+    private User saveOwner() {
+        userRepo.deleteAll();
+        User owner = new User();
+        owner.setUsername("Owner");
+        owner.setPassword("Owner1");
+        owner.setAuthorities(List.of(Roles.USER));
+        userRepo.saveAndFlush(owner);
+        Mockito.when(currentUserService.getCurrentUser()).thenAnswer((i) -> userRepo.findOneByUsername("Owner").get());
+        return owner;
+    }
+
+    private MoneyTransferDTO transfer(Long fromId, Long toId) {
+        MoneyTransferDTO dto = new MoneyTransferDTO();
+        dto.setFromId(fromId);
+        dto.setToId(toId);
+        dto.setAmount(BigDecimal.ONE);
+        return dto;
+    }
+
+    @Test
+    @DisplayName("Opposite transfers between the same accounts don't deadlock")
+    void oppositeTransfersDontDeadlock() throws InterruptedException {
+        User owner = saveOwner();
+        Long first = saveAccount(owner);
+        Long second = saveAccount(owner);
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        for (int t = 0; t < THREADS; t++) {
+            boolean forward = t % 2 == 0;
+            pool.submit(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                        accountService.transferMoney(forward ? transfer(first, second) : transfer(second, first));
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+        }
+        long started = System.nanoTime();
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.MINUTES));
+        long elapsed = System.nanoTime() - started;
+
+        int transfers = THREADS * TRANSFERS_PER_THREAD;
+        System.out.printf("%d opposite transfers on %d threads in %d ms: %.1f transfers/s%n",
+                transfers, THREADS, TimeUnit.NANOSECONDS.toMillis(elapsed),
+                transfers / (elapsed / 1_000_000_000.0));
+
+        assertTrue(failures.isEmpty(), () -> "Transfers failed: " + failures);
+        // as many transfers went one way as the other
+        assertEquals(0, accountRepo.findById(first).get().getBalance().compareTo(INITIAL_BALANCE));
+        assertEquals(0, accountRepo.findById(second).get().getBalance().compareTo(INITIAL_BALANCE));
+    }
+
+    @Test
+    @DisplayName("Batch transfer against the single-transfer loop")
+    void batchAgainstSingleTransfers() {
+        User owner = saveOwner();
+        List<Long> accounts = IntStream.range(0, 10).mapToObj(i -> saveAccount(owner)).collect(Collectors.toList());
+        List<MoneyTransferDTO> transfers = IntStream.range(0, BATCH_SIZE)
+                .mapToObj(i -> transfer(accounts.get(i % 10), accounts.get((i * 7 + 3) % 10)))
+                .collect(Collectors.toList());
+
+        long started = System.nanoTime();
+        transfers.forEach(accountService::transferMoney);
+        long single = System.nanoTime() - started;
+
+        started = System.nanoTime();
+        List<TransferResultDTO> results = accountService.transferMoneyBatch(transfers);
+        long batch = System.nanoTime() - started;
+
+        System.out.printf("%d transfers one by one: %.1f transfers/s, as one batch: %.1f transfers/s%n", BATCH_SIZE,
+                BATCH_SIZE / (single / 1_000_000_000.0), BATCH_SIZE / (batch / 1_000_000_000.0));
+        assertTrue(results.stream().allMatch(TransferResultDTO::isSuccess));
+    }
+
+}
@@ -1,26 +1,36 @@
 package com.julenka.api.primitiveBank.services;
 
 import com.julenka.api.primitiveBank.domain.Account;
+import com.julenka.api.primitiveBank.domain.LedgerEntry;
+import com.julenka.api.primitiveBank.domain.LedgerEntryType;
 import com.julenka.api.primitiveBank.domain.Roles;
 import com.julenka.api.primitiveBank.domain.User;
 import com.julenka.api.primitiveBank.dto.FundDepositDTO;
 import com.julenka.api.primitiveBank.dto.MoneyTransferDTO;
+import com.julenka.api.primitiveBank.dto.TransferResultDTO;
 import com.julenka.api.primitiveBank.exceptions.BadRequestException;
 import com.julenka.api.primitiveBank.exceptions.ForbiddenOperationException;
 import com.julenka.api.primitiveBank.exceptions.UncertainAccountException;
 import com.julenka.api.primitiveBank.repositories.AccountRepo;
+import com.julenka.api.primitiveBank.repositories.LedgerEntryRepo;
 import com.julenka.api.primitiveBank.repositories.UserRepo;
 import org.junit.jupiter.api.*;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.transaction.Transactional;
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -39,6 +49,12 @@ class AccountServiceIT {
     @Autowired
     private AccountService accountService;
 
+    @Autowired
+    private LedgerEntryRepo ledgerEntryRepo;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     @MockBean
     private CurrentUserService currentUserService;
 
@@ -89,6 +105,31 @@ class AccountServiceIT {
     }
 
 
+    @Test
+    @DisplayName("Transfer is journaled as applied ledger entries")
+    void transferIsJournaled() {
+        User from = saveUserWithAccount("From", "From1", new BigDecimal(20));
+        User to = saveUserWithAccount("To", "To1", new BigDecimal(5));
+        Mockito.when(currentUserService.getCurrentUser()).thenAnswer((i) -> userRepo.findOneByUsername("From").get());
+        MoneyTransferDTO dto = new MoneyTransferDTO();
+        dto.setAmount(new BigDecimal(10));
+        template.executeWithoutResult(tr -> {
+            dto.setFromId(accountRepo.findAllByUser(from).get(0).getId());
+            dto.setToId(accountRepo.findAllByUser(to).get(0).getId());
+        });
+        accountService.transferMoney(dto);
+        List<LedgerEntry> fromEntries = ledgerEntryRepo.findAllByAccountIdOrderById(dto.getFromId());
+        assertEquals(1, fromEntries.size());
+        assertEquals(LedgerEntryType.TRANSFER_OUT, fromEntries.get(0).getType());
+        assertEquals(0, fromEntries.get(0).getAmount().compareTo(new BigDecimal(-10)));
+        assertTrue(fromEntries.get(0).isApplied());
+        List<LedgerEntry> toEntries = ledgerEntryRepo.findAllByAccountIdOrderById(dto.getToId());
+        assertEquals(1, toEntries.size());
+        assertEquals(LedgerEntryType.TRANSFER_IN, toEntries.get(0).getType());
+        assertEquals(0, toEntries.get(0).getAmount().compareTo(new BigDecimal(10)));
+    }
+
+
     @Nested
     @DisplayName("Can't transfer")
     class CantTransfer {
@@ -525,7 +566,116 @@ class AccountServiceIT {
             });
         }
 
+        @Test
+        @DisplayName("keeps its journal")
+        void deleteAccountKeepsJournal() {
+            Mockito.when(currentUserService.getCurrentUser()).thenAnswer((i) -> userRepo.findOneByUsername("From").get());
+            User user = saveUserWithAccount("From", "From1", BigDecimal.ZERO);
+            Long accId = template.execute(tr -> accountRepo.findAllByUser(user).get(0).getId());
+            insertLedgerEntry(accId, new BigDecimal(5), LedgerEntryType.DEPOSIT, true);
+            insertLedgerEntry(accId, new BigDecimal(-5), LedgerEntryType.TRANSFER_OUT, true);
+            accountService.deleteAccount(accId);
+            assertFalse(accountRepo.existsById(accId));
+            assertEquals(0, jdbcTemplate.queryForObject("SELECT count(*) FROM ledger_entries WHERE account_id = ?", Long.class, accId));
+            assertEquals(List.of(LedgerEntryType.DEPOSIT.name(), LedgerEntryType.TRANSFER_OUT.name()), jdbcTemplate.queryForList(
+                    "SELECT type FROM ledger_entries_archive WHERE account_id = ? ORDER BY id", String.class, accId));
+        }
+
+        @Test
+        @DisplayName("credited while the delete waits for it")
+        void deleteAccountCreditedMeanwhile() throws Exception {
+            Mockito.when(currentUserService.getCurrentUser()).thenAnswer((i) -> userRepo.findOneByUsername("From").get());
+            User user = saveUserWithAccount("From", "From1", BigDecimal.ZERO);
+            Long accId = template.execute(tr -> accountRepo.findAllByUser(user).get(0).getId());
+            CountDownLatch credited = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            // a journal transfer to the account, its ledger entry keeps the account from being deleted till it commits
+            CompletableFuture<Void> credit = CompletableFuture.runAsync(() -> template.executeWithoutResult(tr -> {
+                insertLedgerEntry(accId, new BigDecimal(5), LedgerEntryType.TRANSFER_IN, false);
+                credited.countDown();
+                try {
+                    release.await(1, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            try {
+                assertTrue(credited.await(10, TimeUnit.SECONDS));
+                CompletableFuture<Void> delete = CompletableFuture.runAsync(() -> accountService.deleteAccount(accId));
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                while (jdbcTemplate.queryForObject("SELECT count(*) FROM pg_stat_activity WHERE wait_event_type = 'Lock'", Long.class) == 0
+                        && System.nanoTime() < deadline) {
+                    Thread.sleep(10);
+                }
+                release.countDown();
+                credit.get(10, TimeUnit.SECONDS);
+                ExecutionException e = assertThrows(ExecutionException.class, () -> delete.get(10, TimeUnit.SECONDS));
+                assertTrue(e.getCause() instanceof ForbiddenOperationException, e.getCause().toString());
+            } finally {
+                release.countDown();
+            }
+            assertTrue(accountRepo.existsById(accId));
+            assertEquals(1, jdbcTemplate.queryForObject("SELECT count(*) FROM ledger_entries WHERE account_id = ?", Long.class, accId));
+        }
+
+        private void insertLedgerEntry(Long accId, BigDecimal amount, LedgerEntryType type, boolean applied) {
+            jdbcTemplate.update("INSERT INTO ledger_entries (id, account_id, amount, type, created_at, applied) " +
+                    "VALUES (nextval('ledger_entries_id_seq'), ?, ?, ?, now(), ?)", accId, amount, type.name(), applied);
+        }
+
     }
 
 
+    @Nested
+    @DisplayName("Batch transfer")
+    class BatchTransfer {
+
+        private MoneyTransferDTO transfer(Long fromId, Long toId, BigDecimal amount) {
+            MoneyTransferDTO dto = new MoneyTransferDTO();
+            dto.setFromId(fromId);
+            dto.setToId(toId);
+            dto.setAmount(amount);
+            return dto;
+        }
+
+        @Test
+        @DisplayName("applies valid transfers and reports failed ones")
+        void batchWithFailedItems() {
+            User from = saveUserWithAccount("From", "From1", new BigDecimal(20));
+            User to = saveUserWithAccount("To", "To1", new BigDecimal(5));
+            Mockito.when(currentUserService.getCurrentUser()).thenAnswer((i) -> userRepo.findOneByUsername("From").get());
+            AtomicReference<Long> fromAccId = new AtomicReference<>();
+            AtomicReference<Long> toAccId = new AtomicReference<>();
+            template.executeWithoutResult(tr -> {
+                fromAccId.set(accountRepo.findAllByUser(from).get(0).getId());
+                toAccId.set(accountRepo.findAllByUser(to).get(0).getId());
+            });
+            List<TransferResultDTO> results = accountService.transferMoneyBatch(List.of(
+                    transfer(fromAccId.get(), toAccId.get(), new BigDecimal(8)),
+                    transfer(toAccId.get(), fromAccId.get(), new BigDecimal(1)),
+                    transfer(null, toAccId.get(), new BigDecimal(8)),
+                    transfer(fromAccId.get(), 4000L, new BigDecimal(1)),
+                    transfer(fromAccId.get(), toAccId.get(), new BigDecimal(-1)),
+                    transfer(fromAccId.get(), toAccId.get(), new BigDecimal(5))));
+
+            assertEquals(List.of(true, false, true, false, false, false),
+                    results.stream().map(TransferResultDTO::isSuccess).collect(Collectors.toList()));
+            assertEquals("Forbidden.User has not such an account", results.get(1).getError());
+            assertEquals("Such an account for transfer doesn't exist", results.get(3).getError());
+            assertEquals("You can't transfer negative amount", results.get(4).getError());
+            assertEquals("Not enough money for this operation", results.get(5).getError());
+            template.executeWithoutResult(tr -> {
+                assertEquals(0, accountRepo.findById(fromAccId.get()).get().getBalance().compareTo(new BigDecimal(4)));
+                assertEquals(0, accountRepo.findById(toAccId.get()).get().getBalance().compareTo(new BigDecimal(21)));
+            });
+        }
+
+        @Test
+        @DisplayName("empty batch")
+        void emptyBatch() {
+            assertThrows(BadRequestException.class, () -> accountService.transferMoneyBatch(List.of()),
+                    "Empty request body");
+        }
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,279 @@
+package com.julenka.api.primitiveBank.services;
+
+import com.julenka.api.primitiveBank.domain.Account;
+import com.julenka.api.primitiveBank.domain.HistoryEntry;
+import com.julenka.api.primitiveBank.domain.LedgerEntryType;
+import com.julenka.api.primitiveBank.domain.OutboxEntry;
+import com.julenka.api.primitiveBank.domain.Roles;
+import com.julenka.api.primitiveBank.domain.User;
+import com.julenka.api.primitiveBank.dto.FundDepositDTO;
+import com.julenka.api.primitiveBank.dto.HistoryEntryDTO;
+import com.julenka.api.primitiveBank.dto.HistoryPageDTO;
+import com.julenka.api.primitiveBank.dto.MoneyTransferDTO;
+import com.julenka.api.primitiveBank.exceptions.BadRequestException;
+import com.julenka.api.primitiveBank.exceptions.ForbiddenOperationException;
+import com.julenka.api.primitiveBank.repositories.AccountRepo;
+import com.julenka.api.primitiveBank.repositories.HistoryRepo;
+import com.julenka.api.primitiveBank.repositories.OutboxRepo;
+import com.julenka.api.primitiveBank.repositories.UserRepo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.transaction.Transactional;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// the scheduled worker runs once at startup, the tests move the outbox themselves
+@SpringBootTest(properties = {"bank.accounts.history-outbox-interval=1h", "bank.accounts.history-outbox-max-lag=10s"})
+class HistoryIT {
+
+    @Autowired
+    private UserRepo userRepo;
+
+    @Autowired
+    private AccountRepo accountRepo;
+
+    @Autowired
+    private HistoryRepo historyRepo;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private HistoryService historyService;
+
+    @Autowired
+    private OutboxRepo outboxRepo;
+
+    @Autowired
+    private HistoryOutboxWorker outboxWorker;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    private CurrentUserService currentUserService;
+
+    private Long fromAccId;
+    private Long toAccId;
+
+    private User saveUser(String username) {
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword(username + "1");
+        user.setAuthorities(List.of(Roles.USER));
+        return userRepo.saveAndFlush(user);
+    }
+
+    private Long saveAccount(User user, BigDecimal balance) {
+        Account acc = new Account();
+        acc.setBalance(balance);
+        acc.setUser(user);
+        return accountRepo.saveAndFlush(acc).getId();
+    }
+
+    private void transfer(BigDecimal amount) {
+        MoneyTransferDTO dto = new MoneyTransferDTO();
+        dto.setFromId(fromAccId);
+        dto.setToId(toAccId);
+        dto.setAmount(amount);
+        accountService.transferMoney(dto);
+    }
+
+    private void fund(BigDecimal amount) {
+        FundDepositDTO dto = new FundDepositDTO();
+        dto.setToId(fromAccId);
+        dto.setAmount(amount);
+        accountService.fundDepositOfCurrentUser(dto);
+    }
+
+    private List<HistoryEntryDTO> historyOf(Long accId) {
+        return historyService.getHistory(accId, null, 100).getEntries();
+    }
+
+    private List<HistoryEntryDTO> readByPages(Long accId, int limit) {
+        outboxWorker.drain();
+        List<HistoryEntryDTO> entries = new ArrayList<>();
+        String cursor = null;
+        do {
+            HistoryPageDTO page = historyService.getHistory(accId, cursor, limit);
+            assertTrue(page.getEntries().size() <= limit);
+            entries.addAll(page.getEntries());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return entries;
+    }
+
+    @BeforeEach
+    void saveUsers() {
+        userRepo.deleteAll();
+        fromAccId = saveAccount(saveUser("From"), new BigDecimal(20));
+        toAccId = saveAccount(saveUser("To"), new BigDecimal(5));
+        Mockito.when(currentUserService.getCurrentUser()).thenAnswer((i) -> userRepo.findOneByUsername("From").get());
+    }
+
+    @AfterEach
+    @Transactional
+    void deleteAllUsers() {
+        userRepo.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Operations are listed from the newest one")
+    void historyOfOperations() {
+        fund(new BigDecimal(3));
+        transfer(new BigDecimal(10));
+        transfer(new BigDecimal(1));
+        outboxWorker.drain();
+        List<HistoryEntryDTO> entries = historyOf(fromAccId);
+        assertEquals(List.of(LedgerEntryType.TRANSFER_OUT, LedgerEntryType.TRANSFER_OUT, LedgerEntryType.DEPOSIT),
+                entries.stream().map(HistoryEntryDTO::getType).collect(Collectors.toList()));
+        assertEquals(0, entries.get(0).getAmount().compareTo(new BigDecimal(-1)));
+        assertEquals(toAccId, entries.get(0).getCounterpartyId());
+        assertNull(entries.get(2).getCounterpartyId());
+        assertEquals(0, entries.get(2).getAmount().compareTo(new BigDecimal(3)));
+    }
+
+    @Test
+    @DisplayName("Pages follow one another without gaps")
+    void historyByPages() {
+        for (int i = 1; i <= 7; i++) {
+            transfer(BigDecimal.ONE);
+        }
+        outboxWorker.drain();
+        List<HistoryEntryDTO> all = historyOf(fromAccId);
+        assertEquals(7, all.size());
+        assertEquals(all, readByPages(fromAccId, 3));
+        assertEquals(all, readByPages(fromAccId, 1));
+        assertNull(historyService.getHistory(fromAccId, null, 7).getNextCursor());
+    }
+
+    @Test
+    @DisplayName("Transfer waits in the outbox until it's moved")
+    void transferGoesThroughOutbox() {
+        outboxWorker.drain();
+        transfer(new BigDecimal(2));
+        assertTrue(historyOf(fromAccId).isEmpty());
+        outboxWorker.drain();
+        assertEquals(0, outboxRepo.count());
+        List<HistoryEntryDTO> sent = historyOf(fromAccId);
+        assertEquals(1, sent.size());
+        assertEquals(0, sent.get(0).getAmount().compareTo(new BigDecimal(-2)));
+        assertEquals(toAccId, sent.get(0).getCounterpartyId());
+        Mockito.when(currentUserService.getCurrentUser()).thenAnswer((i) -> userRepo.findOneByUsername("To").get());
+        List<HistoryEntryDTO> received = historyOf(toAccId);
+        assertEquals(1, received.size());
+        assertEquals(LedgerEntryType.TRANSFER_IN, received.get(0).getType());
+        assertEquals(0, received.get(0).getAmount().compareTo(new BigDecimal(2)));
+        assertEquals(fromAccId, received.get(0).getCounterpartyId());
+        assertEquals(sent.get(0).getCreatedAt(), received.get(0).getCreatedAt());
+    }
+
+    @Test
+    @DisplayName("Moved operations keep the order they were made in")
+    void outboxKeepsOrder() {
+        List<LedgerEntryType> made = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            fund(BigDecimal.ONE);
+            transfer(BigDecimal.ONE);
+            made.addAll(List.of(LedgerEntryType.DEPOSIT, LedgerEntryType.TRANSFER_OUT));
+        }
+        outboxWorker.drain();
+        assertEquals(made.stream().map(LedgerEntryType::name).collect(Collectors.toList()), jdbcTemplate.queryForList(
+                "SELECT type FROM account_history WHERE account_id = ? ORDER BY id", String.class, fromAccId));
+    }
+
+    @Test
+    @DisplayName("Operations go to the history directly while the worker is behind")
+    void lagBypassesOutbox() throws Exception {
+        OutboxEntry stuck = new OutboxEntry(toAccId, null, BigDecimal.ONE, LedgerEntryType.DEPOSIT);
+        stuck.setCreatedAt(Instant.now().minus(Duration.ofMinutes(1)));
+        Long stuckId = outboxRepo.saveAndFlush(stuck).getId();
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // another worker holds the old operation, so it stays in the outbox
+        CompletableFuture<Void> holder = CompletableFuture.runAsync(() -> transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.queryForList("SELECT id FROM history_outbox WHERE id = ? FOR UPDATE", stuckId);
+            locked.countDown();
+            try {
+                release.await(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        try {
+            assertTrue(locked.await(1, TimeUnit.MINUTES));
+            outboxWorker.drain();
+            assertTrue(outboxWorker.isBehind());
+            transfer(BigDecimal.ONE);
+            assertEquals(1, historyOf(fromAccId).size());
+        } finally {
+            release.countDown();
+            holder.get(1, TimeUnit.MINUTES);
+        }
+        outboxWorker.drain();
+        assertFalse(outboxWorker.isBehind());
+        assertEquals(0, outboxRepo.count());
+    }
+
+    @Test
+    @DisplayName("Pages go on into the previous month")
+    void historyAcrossMonths() {
+        YearMonth previous = YearMonth.now(ZoneOffset.UTC).minusMonths(1);
+        historyRepo.createPartition(previous);
+        historyService.createPartitions();
+        HistoryEntry old = new HistoryEntry(fromAccId, null, new BigDecimal(7), LedgerEntryType.DEPOSIT);
+        old.setCreatedAt(previous.atEndOfMonth().atStartOfDay(ZoneOffset.UTC).toInstant());
+        historyRepo.saveAndFlush(old);
+        transfer(BigDecimal.ONE);
+        List<HistoryEntryDTO> entries = readByPages(fromAccId, 1);
+        assertEquals(2, entries.size());
+        assertEquals(LedgerEntryType.TRANSFER_OUT, entries.get(0).getType());
+        assertEquals(old.getId(), entries.get(1).getId());
+        assertEquals(old.getCreatedAt(), entries.get(1).getCreatedAt());
+    }
+
+    @Test
+    @DisplayName("Partitions are there ahead of time")
+    void partitionsAhead() {
+        historyService.createPartitions();
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+        assertTrue(historyRepo.findPartitionMonths().containsAll(List.of(current, current.plusMonths(1), current.plusMonths(2))));
+    }
+
+    @Test
+    @DisplayName("History of another user's account")
+    void historyOfForeignAccount() {
+        assertThrows(ForbiddenOperationException.class, () -> historyService.getHistory(toAccId, null, 10));
+    }
+
+    @Test
+    @DisplayName("Wrong cursor and page size")
+    void wrongRequest() {
+        assertThrows(BadRequestException.class, () -> historyService.getHistory(fromAccId, "garbage", 10));
+        assertThrows(BadRequestException.class, () -> historyService.getHistory(fromAccId, Instant.now() + "_x", 10));
+        assertThrows(BadRequestException.class, () -> historyService.getHistory(fromAccId, null, 0));
+    }
+}
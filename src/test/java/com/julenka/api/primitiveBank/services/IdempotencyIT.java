@@ -0,0 +1,184 @@
+package com.julenka.api.primitiveBank.services;
+
+import com.julenka.api.primitiveBank.domain.Account;
+import com.julenka.api.primitiveBank.domain.IdempotencyKey;
+import com.julenka.api.primitiveBank.domain.Roles;
+import com.julenka.api.primitiveBank.domain.User;
+import com.julenka.api.primitiveBank.dto.FundDepositDTO;
+import com.julenka.api.primitiveBank.dto.MoneyTransferDTO;
+import com.julenka.api.primitiveBank.exceptions.BadRequestException;
+import com.julenka.api.primitiveBank.exceptions.ForbiddenOperationException;
+import com.julenka.api.primitiveBank.repositories.AccountRepo;
+import com.julenka.api.primitiveBank.repositories.IdempotencyKeyRepo;
+import com.julenka.api.primitiveBank.repositories.UserRepo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import javax.transaction.Transactional;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class IdempotencyIT {
+
+    @Autowired
+    private UserRepo userRepo;
+
+    @Autowired
+    private AccountRepo accountRepo;
+
+    @Autowired
+    private IdempotencyKeyRepo idempotencyKeyRepo;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @MockBean
+    private CurrentUserService currentUserService;
+
+    private Long fromAccId;
+    private Long toAccId;
+
+    private User saveUser(String username) {
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword(username + "1");
+        user.setAuthorities(List.of(Roles.USER));
+        return userRepo.saveAndFlush(user);
+    }
+
+    private Long saveAccount(User user, BigDecimal balance) {
+        Account acc = new Account();
+        acc.setBalance(balance);
+        acc.setUser(user);
+        return accountRepo.saveAndFlush(acc).getId();
+    }
+
+    private BigDecimal balanceOf(Long accId) {
+        return accountRepo.findById(accId).get().getBalance();
+    }
+
+    private MoneyTransferDTO transfer(BigDecimal amount) {
+        MoneyTransferDTO dto = new MoneyTransferDTO();
+        dto.setFromId(fromAccId);
+        dto.setToId(toAccId);
+        dto.setAmount(amount);
+        return dto;
+    }
+
+    private void transferOnce(String key, MoneyTransferDTO dto) {
+        idempotencyService.execute(key, "transfer", dto, Void.class, () -> {
+            accountService.transferMoney(dto);
+            return null;
+        });
+    }
+
+    @BeforeEach
+    void saveUsers() {
+        userRepo.deleteAll();
+        fromAccId = saveAccount(saveUser("From"), new BigDecimal(20));
+        toAccId = saveAccount(saveUser("To"), new BigDecimal(5));
+        Mockito.when(currentUserService.getCurrentUser()).thenAnswer((i) -> userRepo.findOneByUsername("From").get());
+    }
+
+    @AfterEach
+    @Transactional
+    void deleteAllUsers() {
+        userRepo.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Retried transfer is applied once")
+    void retryIsAppliedOnce() {
+        transferOnce("retry-1", transfer(new BigDecimal(10)));
+        transferOnce("retry-1", transfer(new BigDecimal(10)));
+        assertEquals(0, balanceOf(fromAccId).compareTo(new BigDecimal(10)));
+        assertEquals(0, balanceOf(toAccId).compareTo(new BigDecimal(15)));
+        assertTrue(idempotencyKeyRepo.existsById(new IdempotencyKey.Pk(userRepo.findOneByUsername("From").get().getId(), "retry-1")));
+    }
+
+    @Test
+    @DisplayName("Retried deposit returns the stored result")
+    void retryReturnsStoredResult() {
+        FundDepositDTO dto = new FundDepositDTO();
+        dto.setAmount(new BigDecimal(3));
+        Long first = idempotencyService.execute("fund-1", "fund", dto, Long.class, () -> accountService.fundDepositOfCurrentUser(dto));
+        FundDepositDTO retry = new FundDepositDTO();
+        retry.setAmount(new BigDecimal(3));
+        Long second = idempotencyService.execute("fund-1", "fund", retry, Long.class, () -> accountService.fundDepositOfCurrentUser(retry));
+        assertEquals(fromAccId, first);
+        assertEquals(first, second);
+        assertEquals(0, balanceOf(fromAccId).compareTo(new BigDecimal(23)));
+    }
+
+    @Test
+    @DisplayName("Key can't be reused for another request")
+    void keyReusedForAnotherRequest() {
+        transferOnce("reused", transfer(new BigDecimal(10)));
+        assertThrows(BadRequestException.class, () -> transferOnce("reused", transfer(new BigDecimal(11))),
+                "Idempotency-Key has already been used for another request");
+        assertEquals(0, balanceOf(fromAccId).compareTo(new BigDecimal(10)));
+    }
+
+    @Test
+    @DisplayName("Failed request leaves the key free")
+    void failureIsNotStored() {
+        assertThrows(ForbiddenOperationException.class, () -> transferOnce("failed", transfer(new BigDecimal(30))));
+        FundDepositDTO deposit = new FundDepositDTO();
+        deposit.setToId(fromAccId);
+        deposit.setAmount(new BigDecimal(10));
+        accountService.fundDepositOfCurrentUser(deposit);
+        transferOnce("failed", transfer(new BigDecimal(30)));
+        assertEquals(0, balanceOf(fromAccId).compareTo(BigDecimal.ZERO));
+        assertEquals(0, balanceOf(toAccId).compareTo(new BigDecimal(35)));
+    }
+
+    @Test
+    @DisplayName("Concurrent retries are applied once")
+    void concurrentRetries() throws InterruptedException {
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        for (int t = 0; t < threads; t++) {
+            pool.submit(() -> {
+                try {
+                    start.await();
+                    transferOnce("concurrent", transfer(BigDecimal.ONE));
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+        assertTrue(failures.isEmpty(), () -> "Retries failed: " + failures);
+        assertEquals(0, balanceOf(fromAccId).compareTo(new BigDecimal(19)));
+    }
+
+    @Test
+    @DisplayName("Cleanup keeps keys younger than the TTL")
+    void freshKeysAreKept() {
+        transferOnce("expiring", transfer(BigDecimal.ONE));
+        idempotencyService.deleteExpired();
+        assertEquals(1, idempotencyKeyRepo.count());
+    }
+
+}
@@ -0,0 +1,209 @@
+package com.julenka.api.primitiveBank.services;
+
+import com.julenka.api.primitiveBank.domain.Account;
+import com.julenka.api.primitiveBank.domain.LedgerEntry;
+import com.julenka.api.primitiveBank.domain.LedgerEntryType;
+import com.julenka.api.primitiveBank.domain.Roles;
+import com.julenka.api.primitiveBank.domain.User;
+import com.julenka.api.primitiveBank.dto.FundDepositDTO;
+import com.julenka.api.primitiveBank.dto.MoneyTransferDTO;
+import com.julenka.api.primitiveBank.dto.TransferResultDTO;
+import com.julenka.api.primitiveBank.exceptions.ForbiddenOperationException;
+import com.julenka.api.primitiveBank.exceptions.UncertainAccountException;
+import com.julenka.api.primitiveBank.repositories.AccountRepo;
+import com.julenka.api.primitiveBank.repositories.LedgerEntryRepo;
+import com.julenka.api.primitiveBank.repositories.UserRepo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import javax.transaction.Transactional;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {"bank.accounts.transfer-mode=journal", "bank.accounts.compaction-interval=1h"})
+class LedgerJournalIT {
+
+    @Autowired
+    private UserRepo userRepo;
+
+    @Autowired
+    private AccountRepo accountRepo;
+
+    @Autowired
+    private LedgerEntryRepo ledgerEntryRepo;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @MockBean
+    private CurrentUserService currentUserService;
+
+    private Long fromAccId;
+    private Long toAccId;
+
+    private User saveUser(String username) {
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword(username + "1");
+        user.setAuthorities(List.of(Roles.USER));
+        return userRepo.saveAndFlush(user);
+    }
+
+    private Long saveAccount(User user, BigDecimal balance) {
+        Account acc = new Account();
+        acc.setBalance(balance);
+        acc.setUser(user);
+        return accountRepo.saveAndFlush(acc).getId();
+    }
+
+    private BigDecimal balanceOf(Long accId) {
+        return ledgerService.balanceOf(accountRepo.findById(accId).get());
+    }
+
+    private BigDecimal snapshotOf(Long accId) {
+        return accountRepo.findById(accId).get().getBalance();
+    }
+
+    private MoneyTransferDTO transfer(Long fromId, Long toId, BigDecimal amount) {
+        MoneyTransferDTO dto = new MoneyTransferDTO();
+        dto.setFromId(fromId);
+        dto.setToId(toId);
+        dto.setAmount(amount);
+        return dto;
+    }
+
+    private FundDepositDTO deposit(Long toId, BigDecimal amount) {
+        FundDepositDTO dto = new FundDepositDTO();
+        dto.setToId(toId);
+        dto.setAmount(amount);
+        return dto;
+    }
+
+    @BeforeEach
+    void saveUsers() {
+        userRepo.deleteAll();
+        fromAccId = saveAccount(saveUser("From"), new BigDecimal(20));
+        toAccId = saveAccount(saveUser("To"), new BigDecimal(5));
+        Mockito.when(currentUserService.getCurrentUser()).thenAnswer((i) -> userRepo.findOneByUsername("From").get());
+    }
+
+    @AfterEach
+    @Transactional
+    void deleteAllUsers() {
+        userRepo.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Deposit is journaled and reaches the snapshot on compaction")
+    void depositIsCompacted() {
+        accountService.fundDepositOfCurrentUser(deposit(fromAccId, new BigDecimal(15)));
+        assertEquals(0, snapshotOf(fromAccId).compareTo(new BigDecimal(20)));
+        assertEquals(0, balanceOf(fromAccId).compareTo(new BigDecimal(35)));
+
+        ledgerService.compact();
+        assertEquals(0, snapshotOf(fromAccId).compareTo(new BigDecimal(35)));
+        assertEquals(0, ledgerService.unappliedSum(fromAccId).compareTo(BigDecimal.ZERO));
+        List<LedgerEntry> entries = ledgerEntryRepo.findAllByAccountIdOrderById(fromAccId);
+        assertEquals(1, entries.size());
+        assertEquals(LedgerEntryType.DEPOSIT, entries.get(0).getType());
+        assertTrue(entries.get(0).isApplied());
+    }
+
+    @Test
+    @DisplayName("Transfer can spend money that is still in the unapplied tail")
+    void transferSpendsTail() {
+        accountService.fundDepositOfCurrentUser(deposit(fromAccId, new BigDecimal(10)));
+        accountService.transferMoney(transfer(fromAccId, toAccId, new BigDecimal(25)));
+        assertEquals(0, balanceOf(fromAccId).compareTo(new BigDecimal(5)));
+        assertEquals(0, balanceOf(toAccId).compareTo(new BigDecimal(30)));
+        assertEquals(List.of(LedgerEntryType.TRANSFER_IN), ledgerEntryRepo.findAllByAccountIdOrderById(toAccId).stream()
+                .map(LedgerEntry::getType).collect(Collectors.toList()));
+
+        assertThrows(ForbiddenOperationException.class,
+                () -> accountService.transferMoney(transfer(fromAccId, toAccId, new BigDecimal(6))),
+                "Not enough money for this operation");
+        assertEquals(0, balanceOf(fromAccId).compareTo(new BigDecimal(5)));
+    }
+
+    @Test
+    @DisplayName("Batch counts the unapplied tail, money already sent by a single transfer can't be spent again")
+    void batchAfterUncompactedTransfer() {
+        accountService.transferMoney(transfer(fromAccId, toAccId, new BigDecimal(15)));
+        assertEquals(0, snapshotOf(fromAccId).compareTo(new BigDecimal(20)));
+
+        List<TransferResultDTO> results = accountService.transferMoneyBatch(List.of(
+                transfer(fromAccId, toAccId, new BigDecimal(10)),
+                transfer(fromAccId, toAccId, new BigDecimal(5))));
+        assertEquals(List.of(false, true), results.stream().map(TransferResultDTO::isSuccess).collect(Collectors.toList()));
+        assertEquals("Not enough money for this operation", results.get(0).getError());
+        assertEquals(0, balanceOf(fromAccId).compareTo(BigDecimal.ZERO));
+        assertEquals(0, balanceOf(toAccId).compareTo(new BigDecimal(25)));
+
+        ledgerService.compact();
+        assertEquals(0, snapshotOf(fromAccId).compareTo(BigDecimal.ZERO));
+        assertEquals(0, snapshotOf(toAccId).compareTo(new BigDecimal(25)));
+    }
+
+    @Test
+    @DisplayName("Can't transfer from an account of another user")
+    void transferFromForeignAccount() {
+        assertThrows(UncertainAccountException.class,
+                () -> accountService.transferMoney(transfer(toAccId, fromAccId, new BigDecimal(1))),
+                "Forbidden.User has not such an account");
+        assertEquals(0, balanceOf(toAccId).compareTo(new BigDecimal(5)));
+    }
+
+    @Test
+    @DisplayName("Concurrent transfers to a hot account survive concurrent compaction")
+    void concurrentCreditsWithCompaction() throws InterruptedException {
+        int threads = 16;
+        int transfersPerThread = 20;
+        List<Long> senders = List.of(fromAccId, saveAccount(userRepo.findOneByUsername("From").get(), new BigDecimal(20)));
+        ExecutorService pool = Executors.newFixedThreadPool(threads + 1);
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        for (int t = 0; t < threads; t++) {
+            Long sender = senders.get(t % 2);
+            pool.submit(() -> {
+                try {
+                    for (int i = 0; i < transfersPerThread; i++) {
+                        accountService.transferMoney(transfer(sender, toAccId, new BigDecimal("0.01")));
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+        }
+        pool.submit(() -> {
+            for (int i = 0; i < 20; i++) {
+                ledgerService.compact();
+            }
+        });
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(2, TimeUnit.MINUTES));
+
+        assertTrue(failures.isEmpty(), () -> "Transfers failed: " + failures);
+        BigDecimal moved = new BigDecimal("0.01").multiply(new BigDecimal(threads * transfersPerThread));
+        assertEquals(0, balanceOf(toAccId).compareTo(new BigDecimal(5).add(moved)));
+        assertEquals(0, balanceOf(senders.get(0)).add(balanceOf(senders.get(1)))
+                .compareTo(new BigDecimal(40).subtract(moved)));
+        ledgerService.compact();
+        assertEquals(0, snapshotOf(toAccId).compareTo(new BigDecimal(5).add(moved)));
+    }
+
+}
@@ -0,0 +1,197 @@
+package com.julenka.api.primitiveBank.services;
+
+import com.julenka.api.primitiveBank.domain.Account;
+import com.julenka.api.primitiveBank.domain.Roles;
+import com.julenka.api.primitiveBank.domain.User;
+import com.julenka.api.primitiveBank.dto.MoneyTransferDTO;
+import com.julenka.api.primitiveBank.repositories.AccountRepo;
+import com.julenka.api.primitiveBank.repositories.UserRepo;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {"management.endpoints.web.exposure.include=locks",
+        "bank.accounts.slow-transfer-threshold=300ms", "bank.accounts.lock-timeout=" + LockContentionIT.LOCK_TIMEOUT_MS + "ms"})
+@AutoConfigureMockMvc
+class LockContentionIT {
+
+    private static final long HOLD_MS = 600;
+    static final long LOCK_TIMEOUT_MS = 1500;
+
+    @Autowired
+    private UserRepo userRepo;
+
+    @Autowired
+    private AccountRepo accountRepo;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private LockContentionMonitor lockContentionMonitor;
+
+    @Autowired
+    private TransactionTemplate template;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @MockBean
+    private CurrentUserService currentUserService;
+
+    @AfterEach
+    void deleteOwner() {
+        userRepo.findOneByUsername("lock-owner").ifPresent(userRepo::delete);
+    }
+
+    private Long saveAccount(User owner) {
+        Account account = new Account();
+        account.setBalance(BigDecimal.TEN);
+        account.setUser(owner);
+        return accountRepo.saveAndFlush(account).getId();
+    }
+
+    private User saveOwner() {
+        deleteOwner();
+        User owner = new User();
+        owner.setUsername("lock-owner");
+        owner.setPassword("lock-owner1");
+        owner.setAuthorities(List.of(Roles.USER));
+        userRepo.saveAndFlush(owner);
+        Mockito.when(currentUserService.getCurrentUser()).thenAnswer(i -> userRepo.findOneByUsername("lock-owner").get());
+        return owner;
+    }
+
+    private MoneyTransferDTO transfer(Long from, Long to) {
+        MoneyTransferDTO dto = new MoneyTransferDTO();
+        dto.setFromId(from);
+        dto.setToId(to);
+        dto.setAmount(BigDecimal.ONE);
+        return dto;
+    }
+
+    @Test
+    @DisplayName("A transfer waiting for a locked account makes it the hottest one and is kept as slow")
+    void waitIsChargedToAccount() throws Exception {
+        User owner = saveOwner();
+        Long from = saveAccount(owner);
+        Long to = saveAccount(owner);
+
+        CountDownLatch locked = new CountDownLatch(1);
+        CompletableFuture<Void> holder = CompletableFuture.runAsync(() -> template.executeWithoutResult(status -> {
+            accountRepo.fetchAccountWithLockById(from);
+            locked.countDown();
+            try {
+                Thread.sleep(HOLD_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(locked.await(10, TimeUnit.SECONDS));
+        accountService.transferMoney(transfer(from, to));
+        holder.get(10, TimeUnit.SECONDS);
+
+        // both accounts are locked by one query and waited as long, either may come first;
+        // accounts of the other tests may have waited longer
+        Map<String, Object> hottest = lockContentionMonitor.hottest(Integer.MAX_VALUE).stream()
+                .filter(account -> from.equals(account.get("accountId"))).findFirst().orElseThrow();
+        assertTrue((Long) hottest.get("waitMs") >= HOLD_MS / 2, "Wait time: " + hottest.get("waitMs"));
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> slow = (List<Map<String, Object>>) lockContentionMonitor.report().get("slowTransfers");
+        assertEquals(List.of(from, to), slow.get(0).get("accountIds"));
+        assertTrue((Long) slow.get(0).get("lockWaitMs") >= HOLD_MS / 2, "Lock wait: " + slow.get(0).get("lockWaitMs"));
+    }
+
+    @Test
+    @DisplayName("A transfer gives up on an account locked longer than the lock timeout, the timeout is counted")
+    void lockTimeout() throws Exception {
+        User owner = saveOwner();
+        Long from = saveAccount(owner);
+        Long to = saveAccount(owner);
+        double timeoutsBefore = timeouts();
+
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> holder = CompletableFuture.runAsync(() -> template.executeWithoutResult(status -> {
+            accountRepo.fetchAccountWithLockById(from);
+            locked.countDown();
+            try {
+                release.await(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        long start = System.nanoTime();
+        try {
+            assertTrue(locked.await(10, TimeUnit.SECONDS));
+            RuntimeException e = assertThrows(RuntimeException.class, () -> accountService.transferMoney(transfer(from, to)));
+            assertEquals(LockContentionMonitor.TIMEOUT, LockContentionMonitor.outcomeOf(e));
+        } finally {
+            release.countDown();
+            holder.get(10, TimeUnit.SECONDS);
+        }
+        long waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(waitedMs >= LOCK_TIMEOUT_MS && waitedMs < LOCK_TIMEOUT_MS * 4, "Waited: " + waitedMs);
+
+        assertEquals(timeoutsBefore + 1, timeouts());
+        Map<String, Object> hot = lockContentionMonitor.hottest(Integer.MAX_VALUE).stream()
+                .filter(account -> from.equals(account.get("accountId"))).findFirst().orElseThrow();
+        assertEquals(1L, hot.get("timeouts"));
+        assertEquals(0, accountRepo.findById(from).get().getBalance().compareTo(BigDecimal.TEN));
+    }
+
+    private double timeouts() {
+        Timer timer = meterRegistry.find("bank.account.locks").tag("outcome", LockContentionMonitor.TIMEOUT).timer();
+        return timer == null ? 0 : timer.count();
+    }
+
+    @Test
+    @DisplayName("Timeouts and deadlocks are recognized by the SQL state")
+    void outcomes() {
+        assertEquals(LockContentionMonitor.TIMEOUT, LockContentionMonitor.outcomeOf(
+                new CannotAcquireLockException("lock", new SQLException("could not obtain lock", "55P03"))));
+        assertEquals(LockContentionMonitor.DEADLOCK, LockContentionMonitor.outcomeOf(
+                new CannotAcquireLockException("lock", new SQLException("deadlock detected", "40P01"))));
+        assertEquals("IllegalStateException", LockContentionMonitor.outcomeOf(new IllegalStateException()));
+    }
+
+    @Test
+    @DisplayName("Only admin sees the lock statistics")
+    void endpointForAdmin() throws Exception {
+        mockMvc.perform(get("/actuator/locks").with(user("admin").authorities(Roles.ADMIN)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.hottest").isArray())
+                .andExpect(jsonPath("$.totals.waits").isNumber());
+        mockMvc.perform(get("/actuator/locks").with(user("user").authorities(Roles.USER)))
+                .andExpect(status().isForbidden());
+    }
+}
@@ -0,0 +1,314 @@
+package com.julenka.api.primitiveBank.services;
+
+import com.julenka.api.primitiveBank.domain.Account;
+import com.julenka.api.primitiveBank.domain.Roles;
+import com.julenka.api.primitiveBank.domain.User;
+import com.julenka.api.primitiveBank.dto.FundDepositDTO;
+import com.julenka.api.primitiveBank.dto.MoneyTransferDTO;
+import com.julenka.api.primitiveBank.dto.TransferResultDTO;
+import com.julenka.api.primitiveBank.exceptions.BadRequestException;
+import com.julenka.api.primitiveBank.exceptions.ForbiddenOperationException;
+import com.julenka.api.primitiveBank.repositories.AccountRepo;
+import com.julenka.api.primitiveBank.repositories.UserRepo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import javax.transaction.Transactional;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Striped accounts: credits spread over slot rows, debits sweep the slots.
+ * The benchmark prints credit throughput of a hot account for different numbers of slots.
+ */
+@SpringBootTest
+class StripedAccountIT {
+
+    private static final int THREADS = 32;
+    private static final int CREDITS_PER_THREAD = 50;
+
+    @Autowired
+    private UserRepo userRepo;
+
+    @Autowired
+    private AccountRepo accountRepo;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @MockBean
+    private CurrentUserService currentUserService;
+
+    private User owner;
+    private Long merchantId;
+
+    private Long saveAccount(User user, BigDecimal balance) {
+        Account acc = new Account();
+        acc.setBalance(balance);
+        acc.setUser(user);
+        return accountRepo.saveAndFlush(acc).getId();
+    }
+
+    private BigDecimal balanceOf(Long accId) {
+        return ledgerService.balanceOf(accountRepo.findById(accId).get());
+    }
+
+    private MoneyTransferDTO transfer(Long fromId, Long toId, BigDecimal amount) {
+        MoneyTransferDTO dto = new MoneyTransferDTO();
+        dto.setFromId(fromId);
+        dto.setToId(toId);
+        dto.setAmount(amount);
+        return dto;
+    }
+
+    private FundDepositDTO deposit(Long toId, BigDecimal amount) {
+        FundDepositDTO dto = new FundDepositDTO();
+        dto.setToId(toId);
+        dto.setAmount(amount);
+        return dto;
+    }
+
+    @BeforeEach
+    void saveOwner() {
+        userRepo.deleteAll();
+        owner = new User();
+        owner.setUsername("Merchant");
+        owner.setPassword("Merchant1");
+        owner.setAuthorities(List.of(Roles.USER));
+        owner = userRepo.saveAndFlush(owner);
+        merchantId = saveAccount(owner, new BigDecimal(10));
+        Mockito.when(currentUserService.getCurrentUser()).thenAnswer((i) -> userRepo.findOneByUsername("Merchant").get());
+    }
+
+    @AfterEach
+    @Transactional
+    void deleteAllUsers() {
+        userRepo.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Credits land on slots and the visible balance is their sum")
+    void creditsLandOnSlots() {
+        accountService.stripeAccount(merchantId, 4);
+        Long senderId = saveAccount(owner, new BigDecimal(100));
+
+        accountService.fundDepositOfCurrentUser(deposit(merchantId, new BigDecimal(15)));
+        accountService.transferMoney(transfer(senderId, merchantId, new BigDecimal(25)));
+
+        assertEquals(4, accountRepo.findById(merchantId).get().getSlots());
+        assertEquals(0, accountRepo.findById(merchantId).get().getBalance().compareTo(new BigDecimal(10)));
+        assertEquals(0, accountRepo.sumSlots(merchantId).compareTo(new BigDecimal(40)));
+        assertEquals(0, balanceOf(merchantId).compareTo(new BigDecimal(50)));
+        assertEquals(0, balanceOf(senderId).compareTo(new BigDecimal(75)));
+    }
+
+    @Test
+    @DisplayName("Debit that the account row can't cover sweeps the slots")
+    void debitSweepsSlots() {
+        accountService.stripeAccount(merchantId, 4);
+        Long payeeId = saveAccount(owner, BigDecimal.ZERO);
+        accountService.fundDepositOfCurrentUser(deposit(merchantId, new BigDecimal(30)));
+
+        accountService.transferMoney(transfer(merchantId, payeeId, new BigDecimal(35)));
+        assertEquals(0, accountRepo.sumSlots(merchantId).compareTo(BigDecimal.ZERO));
+        assertEquals(0, balanceOf(merchantId).compareTo(new BigDecimal(5)));
+        assertEquals(0, balanceOf(payeeId).compareTo(new BigDecimal(35)));
+
+        assertThrows(ForbiddenOperationException.class,
+                () -> accountService.transferMoney(transfer(merchantId, payeeId, new BigDecimal(6))),
+                "Not enough money for this operation");
+        assertEquals(0, balanceOf(merchantId).compareTo(new BigDecimal(5)));
+    }
+
+    @Test
+    @DisplayName("Batch debit that the account row can't cover sweeps the slots")
+    void batchSweepsSlots() {
+        accountService.stripeAccount(merchantId, 4);
+        Long payeeId = saveAccount(owner, BigDecimal.ZERO);
+        accountService.fundDepositOfCurrentUser(deposit(merchantId, new BigDecimal(30)));
+
+        List<TransferResultDTO> results = accountService.transferMoneyBatch(List.of(
+                transfer(merchantId, payeeId, new BigDecimal(35)),
+                transfer(merchantId, payeeId, new BigDecimal(6))));
+        assertEquals(List.of(true, false), results.stream().map(TransferResultDTO::isSuccess).collect(Collectors.toList()));
+        assertEquals(0, accountRepo.sumSlots(merchantId).compareTo(BigDecimal.ZERO));
+        assertEquals(0, balanceOf(merchantId).compareTo(new BigDecimal(5)));
+        assertEquals(0, balanceOf(payeeId).compareTo(new BigDecimal(35)));
+    }
+
+    @Test
+    @DisplayName("Dropped slots give their money back to the account row")
+    void unstripeKeepsMoney() {
+        accountService.stripeAccount(merchantId, 8);
+        for (int i = 0; i < 20; i++) {
+            accountService.fundDepositOfCurrentUser(deposit(merchantId, BigDecimal.ONE));
+        }
+        accountService.stripeAccount(merchantId, 2);
+        assertEquals(0, balanceOf(merchantId).compareTo(new BigDecimal(30)));
+
+        accountService.stripeAccount(merchantId, 0);
+        Account merchant = accountRepo.findById(merchantId).get();
+        assertEquals(0, merchant.getSlots());
+        assertEquals(0, merchant.getBalance().compareTo(new BigDecimal(30)));
+        assertEquals(0, accountRepo.sumSlots(merchantId).compareTo(BigDecimal.ZERO));
+    }
+
+    @Test
+    @DisplayName("Credits running while the slots are changed all land and no money is lost")
+    void creditsDuringRestripe() throws InterruptedException {
+        accountService.stripeAccount(merchantId, 8);
+        List<Long> senders = IntStream.range(0, 8)
+                .mapToObj(i -> saveAccount(owner, new BigDecimal(1000)))
+                .collect(Collectors.toList());
+        BigDecimal total = balanceOf(merchantId).add(new BigDecimal(1000 * senders.size()));
+        ExecutorService pool = Executors.newFixedThreadPool(senders.size() + 2);
+        CountDownLatch start = new CountDownLatch(1);
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        for (Long sender : senders) {
+            pool.submit(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < CREDITS_PER_THREAD; i++) {
+                        accountService.transferMoney(transfer(sender, merchantId, BigDecimal.ONE));
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+        }
+        pool.submit(() -> {
+            try {
+                start.await();
+                for (int i = 0; i < CREDITS_PER_THREAD; i++) {
+                    accountService.fundDepositOfCurrentUser(deposit(merchantId, BigDecimal.ONE));
+                }
+            } catch (Throwable e) {
+                failures.add(e);
+            }
+        });
+        pool.submit(() -> {
+            try {
+                start.await();
+                for (int i = 0; i < 40; i++) {
+                    accountService.stripeAccount(merchantId, new int[]{0, 1, 4, 16}[i % 4]);
+                }
+            } catch (Throwable e) {
+                failures.add(e);
+            }
+        });
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.MINUTES));
+
+        assertTrue(failures.isEmpty(), () -> "Operations failed: " + failures);
+        BigDecimal after = balanceOf(merchantId);
+        for (Long sender : senders) {
+            assertEquals(0, balanceOf(sender).compareTo(new BigDecimal(1000 - CREDITS_PER_THREAD)));
+            after = after.add(balanceOf(sender));
+        }
+        assertEquals(0, after.compareTo(total.add(new BigDecimal(CREDITS_PER_THREAD))));
+    }
+
+    @Test
+    @DisplayName("Opposite transfers between striped and plain accounts don't deadlock, the striped one having the lower id")
+    void oppositeTransfers() throws InterruptedException {
+        accountService.stripeAccount(merchantId, 4);
+        accountService.fundDepositOfCurrentUser(deposit(merchantId, new BigDecimal(990)));
+        Long plainId = saveAccount(owner, new BigDecimal(1000));
+        Long stripedId = saveAccount(owner, new BigDecimal(1000));
+        accountService.stripeAccount(stripedId, 4);
+        assertTrue(merchantId < plainId && plainId < stripedId);
+        List<Long[]> directions = List.of(new Long[]{merchantId, plainId}, new Long[]{plainId, merchantId},
+                new Long[]{merchantId, stripedId}, new Long[]{stripedId, merchantId});
+        ExecutorService pool = Executors.newFixedThreadPool(directions.size() * 2);
+        CountDownLatch start = new CountDownLatch(1);
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        for (int t = 0; t < directions.size() * 2; t++) {
+            Long[] direction = directions.get(t % directions.size());
+            pool.submit(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < CREDITS_PER_THREAD; i++) {
+                        accountService.transferMoney(transfer(direction[0], direction[1], BigDecimal.ONE));
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.MINUTES));
+
+        assertTrue(failures.isEmpty(), () -> "Transfers failed: " + failures);
+        // every account sends as much as it gets
+        assertEquals(0, balanceOf(merchantId).compareTo(new BigDecimal(1000)));
+        assertEquals(0, balanceOf(plainId).compareTo(new BigDecimal(1000)));
+        assertEquals(0, balanceOf(stripedId).compareTo(new BigDecimal(1000)));
+    }
+
+    @Test
+    @DisplayName("Number of slots is limited")
+    void tooManySlots() {
+        assertThrows(BadRequestException.class, () -> accountService.stripeAccount(merchantId, 1000));
+        assertThrows(BadRequestException.class, () -> accountService.stripeAccount(merchantId, -1));
+    }
+
+    @Test
+    @DisplayName("Credit throughput of a hot account scales with the number of slots")
+    void creditThroughputBySlots() throws InterruptedException {
+        List<Long> senders = IntStream.range(0, THREADS)
+                .mapToObj(i -> saveAccount(owner, new BigDecimal(1_000_000)))
+                .collect(Collectors.toList());
+        BigDecimal expected = balanceOf(merchantId);
+        for (int slots : new int[]{0, 1, 4, 16}) {
+            accountService.stripeAccount(merchantId, slots);
+            ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+            CountDownLatch start = new CountDownLatch(1);
+            ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+            for (Long sender : senders) {
+                pool.submit(() -> {
+                    try {
+                        start.await();
+                        for (int i = 0; i < CREDITS_PER_THREAD; i++) {
+                            accountService.transferMoney(transfer(sender, merchantId, BigDecimal.ONE));
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                });
+            }
+            long started = System.nanoTime();
+            start.countDown();
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(5, TimeUnit.MINUTES));
+            long elapsed = System.nanoTime() - started;
+
+            int credits = THREADS * CREDITS_PER_THREAD;
+            System.out.printf("%d credits of a hot account with %d slots on %d threads: %.1f transfers/s%n",
+                    credits, slots, THREADS, credits / (elapsed / 1_000_000_000.0));
+            assertTrue(failures.isEmpty(), () -> "Transfers failed: " + failures);
+            expected = expected.add(new BigDecimal(credits));
+            assertEquals(0, balanceOf(merchantId).compareTo(expected));
+        }
+    }
+
+}
@@ -0,0 +1,116 @@
+package com.julenka.api.primitiveBank.services;
+
+import com.julenka.api.primitiveBank.domain.Roles;
+import com.julenka.api.primitiveBank.domain.User;
+import com.julenka.api.primitiveBank.domain.UserInfo;
+import com.julenka.api.primitiveBank.dto.UserInfoDTO;
+import com.julenka.api.primitiveBank.repositories.UserRepo;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import javax.transaction.Transactional;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class UserDetailsLoaderIT {
+
+    @Autowired
+    private UserRepo userRepo;
+
+    @Autowired
+    private UserDetailsLoader loader;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @MockBean
+    private CurrentUserService currentUserService;
+
+    private User user;
+
+    private double hits() {
+        return meterRegistry.get("cache.gets").tag("cache", "principals").tag("result", "hit").functionCounter().count();
+    }
+
+    @BeforeEach
+    void saveUser() {
+        userRepo.deleteAll();
+        User toSave = new User();
+        toSave.setUsername("Cached");
+        toSave.setPassword("Cached1");
+        toSave.setAuthorities(List.of(Roles.USER));
+        UserInfo info = new UserInfo();
+        info.setFirstName("First");
+        info.setLastName("Last");
+        toSave.setUserInfo(info);
+        user = userRepo.saveAndFlush(toSave);
+        Mockito.when(currentUserService.getCurrentUser()).thenAnswer((i) -> loader.loadPrincipal("Cached"));
+    }
+
+    @AfterEach
+    @Transactional
+    void deleteAllUsers() {
+        userRepo.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Authenticated user is served from the cache")
+    void principalIsCached() {
+        User loaded = loader.loadUserByUsername("Cached");
+        double hits = hits();
+        assertSame(loaded, loader.loadPrincipal("Cached"));
+        assertSame(loaded, loader.loadPrincipal("Cached"));
+        assertEquals(hits + 2, hits());
+        assertEquals("First", loaded.getUserInfo().getFirstName());
+        assertTrue(loaded.getAuthorities().contains(Roles.USER));
+    }
+
+    @Test
+    @DisplayName("Login always reads the current password")
+    void loginBypassesCache() {
+        loader.loadPrincipal("Cached");
+        User changed = userRepo.findById(user.getId()).get();
+        changed.setPassword("Changed1");
+        userRepo.saveAndFlush(changed);
+        assertEquals("Changed1", loader.loadUserByUsername("Cached").getPassword());
+        assertEquals("Changed1", loader.loadPrincipal("Cached").getPassword());
+    }
+
+    @Test
+    @DisplayName("Changing user info evicts the cached user")
+    void changeInfoEvicts() {
+        loader.loadPrincipal("Cached");
+        UserInfoDTO dto = new UserInfoDTO();
+        dto.setFirstName("New");
+        dto.setLastName("Name");
+        userService.changeUserInfo(dto);
+        assertEquals("New", loader.loadPrincipal("Cached").getUserInfo().getFirstName());
+    }
+
+    @Test
+    @DisplayName("Deleted users aren't served from the cache")
+    void deleteEvicts() {
+        loader.loadPrincipal("Cached");
+        userService.deleteCurrentUser();
+        assertThrows(UsernameNotFoundException.class, () -> loader.loadPrincipal("Cached"));
+
+        saveUser();
+        loader.loadPrincipal("Cached");
+        userService.deleteUserById(userRepo.findOneByUsername("Cached").get().getId());
+        assertThrows(UsernameNotFoundException.class, () -> loader.loadPrincipal("Cached"));
+    }
+
+}
@@ -0,0 +1,140 @@
+package com.julenka.api.primitiveBank.services;
+
+import com.julenka.api.primitiveBank.domain.Roles;
+import com.julenka.api.primitiveBank.domain.User;
+import com.julenka.api.primitiveBank.domain.UserInfo;
+import com.julenka.api.primitiveBank.dto.GetUserDTO;
+import com.julenka.api.primitiveBank.dto.UserInfoDTO;
+import com.julenka.api.primitiveBank.repositories.UserRepo;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityNotFoundException;
+import javax.transaction.Transactional;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {"bank.users.profile-cache-size=100",
+        "spring.jpa.properties.hibernate.generate_statistics=true"})
+class UserProfileIT {
+
+    @Autowired
+    private UserRepo userRepo;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserDetailsLoader loader;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @MockBean
+    private CurrentUserService currentUserService;
+
+    private Statistics statistics;
+
+    private User user;
+
+    //the cache outlives the users deleted between tests, so every test gets its own name
+    private String username;
+
+    private static int counter;
+
+    @BeforeEach
+    void saveUser() {
+        userRepo.deleteAll();
+        User toSave = new User();
+        username = "Profile" + counter++;
+        toSave.setUsername(username);
+        toSave.setPassword("Profile1");
+        toSave.setAuthorities(List.of(Roles.USER, Roles.ADMIN));
+        UserInfo info = new UserInfo();
+        info.setFirstName("First");
+        info.setLastName("Last");
+        toSave.setUserInfo(info);
+        user = userRepo.saveAndFlush(toSave);
+        Mockito.when(currentUserService.getCurrentUser()).thenAnswer((i) -> loader.loadPrincipal(username));
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @AfterEach
+    @Transactional
+    void deleteAllUsers() {
+        userRepo.deleteAll();
+    }
+
+    @Test
+    @DisplayName("User is read with one query and no entity")
+    void profileIsOneQuery() {
+        GetUserDTO profile = userService.getUserByUsername(username);
+        assertEquals(1, statistics.getQueryExecutionCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertEquals(0, statistics.getCollectionLoadCount());
+        assertEquals(user.getId(), profile.getId());
+        assertEquals(username, profile.getUsername());
+        assertEquals("First", profile.getUserinfo().getFirstName());
+        assertEquals("Last", profile.getUserinfo().getLastName());
+        assertEquals(Set.of(Roles.USER, Roles.ADMIN), Set.copyOf(profile.getAuthorities()));
+    }
+
+    @Test
+    @DisplayName("User without info")
+    void profileWithoutInfo() {
+        User toSave = new User();
+        toSave.setUsername("NoInfo");
+        toSave.setPassword("NoInfo1");
+        toSave.setAuthorities(List.of(Roles.USER));
+        userRepo.saveAndFlush(toSave);
+        GetUserDTO profile = userService.getUserByUsername("NoInfo");
+        assertNull(profile.getUserinfo());
+        assertEquals(List.of(Roles.USER), List.copyOf(profile.getAuthorities()));
+    }
+
+    @Test
+    @DisplayName("Unknown user")
+    void unknownUser() {
+        assertThrows(EntityNotFoundException.class, () -> userService.getUserByUsername("Nobody"));
+    }
+
+    @Test
+    @DisplayName("Cached user is served without the database")
+    void profileIsCached() {
+        GetUserDTO first = userService.getUserByUsername(username);
+        statistics.clear();
+        assertSame(first, userService.getUserByUsername(username));
+        assertEquals(0, statistics.getQueryExecutionCount());
+    }
+
+    @Test
+    @DisplayName("Changed info is seen at once")
+    void changedInfoEvictsProfile() {
+        userService.getUserByUsername(username);
+        UserInfoDTO dto = new UserInfoDTO();
+        dto.setFirstName("Changed");
+        dto.setLastName("Last");
+        userService.changeUserInfo(dto);
+        assertEquals("Changed", userService.getUserByUsername(username).getUserinfo().getFirstName());
+    }
+
+    @Test
+    @DisplayName("Deleted user isn't served from the cache")
+    void deletedUserIsEvicted() {
+        userService.getUserByUsername(username);
+        userService.deleteUserById(user.getId());
+        assertThrows(EntityNotFoundException.class, () -> userService.getUserByUsername(username));
+    }
+}